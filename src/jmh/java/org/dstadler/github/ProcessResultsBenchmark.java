@@ -0,0 +1,43 @@
+package org.dstadler.github;
+
+import com.google.common.collect.HashBasedTable;
+import com.google.common.collect.Table;
+import org.dstadler.github.util.RepositorySnapshot;
+import org.dstadler.github.util.StatsSample;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Aggregates snapshots into the table of files per date and version.
+ */
+@State(Scope.Benchmark)
+public class ProcessResultsBenchmark {
+    private final List<RepositorySnapshot> snapshots = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        for (StatsSample sample : StatsSample.read(50)) {
+            RepositorySnapshot snapshot = sample.toSnapshot();
+
+            // resolve once up front, only the aggregation should be measured
+            snapshot.getRepositoryVersions();
+            snapshots.add(snapshot);
+        }
+    }
+
+    @Benchmark
+    public Table<String, String, ProcessResults.Data> populateTable() {
+        Table<String, String, ProcessResults.Data> table = HashBasedTable.create();
+        String maxDate = null;
+        for (RepositorySnapshot snapshot : snapshots) {
+            maxDate = ProcessResults.populateTable(table, maxDate, snapshot, snapshot.getDate());
+        }
+        return table;
+    }
+}
@@ -0,0 +1,89 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import org.dstadler.github.util.StatsSample;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses repositories from file-URLs and versions from build-files, the build-files
+ * are generated from the versions and URLs found in the stats as the content
+ * of the files is not stored.
+ */
+@State(Scope.Benchmark)
+public class SearchBenchmark {
+    private static final int SIZE = 1024;
+
+    private final GradleBuildSearch gradle = new GradleBuildSearch();
+    private final MavenPomSearch maven = new MavenPomSearch();
+
+    private String[] urls;
+    private String[] repositories;
+    private String[] gradleFiles;
+    private String[] pomFiles;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<Map.Entry<String, String>> entries = StatsSample.getAllEntries(StatsSample.read(20));
+
+        urls = new String[SIZE];
+        repositories = new String[SIZE];
+        gradleFiles = new String[SIZE];
+        pomFiles = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            Map.Entry<String, String> entry = entries.get((int) ((long) i * entries.size() / SIZE));
+            String version = entry.getKey();
+
+            urls[i] = entry.getValue();
+            repositories[i] = BaseSearch.getRepository(entry.getValue());
+            gradleFiles[i] = "apply plugin: 'java'\n\n" +
+                    "repositories {\n    mavenCentral()\n}\n\n" +
+                    "def poiVersion = '" + version + "'\n\n" +
+                    "dependencies {\n" +
+                    "    compile 'commons-io:commons-io:2.5'\n" +
+                    "    compile 'org.apache.poi:poi:" + version + "'\n" +
+                    "    compile 'org.apache.poi:poi-ooxml:'+poiVersion\n" +
+                    "    testCompile 'junit:junit:4.12'\n" +
+                    "}\n";
+            pomFiles[i] = "<project>\n  <modelVersion>4.0.0</modelVersion>\n" +
+                    "  <properties>\n    <poi.version>" + version + "</poi.version>\n  </properties>\n" +
+                    "  <dependencies>\n" +
+                    "    <dependency>\n      <groupId>junit</groupId>\n      <artifactId>junit</artifactId>\n      <version>4.12</version>\n    </dependency>\n" +
+                    "    <dependency>\n      <groupId>org.apache.poi</groupId>\n      <artifactId>poi-ooxml</artifactId>\n      <version>${poi.version}</version>\n    </dependency>\n" +
+                    "  </dependencies>\n</project>\n";
+        }
+    }
+
+    @Benchmark
+    public void getRepository(Blackhole blackhole) {
+        for (String url : urls) {
+            blackhole.consume(BaseSearch.getRepository(url));
+        }
+    }
+
+    @Benchmark
+    public Multimap<String, String> parseGradle() {
+        Multimap<String, String> versions = HashMultimap.create();
+        for (int i = 0; i < SIZE; i++) {
+            gradle.parseVersion(versions, urls[i], repositories[i], gradleFiles[i]);
+        }
+        return versions;
+    }
+
+    @Benchmark
+    public Multimap<String, String> parseMaven() {
+        Multimap<String, String> versions = HashMultimap.create();
+        for (int i = 0; i < SIZE; i++) {
+            maven.parseVersion(versions, urls[i], repositories[i], pomFiles[i]);
+        }
+        return versions;
+    }
+}
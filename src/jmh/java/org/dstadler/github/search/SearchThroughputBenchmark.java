@@ -0,0 +1,152 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
+import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.RepositoryCache;
+import org.dstadler.github.util.StatsSample;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the whole search via {@link Search#runSearch(BaseSearch...)} against the
+ * local {@link GitHubStandIn} which replays the results of some stats-files, each
+ * run starts with empty caches.
+ *
+ * Besides the time per run, hits per second, requests per hit and the peak heap
+ * are reported as additional results.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class SearchThroughputBenchmark {
+    // milliseconds per request
+    @Param({"0", "20"})
+    public int latency;
+
+    @Param({"1", "8"})
+    public int concurrency;
+
+    // write the results to a file while searching, see Search.STREAM
+    @Param({"false", "true"})
+    public boolean stream;
+
+    private GitHubStandIn standIn;
+    private File dir;
+
+    private File statsDir;
+    private File repositoryCache;
+    private File contentCache;
+    private File journal;
+    private File results;
+    private int searchConcurrency;
+    private int graphqlBatch;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Metrics {
+        public double hitsPerSecond;
+        public double requestsPerHit;
+        public double peakHeapMB;
+    }
+
+    @Setup(Level.Trial)
+    public void setUpTrial() throws IOException {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        for (Map.Entry<String, String> entry : StatsSample.getAllEntries(StatsSample.read(5))) {
+            versions.put(entry.getKey(), entry.getValue());
+        }
+        standIn = new GitHubStandIn(versions);
+        standIn.setLatency(latency);
+
+        statsDir = JSONWriter.STATS_DIR;
+        repositoryCache = RepositoryCache.FILE;
+        contentCache = ContentCache.DIR;
+        journal = SearchJournal.FILE;
+        results = ResultStream.FILE;
+        searchConcurrency = BaseSearch.CONCURRENCY;
+        graphqlBatch = BaseSearch.GRAPHQL_BATCH;
+
+        BaseSearch.ENDPOINT = standIn.getEndpoint();
+        BaseSearch.CONCURRENCY = concurrency;
+        BaseSearch.GRAPHQL_BATCH = 1;
+        Search.STREAM = stream;
+    }
+
+    @Setup(Level.Iteration)
+    public void setUpIteration() throws IOException {
+        // start with empty caches and stats each time
+        dir = Files.createTempDirectory("SearchThroughputBenchmark").toFile();
+        JSONWriter.STATS_DIR = dir;
+        RepositoryCache.FILE = new File(dir, "repositoryCache.json");
+        ContentCache.DIR = new File(dir, "contentCache");
+        SearchJournal.FILE = new File(dir, "search.journal");
+        ResultStream.FILE = new File(dir, "search.results");
+
+        standIn.resetCounters();
+
+        System.gc();
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            pool.resetPeakUsage();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDownIteration() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDownTrial() {
+        standIn.close();
+
+        JSONWriter.STATS_DIR = statsDir;
+        RepositoryCache.FILE = repositoryCache;
+        ContentCache.DIR = contentCache;
+        SearchJournal.FILE = journal;
+        ResultStream.FILE = results;
+        BaseSearch.ENDPOINT = null;
+        BaseSearch.CONCURRENCY = searchConcurrency;
+        BaseSearch.GRAPHQL_BATCH = graphqlBatch;
+        Search.STREAM = false;
+    }
+
+    @Benchmark
+    public void runSearch(Metrics metrics) throws IOException {
+        long start = System.nanoTime();
+        Search.runSearch(new GradleBuildSearch(), new MavenPomSearch());
+        long duration = System.nanoTime() - start;
+
+        int hits = standIn.getHits();
+        metrics.hitsPerSecond = hits * 1_000_000_000.0 / duration;
+        metrics.requestsPerHit = hits == 0 ? 0 : (double) standIn.getRequests() / hits;
+
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        metrics.peakHeapMB = peak / 1024.0 / 1024.0;
+    }
+}
@@ -0,0 +1,50 @@
+package org.dstadler.github.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads snapshots as stored in the stats-files and filters them for the
+ * highest version per repository.
+ */
+@State(Scope.Benchmark)
+public class HolderBenchmark {
+    private final List<String> lines = new ArrayList<>();
+    private final List<StatsSample> samples = new ArrayList<>();
+
+    @Setup
+    public void setUp() throws IOException {
+        samples.addAll(StatsSample.read(10));
+        for (StatsSample sample : samples) {
+            lines.add(sample.toJson());
+        }
+    }
+
+    @Benchmark
+    public void readHolder(Blackhole blackhole) throws IOException {
+        for (String line : lines) {
+            blackhole.consume(JSONWriter.mapper.readValue(line, JSONWriter.Holder.class).getVersions());
+        }
+    }
+
+    @Benchmark
+    public void getVersions(Blackhole blackhole) {
+        for (StatsSample sample : samples) {
+            blackhole.consume(new JSONWriter.Holder(sample.getDate(), sample.getVersions()).getVersions());
+        }
+    }
+
+    @Benchmark
+    public void resolveSnapshot(Blackhole blackhole) {
+        for (StatsSample sample : samples) {
+            blackhole.consume(sample.toSnapshot().getRepositoryVersions());
+        }
+    }
+}
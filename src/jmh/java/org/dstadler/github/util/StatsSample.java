@@ -0,0 +1,116 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Realistic input for the benchmarks, the first snapshot of some stats-files
+ * spread evenly over the whole history.
+ *
+ * The stats-directory can be set via system property "stats.dir", the build
+ * sets it to the stats-directory of the project.
+ */
+public class StatsSample {
+    private final String date;
+
+    // version as key, file-URLs as value
+    private final SetMultimap<String, String> versions;
+
+    private StatsSample(String date, SetMultimap<String, String> versions) {
+        this.date = date;
+        this.versions = versions;
+    }
+
+    /**
+     * @param count The number of stats-files to sample
+     * @return One snapshot for each sampled file
+     * @throws IOException If reading the stats fails
+     */
+    public static List<StatsSample> read(int count) throws IOException {
+        File dir = new File(System.getProperty("stats.dir", "stats"));
+        File[] files = Stats.getFiles(dir);
+        Preconditions.checkState(files.length > 0, "Could not find stats-files in %s", dir.getAbsolutePath());
+
+        List<StatsSample> samples = new ArrayList<>();
+        for (int i = 0; i < count && i < files.length; i++) {
+            File file = files[(int) ((long) i * files.length / Math.min(count, files.length))];
+            try (SnapshotReader reader = StatsReader.open(file)) {
+                if (!reader.nextSnapshot()) {
+                    continue;
+                }
+
+                SetMultimap<String, String> versions = HashMultimap.create();
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    versions.put(record.version, record.url);
+                }
+                samples.add(new StatsSample(reader.getDate(), versions));
+            }
+        }
+
+        return samples;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return version as key, file-URLs as value
+     */
+    public SetMultimap<String, String> getVersions() {
+        return versions;
+    }
+
+    /**
+     * @return The snapshot as it is stored in a stats-file
+     * @throws IOException If serializing fails
+     */
+    public String toJson() throws IOException {
+        return JSONWriter.mapper.writeValueAsString(new JSONWriter.Holder(date, versions));
+    }
+
+    /**
+     * @return A new snapshot with all entries of this sample
+     */
+    public RepositorySnapshot toSnapshot() {
+        RepositorySnapshot snapshot = new RepositorySnapshot(date);
+        for (Map.Entry<String, String> entry : versions.entries()) {
+            snapshot.add(entry.getKey(), entry.getValue());
+        }
+        return snapshot;
+    }
+
+    /**
+     * @param samples The sampled snapshots
+     * @return The version of every entry, so versions are included as often as they are used
+     */
+    public static List<String> getAllVersions(List<StatsSample> samples) {
+        List<String> versions = new ArrayList<>();
+        for (StatsSample sample : samples) {
+            for (Map.Entry<String, String> entry : sample.versions.entries()) {
+                versions.add(entry.getKey());
+            }
+        }
+        return versions;
+    }
+
+    /**
+     * @param samples The sampled snapshots
+     * @return The version and URL of every entry
+     */
+    public static List<Map.Entry<String, String>> getAllEntries(List<StatsSample> samples) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>();
+        for (StatsSample sample : samples) {
+            entries.addAll(sample.versions.entries());
+        }
+        return entries;
+    }
+}
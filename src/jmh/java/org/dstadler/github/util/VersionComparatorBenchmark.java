@@ -0,0 +1,61 @@
+package org.dstadler.github.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Compares and parses versions in the mix in which they occur in the stats.
+ */
+@State(Scope.Benchmark)
+public class VersionComparatorBenchmark {
+    private static final int SIZE = 4096;
+
+    private final VersionComparator comparator = new VersionComparator();
+
+    private String[] versions;
+    private String[] others;
+
+    @Setup
+    public void setUp() throws IOException {
+        List<String> all = StatsSample.getAllVersions(StatsSample.read(50));
+        Collections.shuffle(all, new Random(42));
+
+        versions = new String[SIZE];
+        others = new String[SIZE];
+        for (int i = 0; i < SIZE; i++) {
+            versions[i] = all.get(i % all.size());
+            others[i] = all.get((i * 7 + 13) % all.size());
+        }
+    }
+
+    @Benchmark
+    public void compare(Blackhole blackhole) {
+        for (int i = 0; i < SIZE; i++) {
+            blackhole.consume(comparator.compare(versions[i], others[i]));
+        }
+    }
+
+    @Benchmark
+    public void parse(Blackhole blackhole) {
+        for (String version : versions) {
+            if (VersionComparator.getVersion(version) != null) {
+                blackhole.consume(VersionComparator.Version.parse(version));
+            }
+        }
+    }
+
+    @Benchmark
+    public void key(Blackhole blackhole) {
+        for (String version : versions) {
+            blackhole.consume(VersionComparator.key(version));
+        }
+    }
+}
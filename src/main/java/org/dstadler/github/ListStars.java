@@ -2,24 +2,22 @@ package org.dstadler.github;
 
 import com.google.common.collect.Multimap;
 import com.google.common.collect.TreeMultimap;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.dstadler.github.search.BaseSearch;
-import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.HistoryScan;
+import org.dstadler.github.util.RepositoryCache;
+import org.dstadler.github.util.RepositorySet;
 import org.dstadler.github.util.Stats;
-import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.Comparator;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Set;
 
 public class ListStars {
     public static void main(String[] args) throws IOException {
-        File[] files = Stats.getFiles();
+        File[] files = Stats.getHistory();
 
         Set<String> repositories = readLines(files);
         System.out.println("Found " + repositories.size() + " repositories using Apache POI");
@@ -27,16 +25,23 @@ public class ListStars {
         Multimap<Integer, String> starsAndRepositories = createSortedMultimap();
 
         GitHub github = BaseSearch.connect();
+        RepositoryCache cache = RepositoryCache.getInstance();
 
         int count = 0;
         for (String repository : repositories) {
             try {
-                GHRepository repo = github.getRepository(repository);
-                starsAndRepositories.put(repo.getStargazersCount(), repository);
+                RepositoryCache.Entry repo = cache.get(github, repository, RepositoryCache.Field.STARS);
+                if (repo.status != RepositoryCache.Status.OK) {
+                    starsAndRepositories.put(-1, repository);
+                    System.out.println(repository + ": " + repo.status);
+                    continue;
+                }
+
+                starsAndRepositories.put(repo.stars, repository);
 
                 count++;
                 if (count % 10 == 0) {
-                    System.out.println(count + ": " + repository + ": " + repo.getStargazersCount() + " - " +
+                    System.out.println(count + ": " + repository + ": " + repo.stars + " - " +
                             StringUtils.abbreviate(starsAndRepositories.toString(), 1024));
                 }
             } catch (IOException e) {
@@ -45,6 +50,8 @@ public class ListStars {
             }
         }
 
+        cache.write();
+
         System.out.println("Stars: " + starsAndRepositories + ": " +
                 StringUtils.abbreviate(starsAndRepositories.toString(), 1024));
     }
@@ -55,17 +62,11 @@ public class ListStars {
     }
 
     private static Set<String> readLines(File[] files) throws IOException {
-        Set<String> repositories = new HashSet<>();
-        for(File file : files) {
-            List<String> lines = FileUtils.readLines(file, "UTF-8");
+        HistoryScan scan = new HistoryScan();
+        RepositorySet repositories = scan.register(new RepositorySet());
 
-            for (String line : lines) {
-                JSONWriter.Holder holder = JSONWriter.mapper.readValue(line, JSONWriter.Holder.class);
-
-                repositories.addAll(holder.getRepositoryVersions().values());
-            }
-        }
+        scan.scan(files);
 
-        return repositories;
+        return repositories.getRepositories();
     }
 }
@@ -1,15 +1,24 @@
 package org.dstadler.github;
 
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonProperty;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Multimap;
-import com.google.common.collect.SetMultimap;
 import com.google.common.collect.Table;
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.time.DateUtils;
+import org.dstadler.github.util.BoundedCache;
+import org.dstadler.github.util.HighestVersions;
+import org.dstadler.github.util.HistoryScan;
 import org.dstadler.github.util.JSONWriter;
-import org.dstadler.github.util.JSONWriter.Holder;
+import org.dstadler.github.util.RepositorySet;
+import org.dstadler.github.util.RepositorySnapshot;
+import org.dstadler.github.util.SnapshotVisitor;
 import org.dstadler.github.util.Stats;
+import org.dstadler.github.util.StatsManifest;
+import org.dstadler.github.util.StatsReader;
+import org.dstadler.github.util.SymbolTable;
 import org.dstadler.github.util.VersionComparator;
 
 import java.io.File;
@@ -22,6 +31,7 @@ import java.util.Comparator;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -35,6 +45,9 @@ public class ProcessResults {
     private static final Date START_DATE;
     private static final Comparator<String> VERSION_COMPARATOR = new VersionComparator();
 
+    // aggregated results of the previous run, allows to only process new stats-files
+    private static final File CHECKPOINT = new File("processResults.checkpoint.json");
+
     static {
         try {
             START_DATE = DATE_FORMAT.parse("2016-09-30");
@@ -46,6 +59,9 @@ public class ProcessResults {
     // parse 3.10, 3.10-FINAL, 3.10-beta1
     private final static Pattern VERSION_PATTERN = Pattern.compile("[0-9][0-9.]+[-A-Za-z0-9]*");
 
+    // version as key, the version or "other" as value
+    private static final BoundedCache<String, String> PRINTABLE_VERSIONS = new BoundedCache<>(10_000);
+
     private static final String TEMPLATE =
         "<html>\n" +
         "<head>\n" +
@@ -131,16 +147,44 @@ public class ProcessResults {
 
 
     public static void main(String[] args) throws IOException, ParseException {
-        File[] files = Stats.getFiles();
+        File[] statsFiles = Stats.getFiles();
+        File[] files = Stats.getHistory(statsFiles);
+
+        // only reads stats-files which were added or changed since the manifest was updated
+        StatsManifest manifest = StatsManifest.update(JSONWriter.STATS_DIR, statsFiles);
 
         Table<String,String,Data> values = HashBasedTable.create();
         Table<String,String,Data> valuesAccumulative = HashBasedTable.create();
         List<VersionChange> changes = new ArrayList<>();
 
         // repo as key, highest seen version as value
-        Map<String, String> seenRepositoryVersions = new HashMap<>();
+        Map<String, String> previousVersions = new LinkedHashMap<>();
+
+        // continue with the results of the previous run if they are still valid
+        Checkpoint checkpoint = Checkpoint.read(CHECKPOINT, statsFiles, manifest);
+        if (checkpoint != null) {
+            checkpoint.restore(values, valuesAccumulative, changes, previousVersions);
+        }
+
+        HighestVersions highestVersions = new HighestVersions(previousVersions);
+
+        // read the history only once and compute all results while doing so
+        HistoryScan scan = new HistoryScan();
+        VersionTable table = scan.register(new VersionTable(values, checkpoint == null ? null : checkpoint.maxDate));
+        scan.register(new ChangeDetector(changes, highestVersions));
+        AccumulativeTable accumulativeTable = new AccumulativeTable(valuesAccumulative, highestVersions);
+        scan.register(highestVersions);
+        scan.register(accumulativeTable);
+        RepositorySet repositories = scan.register(new RepositorySet());
+
+        scan.scan(files, checkpoint == null ? null : checkpoint.lastDate);
+
+        String maxDateStr = table.getMaxDate();
+        Preconditions.checkNotNull(maxDateStr, "Should have a max date now!");
 
-        String maxDateStr = readLines(files, values, valuesAccumulative, changes, seenRepositoryVersions);
+        Map<String, String> seenRepositoryVersions = highestVersions.getVersions();
+
+        Checkpoint.write(CHECKPOINT, statsFiles, manifest, maxDateStr, values, valuesAccumulative, changes, seenRepositoryVersions);
 
         File results = new File("docs", "results.html");
         File resultsPercentage = new File("docs", "resultsPercentage.html");
@@ -154,7 +198,10 @@ public class ProcessResults {
         writeCurrentResults(current, values.row(maxDateStr));
 
         File all = new File("docs", "resultsAll.csv");
-        writeAllResults(all, values.row(maxDateStr), seenRepositoryVersions, readRepositories(files[files.length-1]));
+        // the latest results are only missing if the checkpoint covered them already
+        Collection<String> currentRepositories = maxDateStr.equals(repositories.getLatestDate()) ?
+                repositories.getLatestRepositories() : readRepositories(files[files.length-1], maxDateStr);
+        writeAllResults(all, values.row(maxDateStr), seenRepositoryVersions, currentRepositories);
 
         File changesFile = new File("docs/_data", "versionChanges.csv");
         writeVersionChanges(changesFile, changes);
@@ -162,70 +209,236 @@ public class ProcessResults {
         System.out.println("Wrote results to " + results + ", " + current + " and " + all);
     }
 
-    private static class Data {
+    static class Data {
         public Integer count;
         public String link;
 
+        @SuppressWarnings("unused")
+        public Data() {
+        }
+
         public Data(Integer count, String link) {
             this.count = count;
             this.link = link;
         }
     }
 
-    private static Collection<String> readRepositories(File file) throws IOException {
-        List<String> lines = FileUtils.readLines(file, "UTF-8");
-
+    private static Collection<String> readRepositories(File file, String date) throws IOException {
         Collection<String> map = new HashSet<>();
-        for (String line : lines) {
-            Holder holder = JSONWriter.mapper.readValue(line, Holder.class);
-            SetMultimap<String, String> repositoryVersions = holder.getRepositoryVersions();
-            for (Entry<String, String> entry : repositoryVersions.entries()) {
-                map.add(entry.getValue());
+        StatsReader.readSnapshots(new File[] { file }, snapshot -> {
+            // the binary file contains all dates, only look at the latest one
+            if (snapshot.getDate().equals(date)) {
+                map.addAll(snapshot.getRepositoryVersions().values());
             }
-        }
+        });
 
         return map;
     }
 
-    private static String readLines(File[] files, Table<String, String, Data> dateVersionTable,
-                                    Table<String, String, Data> valuesAccumulative, Collection<VersionChange> changes,
-                                    Map<String, String> seenRepositoryVersions) throws IOException {
-        String maxDateStr = null;
-
-        for(File file : files) {
-             List<String> lines = FileUtils.readLines(file, "UTF-8");
-
-            for (String line : lines) {
-                Holder holder = JSONWriter.mapper.readValue(line, Holder.class);
-                SetMultimap<String, String> versions = holder.getVersions();
-                String date = holder.getDate();
-
-                maxDateStr = populateTable(dateVersionTable, maxDateStr, versions, date);
-
-                // print out if we found projects that switched versions
-                compareToPrevious(date, holder.getRepositoryVersions(), changes, seenRepositoryVersions);
-
-                // now update the map of highest version per Repository for the next date
-                JSONWriter.addHigherVersions(seenRepositoryVersions, holder.getRepositoryVersions());
-
-                // add the current values to the combined table
-                for(Entry<String,String> entry : seenRepositoryVersions.entrySet()) {
-                    // combine the unparsable versions into "other"
-                    final String version = getPrintableVersion(entry.getValue());
-                    Data data = valuesAccumulative.get(date, version);
-                    if(data == null) {
-                        valuesAccumulative.put(date, version, new Data(1, entry.getKey()));
-                    } else {
-                        data.count++;
-                    }
+    /**
+     * Counts the files per date and printable version.
+     */
+    private static class VersionTable implements SnapshotVisitor {
+        private final Table<String, String, Data> dateVersionTable;
+        private String maxDateStr;
+
+        public VersionTable(Table<String, String, Data> dateVersionTable, String maxDateStr) {
+            this.dateVersionTable = dateVersionTable;
+            this.maxDateStr = maxDateStr;
+        }
+
+        @Override
+        public void visit(RepositorySnapshot snapshot) {
+            maxDateStr = populateTable(dateVersionTable, maxDateStr, snapshot, snapshot.getDate());
+        }
+
+        public String getMaxDate() {
+            return maxDateStr;
+        }
+    }
+
+    /**
+     * Records repositories which are new or switched to a higher version,
+     * needs to run before the highest versions are updated with the snapshot.
+     */
+    private static class ChangeDetector implements SnapshotVisitor {
+        private final Collection<VersionChange> changes;
+        private final HighestVersions seenRepositoryVersions;
+
+        public ChangeDetector(Collection<VersionChange> changes, HighestVersions seenRepositoryVersions) {
+            this.changes = changes;
+            this.seenRepositoryVersions = seenRepositoryVersions;
+        }
+
+        @Override
+        public void visit(RepositorySnapshot snapshot) {
+            // print out if we found projects that switched versions
+            compareToPrevious(snapshot, changes, seenRepositoryVersions);
+        }
+    }
+
+    /**
+     * Counts the highest version of all repositories seen until each date,
+     * needs to run after the highest versions are updated with the snapshot.
+     *
+     * The number of repositories per version is kept up to date via the changes
+     * of the highest versions, so only these counts are added for each snapshot.
+     */
+    private static class AccumulativeTable implements SnapshotVisitor, HighestVersions.Listener {
+        private final Table<String, String, Data> valuesAccumulative;
+
+        // printable version as key, the number of repositories and one of them as value
+        private final Map<String, Data> counts = new HashMap<>();
+
+        public AccumulativeTable(Table<String, String, Data> valuesAccumulative, HighestVersions seenRepositoryVersions) {
+            this.valuesAccumulative = valuesAccumulative;
+
+            for (int i = 0; i < seenRepositoryVersions.size(); i++) {
+                int repositoryId = seenRepositoryVersions.getRepositoryId(i);
+                changed(repositoryId, -1, seenRepositoryVersions.get(repositoryId));
+            }
+            seenRepositoryVersions.setListener(this);
+        }
+
+        @Override
+        public void changed(int repositoryId, int previousVersionId, int versionId) {
+            if (previousVersionId != -1) {
+                counts.get(getPrintableVersion(SymbolTable.VERSIONS.get(previousVersionId))).count--;
+            }
+
+            // combine the unparsable versions into "other"
+            final String version = getPrintableVersion(SymbolTable.VERSIONS.get(versionId));
+            Data data = counts.get(version);
+            if(data == null) {
+                counts.put(version, new Data(1, SymbolTable.REPOSITORIES.get(repositoryId)));
+            } else {
+                data.count++;
+            }
+        }
+
+        @Override
+        public void visit(RepositorySnapshot snapshot) {
+            String date = snapshot.getDate();
+
+            // add the current values to the combined table
+            for(Entry<String,Data> entry : counts.entrySet()) {
+                if (entry.getValue().count == 0) {
+                    continue;
                 }
+
+                Data data = valuesAccumulative.get(date, entry.getKey());
+                if(data == null) {
+                    valuesAccumulative.put(date, entry.getKey(), new Data(entry.getValue().count, entry.getValue().link));
+                } else {
+                    data.count += entry.getValue().count;
+                }
+            }
+        }
+    }
+
+    /**
+     * The aggregated results of all stats-files up to a certain date, persisted
+     * after each run so that the next run only needs to process newer stats-files.
+     *
+     * The checkpoint is only used if all stats-files which were processed are still
+     * unchanged according to the checksums in the {@link StatsManifest}, otherwise
+     * all stats-files are processed again.
+     */
+    private static class Checkpoint {
+        // increase when the format or the aggregation changes to force a full rebuild
+        private static final int FORMAT_VERSION = 3;
+
+        public int formatVersion;
+
+        // the date of the last processed stats-file
+        public String lastDate;
+
+        // the last date which had results
+        public String maxDate;
+
+        // name and checksum of all processed stats-files
+        public Map<String, Long> files;
+
+        public Map<String, Map<String, Data>> values;
+        public Map<String, Map<String, Data>> valuesAccumulative;
+        public List<VersionChange> changes;
+        public Map<String, String> seenRepositoryVersions;
+
+        /**
+         * @param file The checkpoint-file
+         * @param statsFiles The stats-files which are available now
+         * @param manifest The manifest with the current checksums of the stats-files
+         * @return The checkpoint or null if there is none or it does not match the stats-files any more
+         * @throws IOException If reading the checkpoint fails
+         */
+        public static Checkpoint read(File file, File[] statsFiles, StatsManifest manifest) throws IOException {
+            if (!file.exists()) {
+                System.out.println("No checkpoint found at " + file + ", processing all stats-files");
+                return null;
             }
 
+            Checkpoint checkpoint = JSONWriter.mapper.readValue(file, Checkpoint.class);
+            if (checkpoint.formatVersion != FORMAT_VERSION) {
+                System.out.println("Checkpoint at " + file + " has format " + checkpoint.formatVersion +
+                        ", but expected " + FORMAT_VERSION + ", processing all stats-files");
+                return null;
+            }
+
+            Map<String, Long> processed = getFiles(statsFiles, manifest, checkpoint.lastDate);
+            if (!processed.equals(checkpoint.files)) {
+                System.out.println("Stats-files up to " + checkpoint.lastDate + " changed since the checkpoint at " +
+                        file + " was written, processing all stats-files");
+                return null;
+            }
+
+            System.out.println("Using checkpoint at " + file + " with results up to " + checkpoint.lastDate);
+            return checkpoint;
         }
 
-        Preconditions.checkNotNull(maxDateStr, "Should have a max date now!");
+        public static void write(File file, File[] statsFiles, StatsManifest manifest, String maxDate,
+                                 Table<String, String, Data> values, Table<String, String, Data> valuesAccumulative,
+                                 List<VersionChange> changes, Map<String, String> seenRepositoryVersions) throws IOException {
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.formatVersion = FORMAT_VERSION;
+            checkpoint.lastDate = Stats.getDate(statsFiles[statsFiles.length - 1]);
+            checkpoint.maxDate = maxDate;
+            checkpoint.files = getFiles(statsFiles, manifest, checkpoint.lastDate);
+            checkpoint.values = values.rowMap();
+            checkpoint.valuesAccumulative = valuesAccumulative.rowMap();
+            checkpoint.changes = changes;
+            checkpoint.seenRepositoryVersions = seenRepositoryVersions;
+
+            JSONWriter.mapper.writeValue(file, checkpoint);
+        }
 
-        return maxDateStr;
+        public void restore(Table<String, String, Data> values, Table<String, String, Data> valuesAccumulative,
+                            List<VersionChange> changes, Map<String, String> seenRepositoryVersions) {
+            restore(this.values, values);
+            restore(this.valuesAccumulative, valuesAccumulative);
+            changes.addAll(this.changes);
+
+            // the order is kept when reading the checkpoint, so iterating the map
+            // yields the same order as after processing all stats-files
+            seenRepositoryVersions.putAll(this.seenRepositoryVersions);
+        }
+
+        private static void restore(Map<String, Map<String, Data>> rows, Table<String, String, Data> table) {
+            for (Entry<String, Map<String, Data>> row : rows.entrySet()) {
+                for (Entry<String, Data> column : row.getValue().entrySet()) {
+                    table.put(row.getKey(), column.getKey(), column.getValue());
+                }
+            }
+        }
+
+        private static Map<String, Long> getFiles(File[] statsFiles, StatsManifest manifest, String lastDate) {
+            Map<String, Long> files = new TreeMap<>();
+            for (File statsFile : statsFiles) {
+                if (Stats.getDate(statsFile).compareTo(lastDate) <= 0) {
+                    files.put(statsFile.getName(), manifest.get(statsFile).checksum);
+                }
+            }
+            return files;
+        }
     }
 
     public static class VersionChange {
@@ -234,7 +447,9 @@ public class ProcessResults {
         public final String versionBefore;
         public final String versionNow;
 
-        public VersionChange(String date, String repository, String versionBefore, String versionNow) {
+        @JsonCreator
+        public VersionChange(@JsonProperty("date") String date, @JsonProperty("repository") String repository,
+                             @JsonProperty("versionBefore") String versionBefore, @JsonProperty("versionNow") String versionNow) {
             this.date = date;
             this.repository = repository;
             this.versionBefore = versionBefore;
@@ -246,6 +461,34 @@ public class ProcessResults {
         }
     }
 
+    /**
+     * Same as {@link #compareToPrevious(String, Multimap, Collection, Map)}, but works on
+     * the ids of repositories and versions in the {@link SymbolTable}s.
+     */
+    protected static void compareToPrevious(RepositorySnapshot snapshot, Collection<VersionChange> changes,
+                                            HighestVersions seenRepositoryVersions) {
+        for (int i = 0; i < snapshot.getEntryCount(); i++) {
+            int versionId = snapshot.getVersionId(i);
+            int prevVersionId = seenRepositoryVersions.get(snapshot.getRepositoryId(i));
+
+            if (prevVersionId == -1 || JSONWriter.isHigherVersion(prevVersionId, versionId)) {
+                String repository = SymbolTable.REPOSITORIES.get(snapshot.getRepositoryId(i));
+                String version = SymbolTable.VERSIONS.get(versionId);
+                final String versionBefore;
+                if (prevVersionId == -1) {
+                    versionBefore = "<new>";
+                } else {
+                    versionBefore = SymbolTable.VERSIONS.get(prevVersionId);
+                    System.out.println("Did find a different version for " + repository +
+                            ", previously at " + versionBefore +
+                            ", now at " + version);
+                }
+
+                changes.add(new VersionChange(snapshot.getDate(), repository, versionBefore, version));
+            }
+        }
+    }
+
     protected static void compareToPrevious(String date, Multimap<String, String> versions,
                                             Collection<VersionChange> changes, Map<String, String> seenRepositoryVersions) {
         for(Entry<String,String> entry : versions.entries()) {
@@ -271,18 +514,19 @@ public class ProcessResults {
         }
     }
 
-    private static String populateTable(Table<String, String, Data> dateVersionTable, String maxDateStr, Multimap<String, String> versions, String date) {
-        System.out.println("Had " + versions.size() + " entries for " + date);
-        for(String version : versions.keySet()) {
+    static String populateTable(Table<String, String, Data> dateVersionTable, String maxDateStr, RepositorySnapshot snapshot, String date) {
+        System.out.println("Had " + snapshot.size() + " entries for " + date);
+        Map<String, String> firstFiles = snapshot.getFirstFiles();
+        for(Entry<String, Integer> entry : snapshot.getFileCounts().entrySet()) {
             // combine all the non-version things like build-script variables, ...
-            String versionKey = getPrintableVersion(version);
+            String versionKey = getPrintableVersion(entry.getKey());
 
             // add the count in the table, there can be multiple lines with the same date!
             Data value = dateVersionTable.get(date, versionKey);
             if(value == null) {
-                value = new Data(versions.get(version).size(), versions.get(version).iterator().next());
+                value = new Data(entry.getValue(), firstFiles.get(entry.getKey()));
             } else {
-                value.count += versions.get(version).size();
+                value.count += entry.getValue();
             }
             dateVersionTable.put(date, versionKey, value);
 
@@ -294,12 +538,13 @@ public class ProcessResults {
     }
 
     private static String getPrintableVersion(String version) {
-        String versionKey = version;
-        // put everything that we cannot parse and some versions where we historically used the ooxml-schema version into "other"
-        if(!VERSION_PATTERN.matcher(version).matches() || "1.0".equals(version) || "1.1".equals(version) || "1.3".equals(version)) {
-            versionKey = "other";
-        }
-        return versionKey;
+        return PRINTABLE_VERSIONS.get(version, versionKey -> {
+            // put everything that we cannot parse and some versions where we historically used the ooxml-schema version into "other"
+            if(!VERSION_PATTERN.matcher(versionKey).matches() || "1.0".equals(versionKey) || "1.1".equals(versionKey) || "1.3".equals(versionKey)) {
+                return "other";
+            }
+            return versionKey;
+        });
     }
 
     private static void generateHtmlFiles(Table<String, String, Data> dateVersionTable, String maxDateStr, File results, File percentageResults) throws ParseException, IOException {
@@ -1,20 +1,28 @@
 package org.dstadler.github.search;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
+import org.dstadler.github.util.ContentCache;
+import org.dstadler.github.util.RepositoryCache;
 import org.kohsuke.github.GHContent;
-import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
 import org.kohsuke.github.GitHubBuilder;
-import org.kohsuke.github.HttpException;
-import org.kohsuke.github.RateLimitChecker;
 import org.kohsuke.github.RateLimitTarget;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -33,61 +41,308 @@ public abstract class BaseSearch {
     // parse out the name of the repository from the URL returned by the GitHub search
     private final static Pattern REPO_NAME = Pattern.compile("https://github\\.com/([-a-zA-Z0-9_.]+/[-a-zA-Z0-9_.]+)/blob/.*");
 
+    // number of search results which are checked and downloaded concurrently
+    public static int CONCURRENCY = Integer.getInteger("search.concurrency", 1);
+
+    // number of size-ranges of one code-search which are paged through concurrently
+    public static int SHARD_CONCURRENCY = Integer.getInteger("search.shardConcurrency", 2);
+
+    // URL of the GitHub API, e.g. a local stand-in for tests and benchmarks, the default is api.github.com
+    public static String ENDPOINT = System.getProperty("search.endpoint");
+
+    // number of search results for which the repository and the file are fetched with one GraphQL query,
+    // only used if GITHUB_TOKEN is set, 1 fetches each one via the REST API
+    public static int GRAPHQL_BATCH = Integer.getInteger("search.graphqlBatch", 50);
+
+    // URL of the GraphQL API used for the batches, e.g. a local stand-in for tests and benchmarks
+    public static String GRAPHQL_ENDPOINT = System.getProperty("search.graphqlEndpoint", "https://api.github.com/graphql");
+
+    // take the versions of files in repositories which were not pushed to since the latest stats-file from it
+    public static boolean INCREMENTAL = Boolean.getBoolean("search.incremental");
+
+    // retries failing calls to GitHub with backoff and stops calling it after many failures in a row
+    Retry retry = new Retry(3, 1000, 60_000, 20, 5 * 60_000);
+
+    // records the progress to continue an interrupted search, null if none is kept
+    SearchJournal journal;
+
+    // writes the results to a file as soon as they are found instead of collecting them, null if they are collected
+    ResultStream stream;
+
+    // the latest stats-file in incremental mode, null if all files are read
+    PreviousResults previous;
+
+    // handles the matches of all searches and size-ranges of a run, null to use a pool per size-range
+    ExecutorService executor;
+
+    /**
+     * Split the code-search into size-ranges with few enough results to page through
+     * all of them, process the ranges concurrently and merge the results in the order
+     * of the ranges.
+     */
+    protected void processQuery(GitHub github, Multimap<String, String> versions, QueryPlanner.Query query) throws IOException {
+        // an interrupted search continues with the same size-ranges as the results are recorded per range
+        List<QueryPlanner.Shard> shards = journal == null ? null : journal.getPlan(getClass().getSimpleName());
+        if (shards == null) {
+            shards = plan(query);
+            if (journal != null) {
+                journal.plan(getClass().getSimpleName(), shards);
+            }
+        }
+
+        int totalCount = 0;
+        for (QueryPlanner.Shard shard : shards) {
+            totalCount += shard.totalCount;
+        }
+        System.out.println("Had: " + totalCount + " total results with " + getClass().getSimpleName() + " in " + shards.size() + " searches: " + shards);
+
+        if (shards.size() == 1) {
+            processShard(github, versions, query, shards.get(0).size);
+            return;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(SHARD_CONCURRENCY, shards.size())),
+                new ThreadFactoryBuilder().setNameFormat("shard-%d").setDaemon(true).build());
+        try {
+            List<Future<Multimap<String, String>>> futures = new ArrayList<>();
+            for (QueryPlanner.Shard shard : shards) {
+                futures.add(executor.submit(() -> {
+                    Multimap<String, String> result = stream == null ? HashMultimap.create() : stream.asMultimap(getClass().getSimpleName());
+                    processShard(github, result, query, shard.size);
+                    return result;
+                }));
+            }
+
+            for (Future<Multimap<String, String>> future : futures) {
+                versions.putAll(FetchPipeline.get(future));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private List<QueryPlanner.Shard> plan(QueryPlanner.Query query) throws IOException {
+        return QueryPlanner.plan(new QueryPlanner.Query() {
+            @Override
+            public int getTotalCount(String size) throws IOException {
+                return retry.call("counting results for size " + size, () -> query.getTotalCount(size));
+            }
+
+            @Override
+            public Iterable<GHContent> list(String size) throws IOException {
+                return query.list(size);
+            }
+        }, QueryPlanner.MAX_RESULTS);
+    }
+
+    // a size-range which was completed before is taken from the journal without searching again
+    private void processShard(GitHub github, Multimap<String, String> versions, QueryPlanner.Query query, String size) throws IOException {
+        if (journal != null && journal.isDone(getClass().getSimpleName(), size)) {
+            for (Map.Entry<String, List<String>> entry : journal.getProcessed(getClass().getSimpleName(), size).entrySet()) {
+                for (String version : entry.getValue()) {
+                    versions.put(version, entry.getKey());
+                }
+            }
+            return;
+        }
+
+        processResults(github, versions, query.list(size), size);
+
+        if (journal != null) {
+            journal.done(getClass().getSimpleName(), size);
+        }
+    }
+
     protected void processResults(GitHub github, Multimap<String, String> versions, Iterable<GHContent> list) throws IOException {
-        // try up to three times to cater for some connection issues that
-        // we see from time to time.
-
-        // This is done around the whole loop as the iterator also
-        // fetches new pages.
-        // Note that getNonForkRepository() does it's own retry as well
-        int retries = 3;
-        while(true) {
-            try {
-                int i = 0;
-                for(GHContent match : list) {
-                    i++;
-
-                    final String htmlUrl = match.getHtmlUrl();
-                    String repo = getNonForkRepository(github, htmlUrl);
-                    if (repo == null) {
-                        continue;
-                    }
-
-                    String str = readFileContent(match, htmlUrl, repo);
-                    if (str == null) {
-                        continue;
-                    }
-
-                    try {
-                        parseVersion(versions, htmlUrl, repo, str);
-                    } catch (RuntimeException e) {
-                        throw new IllegalStateException("Failed for " + htmlUrl + ", repo; " + repo + ", str: " + str, e);
-                    }
-
-                    if(i % 1000 == 0) {
-                        System.out.println("Having " + i + " results");
-                    }
+        processResults(github, versions, list, null);
+    }
+
+    /**
+     * @param shard The size-range of the results, null for a search without size-qualifier,
+     *              used for recording the progress in the journal
+     */
+    void processResults(GitHub github, Multimap<String, String> versions, Iterable<GHContent> list, String shard) throws IOException {
+        // page through the results here while the matches are processed concurrently
+        try (FetchPipeline pipeline = executor == null ? new FetchPipeline(this, github, versions, CONCURRENCY, shard) :
+                new FetchPipeline(this, github, versions, CONCURRENCY, shard, executor)) {
+            // the iterator requests a page again if fetching it failed, so a retry
+            // continues with the failed page instead of starting all over
+            Iterator<GHContent> it = list.iterator();
+            GraphQLResolver resolver = createResolver();
+            List<GHContent> batch = new ArrayList<>();
+            int i = 0;
+            while (retry.call("fetching results after " + i + " results", it::hasNext)) {
+                i++;
+
+                batch.add(it.next());
+                if (resolver == null || batch.size() >= GRAPHQL_BATCH) {
+                    resolver = submit(pipeline, resolver, batch);
+                }
+
+                if(i % 1000 == 0) {
+                    System.out.println("Having " + i + " results");
                 }
+            }
 
-                System.out.println("Processed " + i + " results overall");
+            submit(pipeline, resolver, batch);
+            pipeline.finish();
 
-                //noinspection BreakStatement
-                break;
-            } catch (HttpException e) {
-                retries--;
+            System.out.println("Processed " + i + " results overall");
+        }
+    }
+
+    /**
+     * @return The resolver for fetching search results in batches or null to fetch each one via the REST API
+     */
+    GraphQLResolver createResolver() throws IOException {
+        return GraphQLResolver.create(getRepositoryField());
+    }
+
+    /**
+     * @return The information about repositories which is needed for processing the matches,
+     *      incremental mode needs the time of the last push, which is cached for a much shorter time
+     */
+    RepositoryCache.Field getRepositoryField() {
+        return previous == null ? RepositoryCache.Field.FORK : RepositoryCache.Field.PUSHED_AT;
+    }
+
+    // fills the caches for the batch if possible and processes the matches, which then fetch the rest via REST
+    private static GraphQLResolver submit(FetchPipeline pipeline, GraphQLResolver resolver, List<GHContent> batch) throws IOException {
+        if (resolver != null && !batch.isEmpty()) {
+            try {
+                resolver.resolve(batch);
+            } catch (IOException e) {
+                System.out.println("Fetching " + batch.size() + " results via the REST API from now on, GraphQL failed: " + e);
+                resolver = null;
+            }
+        }
+
+        for (GHContent match : batch) {
+            pipeline.submit(match);
+        }
+        batch.clear();
+
+        return resolver;
+    }
+
+    /**
+     * Process the match unless the journal shows that it was processed before
+     * the search was interrupted, the versions found in it are recorded in the journal.
+     */
+    void processMatch(GitHub github, Multimap<String, String> versions, GHContent match, String shard) throws IOException {
+        if (journal == null) {
+            processMatch(github, versions, match);
+            return;
+        }
+
+        final String htmlUrl = match.getHtmlUrl();
+        List<String> processed = journal.getVersions(getClass().getSimpleName(), shard, htmlUrl);
+        if (processed != null) {
+            for (String version : processed) {
+                versions.put(version, htmlUrl);
+            }
+            return;
+        }
 
-                if(retries <= 0) {
-                    throw e;
+        Multimap<String, String> found = HashMultimap.create();
+        processMatch(github, found, match);
+        versions.putAll(found);
+
+        journal.processed(getClass().getSimpleName(), shard, htmlUrl, found.keySet());
+    }
+
+    /**
+     * Check the repository of the match, read the file and parse the version from it,
+     * called concurrently for different matches if {@link #CONCURRENCY} is higher than 1.
+     *
+     * It is called again if it fails with an {@link org.kohsuke.github.HttpException}.
+     */
+    protected void processMatch(GitHub github, Multimap<String, String> versions, GHContent match) throws IOException {
+        final String htmlUrl = match.getHtmlUrl();
+        String repo = getNonForkRepository(github, htmlUrl);
+        if (repo == null) {
+            return;
+        }
+
+        // the file did not change if the repository was not pushed to since the previous stats-file
+        if (previous != null) {
+            List<String> known = previous.getVersions(htmlUrl,
+                    getRepositoryEntry(github, repo, RepositoryCache.Field.PUSHED_AT).pushedAt);
+            if (known != null) {
+                for (String version : known) {
+                    versions.put(version, htmlUrl);
                 }
+                return;
+            }
+        }
 
-                // retry once more
-                System.out.println("Retry " + retries + " after failing to talk to Github");
-                e.printStackTrace(System.out);
+        // an unchanged file has the same SHA, so the versions parsed before can be used
+        final String sha = match.getSha();
+        final ContentCache cache = ContentCache.getInstance();
+        if (sha != null) {
+            List<String> cached = cache.getVersions(getClass().getSimpleName(), sha);
+            if (cached != null) {
+                for (String version : cached) {
+                    versions.put(version, htmlUrl);
+                }
+                return;
             }
         }
+
+        String str = readFileContent(match, htmlUrl, repo);
+        if (str == null) {
+            return;
+        }
+
+        // collect the versions of this file separately to be able to cache them
+        Multimap<String, String> found = HashMultimap.create();
+        try {
+            parseVersion(found, htmlUrl, repo, str);
+        } catch (RuntimeException e) {
+            throw new IllegalStateException("Failed for " + htmlUrl + ", repo; " + repo + ", str: " + str, e);
+        }
+
+        versions.putAll(found);
+        if (sha != null && isSelfContained(str)) {
+            cache.putVersions(getClass().getSimpleName(), sha, found.keySet());
+        }
+    }
+
+    /**
+     * @param str The content of a found file
+     * @return true if the versions parsed from the content do not depend on any other file,
+     *      only then they are cached by the SHA of the file
+     */
+    protected boolean isSelfContained(String str) {
+        return true;
     }
 
     protected String readFileContent(GHContent match, String htmlUrl, String repo) throws IOException {
+        final String sha = match.getSha();
+        String str = sha == null ? null : ContentCache.getInstance().getContent(sha);
+        if (str == null) {
+            str = downloadFileContent(match, htmlUrl, repo);
+            if (str == null) {
+                return null;
+            }
+
+            if (sha != null) {
+                ContentCache.getInstance().putContent(sha, str);
+            }
+        }
+
+        // filter out some unwanted matches
+        str = str.replaceAll(getExcludeRegex(), "");
+
+        // skip this if the group-tag is not found any more now
+        if(!str.contains(GROUP)) {
+            //System.out.println("Did not find " + GROUP + " in content of repo " + repo + " at " + htmlUrl);
+            return null;
+        }
+        return str;
+    }
+
+    private static String downloadFileContent(GHContent match, String htmlUrl, String repo) throws IOException {
         // This is a workaround for https://github.com/github-api/github-api/issues/729
         match.refresh();
         if(match.getEncoding() == null) {
@@ -104,17 +359,7 @@ public abstract class BaseSearch {
             return null;
         }
 
-        String str = IOUtils.toString(stream, StandardCharsets.UTF_8);
-
-        // filter out some unwanted matches
-        str = str.replaceAll(getExcludeRegex(), "");
-
-        // skip this if the group-tag is not found any more now
-        if(!str.contains(GROUP)) {
-            //System.out.println("Did not find " + GROUP + " in content of repo " + repo + " at " + htmlUrl);
-            return null;
-        }
-        return str;
+        return IOUtils.toString(stream, StandardCharsets.UTF_8);
     }
 
     abstract void search(GitHub github, Multimap<String, String> versions) throws IOException;
@@ -136,29 +381,25 @@ public abstract class BaseSearch {
             return null;
         }
 
-        // try up to three times to cater for some connection issues that
-        // we see from time to time
-        int retries = 3;
-        while(true) {
-            try {
-                final GHRepository repository = github.getRepository(repo);
-                if (repository.isFork()) {
-                    //System.out.println("Ignoring forked repo " + repo);
-                    return null;
-                }
-                return repo;
-            } catch (HttpException e) {
-                retries--;
-
-                if(retries <= 0) {
-                    throw e;
-                }
-
-                // retry once more
-                System.out.println("Retry " + retries + " after failing to talk to Github");
-                e.printStackTrace(System.out);
-            }
+        // failures are retried together with the rest of processMatch()
+        final RepositoryCache.Entry repository = getRepositoryEntry(github, repo, RepositoryCache.Field.FORK);
+        if (repository.status != RepositoryCache.Status.OK) {
+            System.out.println("Ignoring repo " + repo + ": " + repository.status);
+            return null;
+        }
+        if (repository.fork) {
+            //System.out.println("Ignoring forked repo " + repo);
+            return null;
         }
+        return repo;
+    }
+
+    /**
+     * @return The cached metadata of the repository, fetched via the REST API if the
+     *      requested information is not cached or too old
+     */
+    protected RepositoryCache.Entry getRepositoryEntry(GitHub github, String repo, RepositoryCache.Field field) throws IOException {
+        return RepositoryCache.getInstance().get(github, repo, field);
     }
 
     public static String getRepository(CharSequence htmlUrl) {
@@ -171,6 +412,14 @@ public abstract class BaseSearch {
     }
 
     public static GitHub connect() throws IOException {
+        return connect(1);
+    }
+
+    /**
+     * @param searches The number of searches which use the connection concurrently,
+     *      the rate-limits keep enough requests for all of their workers
+     */
+    public static GitHub connect(int searches) throws IOException {
         GitHubBuilder builder = GitHubBuilder.fromEnvironment();
 
         // this can increase rate-limits considerably
@@ -180,9 +429,33 @@ public abstract class BaseSearch {
             builder.withJwtToken(token);
         }
 
+        if (StringUtils.isNotBlank(ENDPOINT)) {
+            System.out.println("Using GitHub API at " + ENDPOINT);
+            builder.withEndpoint(ENDPOINT);
+        }
+
         return builder.
-                // observe rate-limits and wait if we get near the returned remaining number of requests per timeframe
-                withRateLimitChecker(new RateLimitChecker.LiteralValue(1), RateLimitTarget.SEARCH).
+                // observe rate-limits and spread the remaining requests until the reset instead of
+                // waiting when the limit is reached, keep enough requests for the ones which are in flight
+                withRateLimitChecker(new RateLimitScheduler(getSearchWorkers(searches)), RateLimitTarget.SEARCH).
+                withRateLimitChecker(new RateLimitScheduler(getCoreWorkers(searches)), RateLimitTarget.CORE).
                 build();
     }
+
+    /**
+     * @return The number of threads which page through code-searches at the same time,
+     *      each search handles {@link #SHARD_CONCURRENCY} size-ranges concurrently
+     */
+    static int getSearchWorkers(int searches) {
+        return searches * SHARD_CONCURRENCY;
+    }
+
+    /**
+     * @return The number of threads which call the REST API at the same time, the matches
+     *      of all size-ranges are handled by one pool of {@link #CONCURRENCY} threads or
+     *      in the threads which page through the searches
+     */
+    static int getCoreWorkers(int searches) {
+        return CONCURRENCY > 1 ? CONCURRENCY : getSearchWorkers(searches);
+    }
 }
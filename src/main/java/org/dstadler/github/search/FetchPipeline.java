@@ -0,0 +1,160 @@
+package org.dstadler.github.search;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GitHub;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Handles the matches of a code-search on a pool of threads, so the fork-checks,
+ * downloads and parsing of the files overlap with paging through the search results.
+ *
+ * Only a few matches are kept in flight per thread, so paging does not run far ahead
+ * of the processing. Versions are collected via a synchronized view of the given
+ * multimap. With a concurrency of 1 each match is handled right away in the calling
+ * thread.
+ *
+ * The pool is usually shared by all pipelines of a run, see {@link Search#search(GitHub, BaseSearch...)},
+ * so the configured concurrency is the number of threads for all searches and size-ranges together.
+ */
+class FetchPipeline implements Closeable {
+    private final BaseSearch search;
+    private final GitHub github;
+    private final Multimap<String, String> versions;
+    private final String shard;
+
+    private final ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int maxPending;
+    private final Deque<Future<?>> pending = new ArrayDeque<>();
+
+    FetchPipeline(BaseSearch search, GitHub github, Multimap<String, String> versions, int concurrency) {
+        this(search, github, versions, concurrency, null);
+    }
+
+    // uses its own pool of threads which is shut down when the pipeline is closed
+    FetchPipeline(BaseSearch search, GitHub github, Multimap<String, String> versions, int concurrency, String shard) {
+        this(search, github, versions, concurrency, shard, concurrency == 1 ? null : createExecutor(concurrency), true);
+    }
+
+    /**
+     * @param executor The pool of threads shared with other pipelines, it is not shut down when
+     *                 the pipeline is closed, null to handle each match in the calling thread
+     * @param concurrency The number of threads of the pool
+     */
+    FetchPipeline(BaseSearch search, GitHub github, Multimap<String, String> versions, int concurrency, String shard,
+                  ExecutorService executor) {
+        this(search, github, versions, concurrency, shard, executor, false);
+    }
+
+    private FetchPipeline(BaseSearch search, GitHub github, Multimap<String, String> versions, int concurrency, String shard,
+                          ExecutorService executor, boolean ownExecutor) {
+        Preconditions.checkArgument(concurrency > 0, "Need a positive concurrency, but had %s", concurrency);
+
+        this.search = search;
+        this.github = github;
+        this.shard = shard;
+        this.maxPending = concurrency * 2;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.versions = executor == null ? versions : Multimaps.synchronizedMultimap(versions);
+    }
+
+    /**
+     * @param concurrency The number of threads
+     * @return A pool for handling matches, null if they are handled in the calling thread
+     */
+    static ExecutorService createExecutor(int concurrency) {
+        if (concurrency <= 1) {
+            return null;
+        }
+
+        return Executors.newFixedThreadPool(concurrency,
+                new ThreadFactoryBuilder().setNameFormat("search-%d").setDaemon(true).build());
+    }
+
+    /**
+     * Process the match, waits for earlier matches if too many are in flight.
+     *
+     * @param match The match of the code-search
+     * @throws IOException If processing this or an earlier match failed
+     */
+    void submit(GHContent match) throws IOException {
+        if (executor == null) {
+            process(match);
+            return;
+        }
+
+        while (pending.size() >= maxPending) {
+            get(pending.poll());
+        }
+
+        pending.add(executor.submit(() -> {
+            process(match);
+            return null;
+        }));
+    }
+
+    // only the failing match is retried, the other ones are not processed again
+    private void process(GHContent match) throws IOException {
+        search.retry.call("processing " + match.getHtmlUrl(), () -> {
+            search.processMatch(github, versions, match, shard);
+            return null;
+        });
+    }
+
+    /**
+     * Wait until all submitted matches are processed.
+     *
+     * @throws IOException If processing any of the matches failed
+     */
+    void finish() throws IOException {
+        while (!pending.isEmpty()) {
+            get(pending.poll());
+        }
+    }
+
+    /**
+     * Wait for the result of the future, failures are thrown with their original type if possible.
+     */
+    static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while processing search results", e);
+        } catch (ExecutionException e) {
+            // keep the original type, e.g. to retry on HttpException
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Future<?> future : pending) {
+            future.cancel(true);
+        }
+        pending.clear();
+
+        if (executor != null && ownExecutor) {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -2,9 +2,7 @@ package org.dstadler.github.search;
 
 import com.google.common.collect.Multimap;
 import org.apache.commons.lang3.StringUtils;
-import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.PagedSearchIterable;
 
 import java.io.IOException;
 import java.util.regex.Matcher;
@@ -53,17 +51,14 @@ public class GradleBuildSearch extends BaseSearch {
     @Override
     protected void search(GitHub github, Multimap<String, String> versions) throws IOException {
         // start search
-        final PagedSearchIterable<GHContent> list = github.searchContent().
+        final QueryPlanner.Query query = QueryPlanner.of(() -> github.searchContent().
                 filename("build.gradle").
                 in("file").
                 language("gradle").
-                q(GROUP_REGEX).
-                list();
-
-        System.out.println("Had: " + list.getTotalCount() + " total results with " + getClass().getSimpleName());
+                q(GROUP_REGEX));
 
         // paginate through results, filtering out interesting files
-        processResults(github, versions, list);
+        processQuery(github, versions, query);
     }
 
     @Override
@@ -0,0 +1,182 @@
+package org.dstadler.github.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.lang3.StringUtils;
+import org.dstadler.github.util.ContentCache;
+import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.RepositoryCache;
+import org.kohsuke.github.GHContent;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Fetches the fork-flag of the repositories and the content of the files for
+ * a batch of search-results with one GraphQL query and stores them in the
+ * {@link RepositoryCache} and the {@link ContentCache}.
+ *
+ * Processing the results afterwards then finds them in the caches. Anything
+ * which the query could not answer, e.g. because the repository is not accessible
+ * or the file is binary or too large, is not cached and thus fetched via the
+ * REST API as before.
+ */
+class GraphQLResolver {
+    private static final Duration TIMEOUT = Duration.ofSeconds(60);
+
+    private final HttpClient client = HttpClient.newBuilder().connectTimeout(TIMEOUT).build();
+    private final URI endpoint;
+    private final String token;
+    private final RepositoryCache repositories;
+    private final ContentCache contents;
+
+    // repositories for which this information is not cached any more are queried
+    private final RepositoryCache.Field field;
+
+    GraphQLResolver(URI endpoint, String token, RepositoryCache repositories, ContentCache contents) {
+        this(endpoint, token, repositories, contents, RepositoryCache.Field.FORK);
+    }
+
+    GraphQLResolver(URI endpoint, String token, RepositoryCache repositories, ContentCache contents, RepositoryCache.Field field) {
+        this.endpoint = endpoint;
+        this.token = token;
+        this.repositories = repositories;
+        this.contents = contents;
+        this.field = field;
+    }
+
+    /**
+     * @param field The information about the repositories which is needed, repositories for which
+     *              it is not cached are queried, e.g. {@link RepositoryCache.Field#PUSHED_AT} in incremental mode
+     * @return A resolver for {@link BaseSearch#GRAPHQL_ENDPOINT} or null if batching is disabled
+     *      or no GITHUB_TOKEN is set, as GraphQL requires authentication
+     * @throws IOException If reading the caches fails
+     */
+    static GraphQLResolver create(RepositoryCache.Field field) throws IOException {
+        String token = System.getenv("GITHUB_TOKEN");
+        if (BaseSearch.GRAPHQL_BATCH <= 1 || StringUtils.isBlank(token)) {
+            return null;
+        }
+
+        return new GraphQLResolver(URI.create(BaseSearch.GRAPHQL_ENDPOINT), token,
+                RepositoryCache.getInstance(), ContentCache.getInstance(), field);
+    }
+
+    /**
+     * @param matches The results of a code-search
+     * @return The number of queried repositories and files which were stored in the caches
+     * @throws IOException If the query fails
+     */
+    int resolve(List<GHContent> matches) throws IOException {
+        StringBuilder query = new StringBuilder("query {\n");
+        String[] repos = new String[matches.size()];
+        String[] shas = new String[matches.size()];
+        int queried = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            GHContent match = matches.get(i);
+            String repo = BaseSearch.getRepository(match.getHtmlUrl());
+            if (repo == null) {
+                continue;
+            }
+
+            if (!repositories.contains(repo, field)) {
+                repos[i] = repo;
+            }
+            String sha = match.getSha();
+            if (sha != null && sha.matches("[0-9a-f]{40,64}") && !contents.contains(sha)) {
+                shas[i] = sha;
+            }
+            if (repos[i] == null && shas[i] == null) {
+                continue;
+            }
+
+            int slash = repo.indexOf('/');
+            query.append("  h").append(i).append(": repository(owner: \"").append(repo, 0, slash).
+                    append("\", name: \"").append(repo.substring(slash + 1)).append("\") {");
+            if (repos[i] != null) {
+                query.append(" isFork stargazerCount pushedAt");
+            }
+            if (shas[i] != null) {
+                query.append(" object(oid: \"").append(sha).append("\") { ... on Blob { text isBinary isTruncated } }");
+            }
+            query.append(" }\n");
+            queried++;
+        }
+        query.append('}');
+
+        if (queried == 0) {
+            return 0;
+        }
+
+        JsonNode data = post(query.toString());
+
+        int resolved = 0;
+        for (int i = 0; i < matches.size(); i++) {
+            JsonNode node = data.get("h" + i);
+            if (node == null || node.isNull()) {
+                continue;
+            }
+
+            if (repos[i] != null && node.hasNonNull("isFork")) {
+                RepositoryCache.Entry entry = new RepositoryCache.Entry();
+                entry.fork = node.get("isFork").asBoolean();
+                entry.stars = node.path("stargazerCount").asInt();
+                // the REST API reports the stars as watchers as well
+                entry.watchers = entry.stars;
+                entry.pushedAt = node.hasNonNull("pushedAt") ? Instant.parse(node.get("pushedAt").asText()).toEpochMilli() : 0;
+                repositories.put(repos[i], entry);
+                resolved++;
+            }
+
+            JsonNode blob = node.path("object");
+            if (shas[i] != null && blob.hasNonNull("text") &&
+                    !blob.path("isBinary").asBoolean() && !blob.path("isTruncated").asBoolean()) {
+                contents.putContent(shas[i], blob.get("text").asText());
+                resolved++;
+            }
+        }
+
+        return resolved;
+    }
+
+    private JsonNode post(String query) throws IOException {
+        ObjectNode body = JSONWriter.mapper.createObjectNode();
+        body.put("query", query);
+
+        HttpRequest request = HttpRequest.newBuilder(endpoint).
+                timeout(TIMEOUT).
+                header("Authorization", "bearer " + token).
+                header("Content-Type", "application/json").
+                POST(HttpRequest.BodyPublishers.ofString(JSONWriter.mapper.writeValueAsString(body))).
+                build();
+
+        final HttpResponse<String> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofString());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while querying " + endpoint, e);
+        }
+
+        if (response.statusCode() != 200) {
+            throw new IOException("Query to " + endpoint + " failed with status " + response.statusCode() + ": " +
+                    StringUtils.abbreviate(response.body(), 500));
+        }
+
+        // single repositories which are not found are reported as errors as well, only fail if there is no data at all
+        JsonNode result = JSONWriter.mapper.readTree(response.body());
+        JsonNode data = result.path("data");
+        if (!data.isObject()) {
+            throw new IOException("Query to " + endpoint + " did not return data: " +
+                    StringUtils.abbreviate(result.path("errors").toString(), 500));
+        }
+
+        return data;
+    }
+}
@@ -3,9 +3,7 @@ package org.dstadler.github.search;
 import com.google.common.collect.Multimap;
 import org.apache.commons.lang3.StringUtils;
 import org.dstadler.commons.net.UrlUtils;
-import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.PagedSearchIterable;
 
 import java.io.IOException;
 import java.util.regex.Matcher;
@@ -52,6 +50,9 @@ public class MavenPomSearch extends BaseSearch {
             ')';
     private static final int TIMEOUT = 30_000;
 
+    // where parent poms are read from, the default is raw.githubusercontent.com
+    static String RAW_URL = "https://raw.githubusercontent.com/";
+
     @Override
     String getExcludeRegex() {
         return EXCLUDE_REGEX;
@@ -60,11 +61,11 @@ public class MavenPomSearch extends BaseSearch {
     @Override
     protected void search(GitHub github, Multimap<String, String> versions) throws IOException {
         // start search
-        final PagedSearchIterable<GHContent> list = github.searchContent().filename("pom.xml").in("file").language("maven").q(GROUP_REGEX).list();
-        System.out.println("Had: " + list.getTotalCount() + " total results with " + getClass().getSimpleName());
+        final QueryPlanner.Query query = QueryPlanner.of(() ->
+                github.searchContent().filename("pom.xml").in("file").language("maven").q(GROUP_REGEX));
 
         // paginate through results, filtering out interesting files
-        processResults(github, versions, list);
+        processQuery(github, versions, query);
     }
 
     @Override
@@ -91,6 +92,21 @@ public class MavenPomSearch extends BaseSearch {
         }
     }
 
+    /**
+     * A version from a variable which is not defined in the file is taken from the parent pom
+     * at the commit of the file, so it can change while the file stays the same.
+     */
+    @Override
+    protected boolean isSelfContained(String str) {
+        for (Pattern pattern : new Pattern[] { PATTERN_DEPENDENCY, PATTERN_DEPENDENCY_2 }) {
+            Matcher matcher = pattern.matcher(str);
+            if (matcher.find() && matcher.group(1).startsWith("$") && getVariable(str, matcher.group(1)) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     private static String getVariable(CharSequence str, String version) {
         final String var = StringUtils.removeStart(StringUtils.removeEnd(version.substring(1), "}"), "{");
         Matcher matcher = Pattern.compile(
@@ -117,7 +133,7 @@ public class MavenPomSearch extends BaseSearch {
             Matcher matcher = Pattern.compile("https://github\\.com/([-a-zA-Z0-9_.]+/[-a-zA-Z0-9_.]+/)blob/([a-f0-9]+/.*?)[^/]+/pom.xml").matcher(htmlUrl);
             if (matcher.find()) {
                 // https://raw.githubusercontent.com/seeyoula/sbs/576bd28004562d235b1472504d3c5849790fc343/tools/com.sbs.tools/pom.xml
-                final String url = "https://raw.githubusercontent.com/" + matcher.group(1) + matcher.group(2) + "pom.xml";
+                final String url = RAW_URL + matcher.group(1) + matcher.group(2) + "pom.xml";
                 try {
                     String parent = UrlUtils.retrieveData(url, TIMEOUT);
 
@@ -0,0 +1,96 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.SetMultimap;
+import org.dstadler.github.util.DeltaStats;
+import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.Stats;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The versions of the latest stats-file, used in incremental mode to take the
+ * versions of files in repositories which were not pushed to since then instead
+ * of reading and parsing the files again.
+ *
+ * Only the start of the day of the stats-file is known, so repositories which
+ * were pushed to on that day are always read again.
+ */
+class PreviousResults {
+    private final String date;
+    private final long start;
+
+    // file-URL -> versions found in it
+    private final Map<String, List<String>> versions = new HashMap<>();
+
+    private final AtomicInteger reused = new AtomicInteger();
+
+    PreviousResults(String date, SetMultimap<String, String> versions) {
+        this.date = date;
+        try {
+            this.start = JSONWriter.DATE_FORMAT.parse(date).getTime();
+        } catch (ParseException e) {
+            throw new IllegalStateException("Failed to parse date " + date, e);
+        }
+
+        for (Map.Entry<String, String> entry : versions.entries()) {
+            this.versions.computeIfAbsent(entry.getValue(), url -> new ArrayList<>(1)).add(entry.getKey());
+        }
+    }
+
+    /**
+     * @param dir The directory with the stats-files
+     * @return The versions of the latest stats-file or null if there is none
+     * @throws IOException If reading the stats-file fails
+     */
+    static PreviousResults read(File dir) throws IOException {
+        File[] files = Stats.getFiles(dir);
+        if (files.length == 0) {
+            return null;
+        }
+
+        String date = Stats.getDate(files[files.length - 1]);
+        SetMultimap<String, String> versions = DeltaStats.getSnapshot(dir, date);
+        if (versions == null) {
+            return null;
+        }
+
+        System.out.println("Using " + versions.size() + " results of " + date + " for repositories which were not pushed to since then");
+        return new PreviousResults(date, versions);
+    }
+
+    /**
+     * @param url The URL of a search result
+     * @param pushedAt When the repository of the file was pushed to the last time, 0 if not known
+     * @return The versions found in the file before or null if the file needs to be read again,
+     *      because the repository was changed or the file was not part of the stats-file
+     */
+    List<String> getVersions(String url, long pushedAt) {
+        if (pushedAt == 0 || pushedAt >= start) {
+            return null;
+        }
+
+        List<String> found = versions.get(url);
+        if (found != null) {
+            reused.incrementAndGet();
+        }
+        return found;
+    }
+
+    String getDate() {
+        return date;
+    }
+
+    /**
+     * @return How often versions were taken from the stats-file
+     */
+    int getReused() {
+        return reused.get();
+    }
+}
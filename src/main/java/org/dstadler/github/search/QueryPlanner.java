@@ -0,0 +1,119 @@
+package org.dstadler.github.search;
+
+import com.google.common.base.Preconditions;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHContentSearchBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Splits a code-search into searches for disjoint ranges of file-sizes, so that
+ * each of them stays below the number of results which GitHub allows to page
+ * through.
+ *
+ * Ranges with too many results are bisected until they are small enough or only
+ * cover a single size.
+ */
+class QueryPlanner {
+    // GitHub only returns the first 1000 results of a search
+    static final int MAX_RESULTS = 1000;
+
+    // larger files are not indexed by the code-search
+    static final int MAX_FILE_SIZE = 384 * 1024;
+
+    interface Query {
+        /**
+         * @param size A size-qualifier like "0..1023" or null to search files of any size
+         * @return The number of results of the search
+         */
+        int getTotalCount(String size) throws IOException;
+
+        /**
+         * @param size A size-qualifier like "0..1023" or null to search files of any size
+         * @return The results of the search, pages are fetched while iterating
+         */
+        Iterable<GHContent> list(String size) throws IOException;
+    }
+
+    static class Shard {
+        // null for the search without size-qualifier
+        final String size;
+        final int totalCount;
+
+        Shard(String size, int totalCount) {
+            this.size = size;
+            this.totalCount = totalCount;
+        }
+
+        @Override
+        public String toString() {
+            return (size == null ? "any size" : "size " + size) + ": " + totalCount;
+        }
+    }
+
+    /**
+     * @param builder Creates a new code-search for each call
+     * @return A query which adds the size-qualifier to the code-search
+     */
+    static Query of(Supplier<GHContentSearchBuilder> builder) {
+        return new Query() {
+            @Override
+            public int getTotalCount(String size) {
+                // only one result is needed to get the count
+                return build(size).list().withPageSize(1).getTotalCount();
+            }
+
+            @Override
+            public Iterable<GHContent> list(String size) {
+                return build(size).list();
+            }
+
+            private GHContentSearchBuilder build(String size) {
+                GHContentSearchBuilder search = builder.get();
+                return size == null ? search : search.size(size);
+            }
+        };
+    }
+
+    /**
+     * @param query The code-search
+     * @param maxResults The number of results which can be read from one search
+     * @return The searches to run, either the unrestricted search if it has few enough
+     *      results or searches for disjoint size-ranges, in ascending order of size
+     * @throws IOException If counting the results fails
+     */
+    static List<Shard> plan(Query query, int maxResults) throws IOException {
+        Preconditions.checkArgument(maxResults > 0, "Need a positive number of results, but had %s", maxResults);
+
+        List<Shard> shards = new ArrayList<>();
+        int totalCount = query.getTotalCount(null);
+        if (totalCount <= maxResults) {
+            shards.add(new Shard(null, totalCount));
+            return shards;
+        }
+
+        plan(query, maxResults, 0, MAX_FILE_SIZE, shards);
+        return shards;
+    }
+
+    private static void plan(Query query, int maxResults, int min, int max, List<Shard> shards) throws IOException {
+        String size = min + ".." + max;
+        int totalCount = query.getTotalCount(size);
+        if (totalCount > maxResults && min < max) {
+            int middle = min + (max - min) / 2;
+            plan(query, maxResults, min, middle, shards);
+            plan(query, maxResults, middle + 1, max, shards);
+            return;
+        }
+
+        if (totalCount > maxResults) {
+            System.out.println("Cannot split size " + size + " any further, only reading " + maxResults + " of " + totalCount + " results");
+        }
+        if (totalCount > 0) {
+            shards.add(new Shard(size, totalCount));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package org.dstadler.github.search;
+
+import com.google.common.base.Preconditions;
+import org.kohsuke.github.GHRateLimit;
+import org.kohsuke.github.RateLimitChecker;
+
+/**
+ * Paces the requests of one rate-limit bucket based on the remaining requests and
+ * the reset-time which GitHub reports with each response.
+ *
+ * The first half of the limit is used without delay, afterwards each request gets
+ * its own slot so that the remaining requests are spread evenly until the reset.
+ * Concurrent workers thus take turns instead of all of them running into the
+ * limit and sleeping until the reset at the same time. A few requests are kept
+ * for the ones which are already in flight.
+ */
+class RateLimitScheduler extends RateLimitChecker {
+    // wait a bit longer than the reported reset to cater for differences in the clocks
+    private static final long RESET_DELAY = 1000;
+
+    private final int reserve;
+
+    // earliest time when the next request can start
+    private long next;
+
+    /**
+     * @param reserve The number of remaining requests to keep for requests
+     *      which are in flight concurrently
+     */
+    RateLimitScheduler(int reserve) {
+        Preconditions.checkArgument(reserve >= 0, "Need a non-negative reserve, but had %s", reserve);
+
+        this.reserve = reserve;
+    }
+
+    @Override
+    protected boolean checkRateLimit(GHRateLimit.Record rateLimitRecord, long count) throws InterruptedException {
+        long delay = reserve(rateLimitRecord.getLimit(), rateLimitRecord.getRemaining(),
+                rateLimitRecord.getResetEpochSeconds() * 1000, System.currentTimeMillis());
+        if (delay > 0) {
+            Thread.sleep(delay);
+        }
+
+        // the slot was reserved, so the request can be sent without checking again
+        return false;
+    }
+
+    /**
+     * @param limit The number of requests allowed until the reset
+     * @param remaining The number of requests which are still allowed until the reset
+     * @param reset The time of the reset in milliseconds since the epoch
+     * @param now The current time in milliseconds since the epoch
+     * @return The number of milliseconds to wait before the next request can be sent
+     */
+    synchronized long reserve(int limit, int remaining, long reset, long now) {
+        long slot = Math.max(now, next);
+
+        int available = remaining - reserve;
+        if (available <= 0) {
+            // nothing left, wait for the reset, this is a no-op if the reset is already over
+            slot = Math.max(slot, reset + RESET_DELAY);
+            next = slot;
+        } else if (remaining > limit / 2) {
+            next = slot;
+        } else {
+            next = slot + Math.max(0, reset - slot) / available;
+        }
+
+        return slot - now;
+    }
+}
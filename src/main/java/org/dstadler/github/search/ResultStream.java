@@ -0,0 +1,164 @@
+package org.dstadler.github.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ForwardingSetMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.dstadler.github.util.JSONWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Writes the versions found by the searches to a file as soon as they are found,
+ * one JSON object with search, version and file-URL per line, so the results do not
+ * need to be kept in memory until all searches are done.
+ *
+ * {@link #read(File, List)} collects the lines again for writing the stats-file of the day
+ * in the same order as {@link Search#search(org.kohsuke.github.GitHub, BaseSearch...)}
+ * merges results which are kept in memory. The file is started empty for each run,
+ * results of an interrupted run are added again from the {@link SearchJournal}.
+ */
+class ResultStream implements Closeable {
+    static File FILE = new File("search.results");
+
+    private final Writer writer;
+
+    private int count;
+
+    /**
+     * @param file The file to write to, any previous content is removed
+     * @throws IOException If the file cannot be created
+     */
+    ResultStream(File file) throws IOException {
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch", the results are
+     *      ordered by search when reading them
+     * @return A multimap which writes all added versions to the file, it is always empty
+     *      when reading from it, it can be used from multiple threads
+     */
+    SetMultimap<String, String> asMultimap(String search) {
+        return new Sink(search);
+    }
+
+    synchronized void add(String search, String version, String url) {
+        ObjectNode line = JSONWriter.mapper.createObjectNode();
+        line.put("search", search);
+        line.put("version", version);
+        line.put("url", url);
+
+        try {
+            writer.write(JSONWriter.mapper.writeValueAsString(line));
+            writer.write('\n');
+        } catch (IOException e) {
+            // Multimap.put() cannot throw an IOException
+            throw new UncheckedIOException("Could not write result for " + url, e);
+        }
+        count++;
+    }
+
+    synchronized int getCount() {
+        return count;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * Read the results of the file in the order of the given searches and sorted by
+     * version and URL within each search, so the result does not depend on the order
+     * in which the searches found them.
+     *
+     * @param file The file written by a ResultStream
+     * @param searches The types of search in the order in which their results are merged,
+     *      results of other searches follow sorted by the type of search
+     * @return Version as key, the file-URLs as values, duplicates are removed
+     * @throws IOException If reading fails
+     */
+    static SetMultimap<String, String> read(File file, List<String> searches) throws IOException {
+        Map<String, SetMultimap<String, String>> results = new TreeMap<>();
+        try (LineIterator it = FileUtils.lineIterator(file, "UTF-8")) {
+            while (it.hasNext()) {
+                String str = it.next();
+                if (str.isBlank()) {
+                    continue;
+                }
+
+                JsonNode line = JSONWriter.mapper.readTree(str);
+                results.computeIfAbsent(line.path("search").asText(), search -> TreeMultimap.create()).
+                        put(line.get("version").asText(), line.get("url").asText());
+            }
+        }
+
+        SetMultimap<String, String> versions = LinkedHashMultimap.create();
+        for (String search : searches) {
+            SetMultimap<String, String> result = results.remove(search);
+            if (result != null) {
+                versions.putAll(result);
+            }
+        }
+        for (SetMultimap<String, String> result : results.values()) {
+            versions.putAll(result);
+        }
+        return versions;
+    }
+
+    // only put() is passed on to the file, all other methods see an empty multimap
+    private class Sink extends ForwardingSetMultimap<String, String> {
+        private final String search;
+
+        private Sink(String search) {
+            this.search = search;
+        }
+
+        @Override
+        protected SetMultimap<String, String> delegate() {
+            return ImmutableSetMultimap.of();
+        }
+
+        @Override
+        public boolean put(String version, String url) {
+            add(search, version, url);
+            return true;
+        }
+
+        @Override
+        public boolean putAll(String version, Iterable<? extends String> urls) {
+            boolean changed = false;
+            for (String url : urls) {
+                changed |= put(version, url);
+            }
+            return changed;
+        }
+
+        @Override
+        public boolean putAll(Multimap<? extends String, ? extends String> multimap) {
+            boolean changed = false;
+            for (Map.Entry<? extends String, ? extends String> entry : multimap.entries()) {
+                changed |= put(entry.getKey(), entry.getValue());
+            }
+            return changed;
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.dstadler.github.search;
+
+import com.google.common.base.Preconditions;
+import org.kohsuke.github.GHException;
+import org.kohsuke.github.HttpException;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Retries calls to GitHub which fail with an {@link HttpException}, waiting
+ * exponentially longer with some random jitter between the attempts.
+ *
+ * A circuit breaker stops calling GitHub if many calls fail in a row: calls
+ * fail right away until the open-time is over, then the next call is tried
+ * again and re-opens the breaker if it fails as well.
+ */
+class Retry {
+    interface Call<T> {
+        T call() throws IOException;
+    }
+
+    private final int attempts;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final int failureThreshold;
+    private final long openTime;
+
+    private int consecutiveFailures;
+    private long openUntil;
+
+    /**
+     * @param attempts The number of times a call is tried
+     * @param initialDelay The milliseconds to wait before the first retry, doubled for each further retry
+     * @param maxDelay The maximum number of milliseconds to wait between attempts
+     * @param failureThreshold The number of failures in a row which open the circuit breaker
+     * @param openTime The milliseconds during which calls fail right away when the circuit breaker is open
+     */
+    Retry(int attempts, long initialDelay, long maxDelay, int failureThreshold, long openTime) {
+        Preconditions.checkArgument(attempts > 0, "Need a positive number of attempts, but had %s", attempts);
+        Preconditions.checkArgument(initialDelay >= 0 && maxDelay >= initialDelay,
+                "Need delays with 0 <= initial <= max, but had %s and %s", initialDelay, maxDelay);
+        Preconditions.checkArgument(failureThreshold > 0, "Need a positive failure-threshold, but had %s", failureThreshold);
+
+        this.attempts = attempts;
+        this.initialDelay = initialDelay;
+        this.maxDelay = maxDelay;
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+    }
+
+    /**
+     * @param description Describes the call for logging
+     * @param call The call to GitHub
+     * @return The result of the call
+     * @throws IOException If the last attempt failed, any other exception than
+     *      {@link HttpException} is thrown right away, also if the circuit breaker is open
+     */
+    <T> T call(String description, Call<T> call) throws IOException {
+        for (int attempt = 1; ; attempt++) {
+            checkClosed();
+
+            HttpException failure;
+            try {
+                T result = call.call();
+                succeeded();
+                return result;
+            } catch (HttpException e) {
+                failure = e;
+            } catch (GHException e) {
+                // iterators of search-results wrap the failure of fetching the next page
+                if (!(e.getCause() instanceof HttpException)) {
+                    throw e;
+                }
+                failure = (HttpException) e.getCause();
+            }
+
+            failed();
+            if (attempt >= attempts) {
+                throw failure;
+            }
+
+            long delay = getDelay(attempt);
+            System.out.println("Retry " + attempt + " of " + description + " in " + delay + "ms after failing to talk to Github: " + failure);
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting to retry " + description, e);
+            }
+        }
+    }
+
+    /**
+     * @param attempt The number of the attempt which failed, starting at 1
+     * @return The milliseconds to wait, between half and the full exponential delay
+     */
+    long getDelay(int attempt) {
+        long delay = initialDelay << Math.min(attempt - 1, 30);
+        if (delay < 0 || delay > maxDelay) {
+            delay = maxDelay;
+        }
+
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+
+    private synchronized void checkClosed() throws IOException {
+        if (consecutiveFailures >= failureThreshold && System.currentTimeMillis() < openUntil) {
+            throw new IOException("Not calling Github after " + consecutiveFailures + " failures in a row, waiting for " +
+                    (openUntil - System.currentTimeMillis()) + "ms");
+        }
+    }
+
+    private synchronized void succeeded() {
+        consecutiveFailures = 0;
+    }
+
+    private synchronized void failed() {
+        consecutiveFailures++;
+        if (consecutiveFailures >= failureThreshold) {
+            openUntil = System.currentTimeMillis() + openTime;
+        }
+    }
+}
@@ -1,12 +1,23 @@
 package org.dstadler.github.search;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
 import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.RepositoryCache;
 import org.kohsuke.github.GitHub;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.dstadler.github.util.JSONWriter.DATE_FORMAT;
 
@@ -14,6 +25,9 @@ import static org.dstadler.github.util.JSONWriter.DATE_FORMAT;
  * Combined application which calls the various code-searches
  */
 public class Search {
+    // write the results to a file while searching instead of keeping them in memory until all searches are done
+    public static boolean STREAM = Boolean.getBoolean("search.stream");
+
     public static void main(String[] args) throws IOException {
         runSearch(
                 // search for build.gradle files
@@ -25,20 +39,106 @@ public class Search {
     }
 
     protected static void runSearch(BaseSearch... searches) throws IOException {
-        GitHub github = BaseSearch.connect();
+        GitHub github = BaseSearch.connect(searches.length);
+
+        // continues a search which was interrupted, the journal is kept if this one fails as well
+        try (SearchJournal journal = SearchJournal.open(SearchJournal.FILE)) {
+            PreviousResults previous = BaseSearch.INCREMENTAL ? PreviousResults.read(JSONWriter.STATS_DIR) : null;
+            for (BaseSearch search : searches) {
+                search.journal = journal;
+                search.previous = previous;
+            }
+
+            SetMultimap<String,String> versions;
+            if (STREAM) {
+                try (ResultStream stream = new ResultStream(ResultStream.FILE)) {
+                    for (BaseSearch search : searches) {
+                        search.stream = stream;
+                    }
+
+                    search(github, searches);
+                    System.out.println("Wrote " + stream.getCount() + " results to " + ResultStream.FILE);
+                }
+
+                versions = ResultStream.read(ResultStream.FILE, getNames(searches));
+            } else {
+                versions = search(github, searches);
+            }
+
+            if (previous != null) {
+                System.out.println("Took the versions of " + previous.getReused() + " results from the stats of " + previous.getDate());
+            }
+
+            RepositoryCache.getInstance().write();
+            ContentCache.getInstance().write();
+
+            System.out.println("Had " + versions.keySet().size() + " different versions for " + versions.size() + " projects");
+            for(String version : versions.keySet()) {
+                System.out.println("Had: " + version + ' ' + versions.get(version).size() + " times");
+            }
+
+            JSONWriter.write(DATE_FORMAT.format(new Date()), versions);
 
-        // use a SetMultimap here to not record duplicates
-        SetMultimap<String,String> versions = HashMultimap.create();
+            journal.finish();
+            if (STREAM) {
+                FileUtils.forceDelete(ResultStream.FILE);
+            }
+        }
+    }
+
+    /**
+     * Run the searches in parallel, each one with its own result, and merge the
+     * results afterwards in the order of the searches and sorted by version and
+     * URL, so the result does not depend on which search finishes first. With
+     * {@link #STREAM} the results are read in the same order by {@link ResultStream#read}.
+     *
+     * The matches of all searches are handled by one pool of {@link BaseSearch#CONCURRENCY} threads.
+     */
+    static SetMultimap<String, String> search(GitHub github, BaseSearch... searches) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, searches.length),
+                new ThreadFactoryBuilder().setNameFormat("runSearch-%d").setDaemon(true).build());
+        ExecutorService fetchExecutor = FetchPipeline.createExecutor(BaseSearch.CONCURRENCY);
         for (BaseSearch search : searches) {
-            System.out.println("Searching with: " + search.getClass().getSimpleName());
-            search.search(github, versions);
+            search.executor = fetchExecutor;
         }
+        try {
+            List<Future<SetMultimap<String, String>>> futures = new ArrayList<>();
+            for (BaseSearch search : searches) {
+                futures.add(executor.submit(() -> {
+                    System.out.println("Searching with: " + search.getClass().getSimpleName());
+
+                    // use a SetMultimap here to not record duplicates
+                    SetMultimap<String, String> result = search.stream == null ? HashMultimap.create() :
+                            search.stream.asMultimap(search.getClass().getSimpleName());
+                    search.search(github, result);
+                    return result;
+                }));
+            }
 
-        System.out.println("Had " + versions.keySet().size() + " different versions for " + versions.size() + " projects");
-        for(String version : versions.keySet()) {
-            System.out.println("Had: " + version + ' ' + versions.get(version).size() + " times");
+            // keep the order in which the results are merged
+            SetMultimap<String, String> versions = LinkedHashMultimap.create();
+            for (Future<SetMultimap<String, String>> future : futures) {
+                versions.putAll(TreeMultimap.create(FetchPipeline.get(future)));
+            }
+            return versions;
+        } finally {
+            executor.shutdownNow();
+
+            for (BaseSearch search : searches) {
+                search.executor = null;
+            }
+            if (fetchExecutor != null) {
+                fetchExecutor.shutdownNow();
+            }
         }
+    }
 
-        JSONWriter.write(DATE_FORMAT.format(new Date()), versions);
+    // the searches are identified by their type in the journal and the result-stream
+    private static List<String> getNames(BaseSearch... searches) {
+        List<String> names = new ArrayList<>();
+        for (BaseSearch search : searches) {
+            names.add(search.getClass().getSimpleName());
+        }
+        return names;
     }
 }
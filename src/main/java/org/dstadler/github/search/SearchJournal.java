@@ -0,0 +1,328 @@
+package org.dstadler.github.search;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+import org.dstadler.github.util.JSONWriter;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the progress of a search, so a run which crashed or was killed can
+ * continue where it stopped instead of fetching everything again.
+ *
+ * Each line of the journal is one JSON object: the size-ranges which were planned
+ * for a search, each processed search result with the versions found in it and
+ * each size-range which was completed. Lines are flushed right away, an incomplete
+ * last line of a killed run is ignored when reading. The journal is removed after
+ * the results were written.
+ *
+ * Only the plans and completed size-ranges are kept in memory, the processed results
+ * of a previous run are read from the file again for each size-range when it is
+ * searched, so memory does not grow with the number of results.
+ */
+class SearchJournal implements Closeable {
+    static File FILE = new File("search.journal");
+
+    // older journals are not used as the results of the search may have changed too much
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(1);
+
+    // "any" for searches without size-qualifier
+    private static final String ANY_SIZE = "any";
+
+    private final File file;
+    private final Writer writer;
+
+    // search-type as key
+    private final Map<String, List<QueryPlanner.Shard>> plans = new HashMap<>();
+
+    // "<search-type> <size>" as key
+    private final Set<String> done = new HashSet<>();
+
+    // the number of results processed by a previous run, "<search-type> <size>" as key
+    private final Map<String, Integer> resumed = new HashMap<>();
+
+    // the processed results of the size-ranges which are searched right now, "<search-type> <size>" as key
+    private final Map<String, Map<String, List<String>>> loaded = new HashMap<>();
+
+    private SearchJournal(File file) throws IOException {
+        this.file = file;
+
+        boolean exists = file.exists();
+        boolean incomplete = exists && file.length() > 0 && !endsWithNewline(file);
+        this.writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        if (!exists) {
+            ObjectNode start = line("start");
+            start.put("started", System.currentTimeMillis());
+            write(start);
+        } else if (incomplete) {
+            // keep the incomplete last line of a killed run separate from the next one
+            writer.write('\n');
+            writer.flush();
+        }
+    }
+
+    /**
+     * @param file The journal of a previous run which did not finish or a new one
+     * @return The journal with the progress of the previous run if it is recent enough
+     * @throws IOException If reading or creating the journal fails
+     */
+    static SearchJournal open(File file) throws IOException {
+        if (file.exists() && !isRecent(file)) {
+            System.out.println("Not using outdated journal " + file);
+            FileUtils.forceDelete(file);
+        }
+
+        boolean exists = file.exists();
+        SearchJournal journal = new SearchJournal(file);
+        if (exists) {
+            try (LineIterator it = FileUtils.lineIterator(file, "UTF-8")) {
+                while (it.hasNext()) {
+                    String str = it.next();
+                    JsonNode line = parse(str);
+                    if (line == null) {
+                        System.out.println("Ignoring incomplete line in " + file + ": " + str);
+                    } else {
+                        journal.read(line);
+                    }
+                }
+            }
+        }
+
+        int resumed = journal.resumed.values().stream().mapToInt(Integer::intValue).sum();
+        if (resumed > 0) {
+            System.out.println("Continuing the search from " + file + " with " + resumed + " processed results");
+        }
+
+        return journal;
+    }
+
+    private static boolean isRecent(File file) throws IOException {
+        try (LineIterator it = FileUtils.lineIterator(file, "UTF-8")) {
+            JsonNode start = it.hasNext() ? parse(it.next()) : null;
+            return start != null && "start".equals(start.path("type").asText()) &&
+                    System.currentTimeMillis() - start.path("started").asLong() <= MAX_AGE;
+        }
+    }
+
+    private static boolean endsWithNewline(File file) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(raf.length() - 1);
+            return raf.read() == '\n';
+        }
+    }
+
+    // null for the last line of a run which was killed while writing it
+    private static JsonNode parse(String str) throws IOException {
+        if (str.isBlank()) {
+            return null;
+        }
+
+        try {
+            return JSONWriter.mapper.readTree(str);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private void read(JsonNode line) {
+        String search = line.path("search").asText();
+        switch (line.path("type").asText()) {
+            case "plan":
+                List<QueryPlanner.Shard> shards = new ArrayList<>();
+                for (JsonNode shard : line.path("shards")) {
+                    shards.add(new QueryPlanner.Shard(shard.path("size").isNull() ? null : shard.path("size").asText(),
+                            shard.path("totalCount").asInt()));
+                }
+                plans.put(search, shards);
+                break;
+            case "processed":
+                // only counted, the versions are read again when the size-range is searched
+                resumed.merge(key(search, line.path("size").asText()), 1, Integer::sum);
+                break;
+            case "done":
+                done.add(key(search, line.path("size").asText()));
+                break;
+            default:
+                // "start"
+                break;
+        }
+    }
+
+    // URL as key, the versions found in it as value, for all results of the size-range in the file
+    private Map<String, List<String>> readProcessed(String key) throws IOException {
+        Map<String, List<String>> processed = new HashMap<>();
+        if (!resumed.containsKey(key)) {
+            return processed;
+        }
+
+        try (LineIterator it = FileUtils.lineIterator(file, "UTF-8")) {
+            while (it.hasNext()) {
+                JsonNode line = parse(it.next());
+                if (line == null || !"processed".equals(line.path("type").asText()) ||
+                        !key.equals(key(line.path("search").asText(), line.path("size").asText()))) {
+                    continue;
+                }
+
+                List<String> versions = new ArrayList<>();
+                for (JsonNode version : line.path("versions")) {
+                    versions.add(version.asText());
+                }
+                processed.put(line.path("url").asText(), versions);
+            }
+        }
+        return processed;
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @return The size-ranges which were planned before or null if there are none
+     */
+    synchronized List<QueryPlanner.Shard> getPlan(String search) {
+        return plans.get(search);
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @param shards The size-ranges which are searched
+     * @throws IOException If writing fails
+     */
+    synchronized void plan(String search, List<QueryPlanner.Shard> shards) throws IOException {
+        plans.put(search, shards);
+
+        ObjectNode line = line("plan");
+        line.put("search", search);
+        ArrayNode array = line.putArray("shards");
+        for (QueryPlanner.Shard shard : shards) {
+            ObjectNode node = array.addObject();
+            node.put("size", shard.size);
+            node.put("totalCount", shard.totalCount);
+        }
+        write(line);
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @param size The size-range or null for the search without size-qualifier
+     * @param url The URL of the search result
+     * @return The versions found in the result or null if it was not processed by a previous run
+     * @throws IOException If reading the journal fails
+     */
+    synchronized List<String> getVersions(String search, String size, String url) throws IOException {
+        String key = key(search, size);
+        if (!resumed.containsKey(key)) {
+            return null;
+        }
+
+        // read once per size-range and kept until it is done
+        Map<String, List<String>> urls = loaded.get(key);
+        if (urls == null) {
+            urls = readProcessed(key);
+            loaded.put(key, urls);
+        }
+        return urls.get(url);
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @param size The size-range or null for the search without size-qualifier
+     * @return URL as key, the versions found in it as value, for all results processed by a previous run
+     * @throws IOException If reading the journal fails
+     */
+    synchronized Map<String, List<String>> getProcessed(String search, String size) throws IOException {
+        return readProcessed(key(search, size));
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @param size The size-range or null for the search without size-qualifier
+     * @param url The URL of the search result
+     * @param versions The versions found in the result, empty if it was skipped or none was found
+     * @throws IOException If writing fails
+     */
+    synchronized void processed(String search, String size, String url, Collection<String> versions) throws IOException {
+        // only written, results of this run are not looked up again, so memory does not grow with the results
+        ObjectNode line = line("processed");
+        line.put("search", search);
+        line.put("size", size == null ? ANY_SIZE : size);
+        line.put("url", url);
+        ArrayNode array = line.putArray("versions");
+        versions.forEach(array::add);
+        write(line);
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @param size The size-range or null for the search without size-qualifier
+     * @return true if all results of the search for the size-range were processed
+     */
+    synchronized boolean isDone(String search, String size) {
+        return done.contains(key(search, size));
+    }
+
+    /**
+     * @param search The type of search, e.g. "GradleBuildSearch"
+     * @param size The size-range or null for the search without size-qualifier
+     * @throws IOException If writing fails
+     */
+    synchronized void done(String search, String size) throws IOException {
+        done.add(key(search, size));
+        loaded.remove(key(search, size));
+
+        ObjectNode line = line("done");
+        line.put("search", search);
+        line.put("size", size == null ? ANY_SIZE : size);
+        write(line);
+    }
+
+    /**
+     * Remove the journal after the results of the search were stored.
+     *
+     * @throws IOException If closing or deleting fails
+     */
+    synchronized void finish() throws IOException {
+        close();
+        FileUtils.forceDelete(file);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    private static ObjectNode line(String type) {
+        ObjectNode line = JSONWriter.mapper.createObjectNode();
+        line.put("type", type);
+        return line;
+    }
+
+    private void write(ObjectNode line) throws IOException {
+        // one line per entry, flushed right away so it is kept if the process is killed
+        writer.write(JSONWriter.mapper.writeValueAsString(line));
+        writer.write('\n');
+        writer.flush();
+    }
+
+    private static String key(String search, String size) {
+        return search + ' ' + (size == null ? ANY_SIZE : size);
+    }
+}
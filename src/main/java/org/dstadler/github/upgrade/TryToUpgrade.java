@@ -1,7 +1,7 @@
 package org.dstadler.github.upgrade;
 
 import org.dstadler.github.util.GitHubSupport;
-import org.dstadler.github.util.JSONWriter.Holder;
+import org.dstadler.github.util.HistoryScan;
 import org.dstadler.github.util.Stats;
 
 import java.io.File;
@@ -14,7 +14,7 @@ public class TryToUpgrade {
     public static void main(String[] args) throws IOException {
         ProjectStatuses projectStatuses = ProjectStatuses.read();
 
-        File[] files = Stats.getFiles();
+        File[] files = Stats.getHistory();
 
         // project, version
         Map<String, String> projects = new HashMap<>();
@@ -58,8 +58,15 @@ public class TryToUpgrade {
     }
 
     protected static void readLines(File[] files, Map<String, String> projects) throws IOException {
-        for(File file : files) {
-            Holder.readFile(projects, file);
-        }
+        HistoryScan scan = new HistoryScan();
+
+        // keep the version found in the latest snapshot for each project
+        scan.register(snapshot -> {
+            for (Map.Entry<String, String> entry : snapshot.getRepositoryVersions().entries()) {
+                projects.put(entry.getValue(), entry.getKey());
+            }
+        });
+
+        scan.scan(files);
     }
 }
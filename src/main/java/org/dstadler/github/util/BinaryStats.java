@@ -0,0 +1,451 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.FileUtils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compact binary format for the full history of stats-files.
+ *
+ * Repositories, commits, paths and versions are stored only once in dictionaries, a
+ * snapshot then consists of two columns: the run-length encoded version-ids and the
+ * ids of the files. As most files are found again day after day, this is
+ * more than an order of magnitude smaller than the JSON and can be read without
+ * any JSON parsing.
+ *
+ * The file is a sequence of entries, dictionary entries are written just before
+ * they are used for the first time, so new snapshots can simply be appended.
+ * Snapshots are appended to a copy of the file which replaces it when all of them
+ * are written, so a crash never leaves a partial entry in the file.
+ *
+ * Run {@link #main(String[])} to convert the JSON stats-files, only snapshots newer
+ * than the ones already in the binary file are added.
+ */
+public class BinaryStats {
+    public static final String FILE_NAME = "stats.bin";
+
+    private static final byte[] MAGIC = { 'G', 'V', 'S', 'B' };
+    private static final int FORMAT_VERSION = 1;
+
+    private static final int REPOSITORY = 1;
+    private static final int COMMIT = 2;
+    private static final int PATH = 3;
+    private static final int VERSION = 4;
+    private static final int FILE = 5;
+    private static final int RAW_FILE = 6;
+    private static final int SNAPSHOT = 7;
+
+    // https://github.com/<repository>/blob/<commit>/<path>
+    private static final Pattern FILE_URL = Pattern.compile("https://github\\.com/([^/]+/[^/]+)/blob/([^/]+)/(.*)", Pattern.DOTALL);
+
+    public static void main(String[] args) throws IOException {
+        File target = new File(JSONWriter.STATS_DIR, FILE_NAME);
+
+        int count = convert(Stats.getFiles(), target);
+
+        System.out.println("Added " + count + " snapshots to " + target + ", now having " + target.length() + " bytes");
+    }
+
+    public static boolean isBinary(File file) {
+        return file.getName().endsWith(".bin");
+    }
+
+    /**
+     * Append all snapshots of the given stats-files to the binary file which
+     * are newer than the last snapshot that is already stored in it. Snapshots
+     * which were added to the file of the last converted date afterwards, e.g. when
+     * the search ran twice on one day, are added as well.
+     *
+     * @param files The JSON stats-files, sorted by date
+     * @param target The binary file, created if it does not exist yet
+     * @return The number of snapshots which were added
+     * @throws IOException If reading or writing fails
+     */
+    public static int convert(File[] files, File target) throws IOException {
+        int count = 0;
+        try (Writer writer = new Writer(target)) {
+            String lastDate = writer.getLastDate();
+            for (File file : files) {
+                if (lastDate != null && Stats.getDate(file).compareTo(lastDate) < 0) {
+                    continue;
+                }
+
+                // the first snapshots of the file of the last date are stored already
+                int skip = lastDate != null && Stats.getDate(file).equals(lastDate) ? writer.getLastDateCount() : 0;
+                try (SnapshotReader reader = StatsReader.open(file)) {
+                    while (reader.nextSnapshot()) {
+                        if (skip > 0) {
+                            skip--;
+                            continue;
+                        }
+
+                        writer.startSnapshot(reader.getDate());
+
+                        StatsRecord record;
+                        while ((record = reader.nextRecord()) != null) {
+                            writer.add(record.version, record.url);
+                        }
+
+                        writer.endSnapshot();
+                        count++;
+                    }
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @param file The binary file
+     * @return The date of the last snapshot in the file or null if there is none
+     * @throws IOException If reading fails
+     */
+    public static String getLastDate(File file) throws IOException {
+        try (Reader reader = new Reader(file)) {
+            String date = null;
+            while (reader.nextSnapshot()) {
+                date = reader.getDate();
+            }
+            return date;
+        }
+    }
+
+    /**
+     * Appends snapshots to a binary file, existing dictionaries are read
+     * from the file first so that ids stay the same. The file is only replaced
+     * when the writer is closed after the last snapshot was ended.
+     */
+    public static class Writer implements AutoCloseable {
+        private final Map<String, Integer> repositories = new HashMap<>();
+        private final Map<String, Integer> commits = new HashMap<>();
+        private final Map<String, Integer> paths = new HashMap<>();
+        private final Map<String, Integer> versions = new HashMap<>();
+        private final Map<String, Integer> files = new HashMap<>();
+
+        private final File file;
+        private final File tmp;
+        private final DataOutputStream out;
+        private final String lastDate;
+
+        // the number of snapshots of the last date
+        private final int lastDateCount;
+
+        // the current snapshot, kept as columns until it is written
+        private String date;
+        private final List<Integer> versionColumn = new ArrayList<>();
+        private final List<Integer> fileColumn = new ArrayList<>();
+
+        public Writer(File file) throws IOException {
+            this.file = file;
+
+            boolean exists = file.exists() && file.length() > 0;
+            if (exists) {
+                try (Reader reader = new Reader(file)) {
+                    String last = null;
+                    int count = 0;
+                    while (reader.nextSnapshot()) {
+                        count = reader.getDate().equals(last) ? count + 1 : 1;
+                        last = reader.getDate();
+                    }
+                    lastDate = last;
+                    lastDateCount = count;
+
+                    reader.copyDictionaries(this);
+                }
+            } else {
+                lastDate = null;
+                lastDateCount = 0;
+            }
+
+            // append to a copy in the same directory, so it can be moved into place atomically
+            File dir = file.getAbsoluteFile().getParentFile();
+            FileUtils.forceMkdir(dir);
+            tmp = File.createTempFile(file.getName(), ".tmp", dir);
+            if (exists) {
+                FileUtils.copyFile(file, tmp);
+            }
+
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp, exists)));
+            if (!exists) {
+                out.write(MAGIC);
+                writeVarInt(out, FORMAT_VERSION);
+            }
+        }
+
+        public String getLastDate() {
+            return lastDate;
+        }
+
+        /**
+         * @return The number of snapshots for {@link #getLastDate()} which are stored in the file
+         */
+        public int getLastDateCount() {
+            return lastDateCount;
+        }
+
+        public void startSnapshot(String date) {
+            Preconditions.checkState(this.date == null, "Snapshot for %s was not ended", this.date);
+            this.date = date;
+        }
+
+        public void add(String version, String url) throws IOException {
+            Preconditions.checkState(date != null, "Need to start a snapshot first");
+
+            versionColumn.add(id(versions, VERSION, version));
+            fileColumn.add(fileId(url));
+        }
+
+        public void endSnapshot() throws IOException {
+            out.write(SNAPSHOT);
+            out.writeUTF(date);
+
+            // versions are grouped in the stats-files, so run-length encoding makes this column tiny
+            List<int[]> runs = new ArrayList<>();
+            for (int version : versionColumn) {
+                if (!runs.isEmpty() && runs.get(runs.size() - 1)[0] == version) {
+                    runs.get(runs.size() - 1)[1]++;
+                } else {
+                    runs.add(new int[] { version, 1 });
+                }
+            }
+            writeVarInt(out, runs.size());
+            for (int[] run : runs) {
+                writeVarInt(out, run[0]);
+                writeVarInt(out, run[1]);
+            }
+
+            for (int file : fileColumn) {
+                writeVarInt(out, file);
+            }
+
+            date = null;
+            versionColumn.clear();
+            fileColumn.clear();
+        }
+
+        private int fileId(String url) throws IOException {
+            Integer id = files.get(url);
+            if (id != null) {
+                return id;
+            }
+
+            Matcher matcher = FILE_URL.matcher(url);
+            if (matcher.matches()) {
+                int repository = id(repositories, REPOSITORY, matcher.group(1));
+                int commit = id(commits, COMMIT, matcher.group(2));
+                int path = id(paths, PATH, matcher.group(3));
+
+                out.write(FILE);
+                writeVarInt(out, repository);
+                writeVarInt(out, commit);
+                writeVarInt(out, path);
+            } else {
+                out.write(RAW_FILE);
+                out.writeUTF(url);
+            }
+
+            id = files.size();
+            files.put(url, id);
+            return id;
+        }
+
+        private int id(Map<String, Integer> dictionary, int type, String value) throws IOException {
+            Integer id = dictionary.get(value);
+            if (id == null) {
+                out.write(type);
+                out.writeUTF(value);
+
+                id = dictionary.size();
+                dictionary.put(value, id);
+            }
+            return id;
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+
+            // a snapshot which was not ended is discarded together with everything written before
+            if (date != null) {
+                FileUtils.forceDelete(tmp);
+                throw new IllegalStateException("Snapshot for " + date + " was not ended");
+            }
+
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    /**
+     * Reads the snapshots of a binary file, the entries are handed out as
+     * {@link StatsRecord} like when reading the JSON stats-files.
+     */
+    public static class Reader implements SnapshotReader {
+        private final List<String> repositories = new ArrayList<>();
+        private final List<String> commits = new ArrayList<>();
+        private final List<String> paths = new ArrayList<>();
+        private final List<String> versions = new ArrayList<>();
+        private final List<String> files = new ArrayList<>();
+
+        private final DataInputStream in;
+
+        private String date;
+        private int[] runs = new int[0];
+        private int run;
+        private int remainingInRun;
+        private int remaining;
+
+        public Reader(File file) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+
+            byte[] magic = new byte[MAGIC.length];
+            in.readFully(magic);
+            Preconditions.checkState(Arrays.equals(MAGIC, magic), "File %s is not a binary stats-file", file);
+            int version = readVarInt(in);
+            Preconditions.checkState(version == FORMAT_VERSION, "Unsupported format version %s in %s", version, file);
+        }
+
+        @Override
+        public boolean nextSnapshot() throws IOException {
+            // skip the remaining entries of the current snapshot
+            while (remaining > 0) {
+                readVarInt(in);
+                remaining--;
+            }
+
+            while (true) {
+                int type = in.read();
+                switch (type) {
+                    case -1:
+                        date = null;
+                        return false;
+                    case REPOSITORY:
+                        repositories.add(in.readUTF());
+                        break;
+                    case COMMIT:
+                        commits.add(in.readUTF());
+                        break;
+                    case PATH:
+                        paths.add(in.readUTF());
+                        break;
+                    case VERSION:
+                        versions.add(in.readUTF());
+                        break;
+                    case FILE:
+                        files.add("https://github.com/" + repositories.get(readVarInt(in)) +
+                                "/blob/" + commits.get(readVarInt(in)) +
+                                '/' + paths.get(readVarInt(in)));
+                        break;
+                    case RAW_FILE:
+                        files.add(in.readUTF());
+                        break;
+                    case SNAPSHOT:
+                        readSnapshotHeader();
+                        return true;
+                    default:
+                        throw new IllegalStateException("Unexpected entry type " + type);
+                }
+            }
+        }
+
+        private void readSnapshotHeader() throws IOException {
+            date = in.readUTF();
+
+            int runCount = readVarInt(in);
+            runs = new int[runCount * 2];
+            remaining = 0;
+            for (int i = 0; i < runs.length; i += 2) {
+                runs[i] = readVarInt(in);
+                runs[i + 1] = readVarInt(in);
+                remaining += runs[i + 1];
+            }
+
+            run = 0;
+            remainingInRun = runCount > 0 ? runs[1] : 0;
+        }
+
+        @Override
+        public String getDate() {
+            return date;
+        }
+
+        @Override
+        public StatsRecord nextRecord() throws IOException {
+            if (remaining == 0) {
+                return null;
+            }
+
+            while (remainingInRun == 0) {
+                run += 2;
+                remainingInRun = runs[run + 1];
+            }
+
+            remainingInRun--;
+            remaining--;
+
+            return new StatsRecord(date, versions.get(runs[run]), files.get(readVarInt(in)));
+        }
+
+        private void copyDictionaries(Writer writer) {
+            copy(repositories, writer.repositories);
+            copy(commits, writer.commits);
+            copy(paths, writer.paths);
+            copy(versions, writer.versions);
+            copy(files, writer.files);
+        }
+
+        private static void copy(List<String> values, Map<String, Integer> dictionary) {
+            for (int i = 0; i < values.size(); i++) {
+                dictionary.put(values.get(i), i);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static void writeVarInt(OutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarInt(InputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.read();
+            if (b == -1) {
+                throw new EOFException("Unexpected end of binary stats-file");
+            }
+
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Thread-safe memo of computed values, used for parsing the few distinct
+ * version-strings only once.
+ *
+ * The cache is cleared when it reaches the maximum size, which is good enough
+ * as it is only expected to fill up for unexpected input.
+ *
+ * @param <K> The type of keys
+ * @param <V> The type of values, null is not supported
+ */
+public class BoundedCache<K, V> {
+    private final Map<K, V> values = new ConcurrentHashMap<>();
+    private final int maxSize;
+
+    /**
+     * @param maxSize The number of values which are kept at most
+     */
+    public BoundedCache(int maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "Need a positive size, but had %s", maxSize);
+
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * @param key The key to look up
+     * @param loader Computes the value if it is not cached yet, may be called
+     *      concurrently for the same key, so it should not have side-effects
+     * @return The cached or computed value
+     */
+    public V get(K key, Function<K, V> loader) {
+        V value = values.get(key);
+        if (value != null) {
+            return value;
+        }
+
+        value = loader.apply(key);
+        if (values.size() >= maxSize) {
+            values.clear();
+        }
+
+        V previous = values.putIfAbsent(key, value);
+        return previous == null ? value : previous;
+    }
+
+    /**
+     * @return The number of cached values
+     */
+    public int size() {
+        return values.size();
+    }
+}
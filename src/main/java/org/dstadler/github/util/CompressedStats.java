@@ -0,0 +1,280 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.LineIterator;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Block-compressed stats-files, i.e. stats&lt;date&gt;.json.gz.
+ *
+ * Each line which is appended is written as separate gzip member, so the file is
+ * a normal gzip-file which can be read with any gzip-tool. The header of each member
+ * contains an extra field with the compressed size of the member, so the members
+ * form a small block index: the lines of a file can be located by only reading the
+ * headers and a single snapshot can be read without decompressing the whole file.
+ *
+ * Run {@link #main(String[])} to compress the existing plain stats-files.
+ */
+public class CompressedStats {
+    public static final String SUFFIX = ".gz";
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+    private static final int FEXTRA = 4;
+
+    // id of the extra field which holds the size of the member
+    private static final byte SUBFIELD_ID1 = 'G';
+    private static final byte SUBFIELD_ID2 = 'V';
+
+    private static final int HEADER_SIZE = 10 + 2 + 4 + 4;
+
+    public static void main(String[] args) throws IOException {
+        long before = 0;
+        long after = 0;
+        int count = 0;
+        for (File file : Stats.getFiles()) {
+            if (isCompressed(file)) {
+                continue;
+            }
+
+            File compressed = new File(file.getParentFile(), file.getName() + SUFFIX);
+            Preconditions.checkState(!compressed.exists(), "Cannot compress %s, %s already exists", file, compressed);
+
+            try (LineIterator it = FileUtils.lineIterator(file, "UTF-8")) {
+                while (it.hasNext()) {
+                    String line = it.next();
+                    if (!line.isBlank()) {
+                        append(compressed, line);
+                    }
+                }
+            }
+
+            Preconditions.checkState(readRecords(file).equals(readRecords(compressed)),
+                    "Compressed file %s has different content than %s", compressed, file);
+
+            before += file.length();
+            after += compressed.length();
+            count++;
+
+            FileUtils.forceDelete(file);
+        }
+
+        System.out.println("Compressed " + count + " stats-files from " + before + " to " + after + " bytes");
+    }
+
+    public static boolean isCompressed(File file) {
+        return file.getName().endsWith(SUFFIX);
+    }
+
+    /**
+     * @param dir The directory with the stats-files
+     * @param name The name of a plain stats-file, e.g. stats2016-09-30.json
+     * @return The existing plain or compressed file, if neither exists, the
+     *      compressed file if {@link JSONWriter#COMPRESS} is set, the plain one otherwise
+     */
+    public static File getFile(File dir, String name) {
+        File plain = new File(dir, name);
+        File compressed = new File(dir, name + SUFFIX);
+        if (plain.exists()) {
+            return plain;
+        }
+        if (compressed.exists() || JSONWriter.COMPRESS) {
+            return compressed;
+        }
+        return plain;
+    }
+
+    /**
+     * @param file A plain or compressed stats-file
+     * @return A stream with the uncompressed content of the file
+     * @throws IOException If opening the file fails
+     */
+    public static InputStream open(File file) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(file));
+        if (isCompressed(file)) {
+            // reads all members one after the other
+            return new GZIPInputStream(in, 64 * 1024);
+        }
+        return in;
+    }
+
+    /**
+     * Append one line, for compressed files it is written as separate gzip member.
+     *
+     * @param file A plain or compressed stats-file, created if it does not exist
+     * @param line The line to add without trailing newline
+     * @throws IOException If writing fails
+     */
+    public static void append(File file, String line) throws IOException {
+        byte[] bytes = (line + '\n').getBytes(StandardCharsets.UTF_8);
+
+        try (OutputStream out = new FileOutputStream(file, true)) {
+            if (isCompressed(file)) {
+                out.write(compress(bytes));
+            } else {
+                out.write(bytes);
+            }
+        }
+    }
+
+    /**
+     * @param file A compressed stats-file
+     * @return The offset of each member in the file, only the headers are read for this
+     * @throws IOException If reading fails or a member does not contain the size in its header
+     */
+    public static List<Long> getBlocks(File file) throws IOException {
+        List<Long> blocks = new ArrayList<>();
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long offset = 0;
+            while (offset < raf.length()) {
+                blocks.add(offset);
+                offset += readBlockSize(raf, offset);
+            }
+        }
+        return blocks;
+    }
+
+    /**
+     * Open a reader for the last snapshot of a stats-file. For compressed files only
+     * this block is decompressed, for plain files all snapshots are returned, so
+     * the caller needs to use the last one.
+     *
+     * @param file A plain or compressed stats-file
+     * @return A reader which returns the last snapshot of the file as last snapshot
+     * @throws IOException If reading fails
+     */
+    public static SnapshotReader openLast(File file) throws IOException {
+        if (!isCompressed(file)) {
+            return new StatsReader(file);
+        }
+
+        List<Long> blocks = getBlocks(file);
+        if (blocks.isEmpty()) {
+            return new StatsReader(new ByteArrayInputStream(new byte[0]));
+        }
+
+        return new StatsReader(new ByteArrayInputStream(readBlock(file, blocks.get(blocks.size() - 1))));
+    }
+
+    /**
+     * @param file A compressed stats-file
+     * @param offset The offset of the block as returned by {@link #getBlocks(File)}
+     * @return The uncompressed content of the block
+     * @throws IOException If reading fails
+     */
+    public static byte[] readBlock(File file, long offset) throws IOException {
+        byte[] block;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            block = new byte[readBlockSize(raf, offset)];
+            raf.seek(offset);
+            raf.readFully(block);
+        }
+
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(block))) {
+            return in.readAllBytes();
+        }
+    }
+
+    private static int readBlockSize(RandomAccessFile raf, long offset) throws IOException {
+        byte[] header = new byte[HEADER_SIZE];
+        raf.seek(offset);
+        raf.readFully(header);
+
+        Preconditions.checkState(readShort(header, 0) == GZIP_MAGIC && (header[3] & FEXTRA) != 0 &&
+                readShort(header, 10) == 8 && header[12] == SUBFIELD_ID1 && header[13] == SUBFIELD_ID2,
+                "Block at %s does not have a block-size in its header", offset);
+
+        return readInt(header, 16);
+    }
+
+    private static byte[] compress(byte[] bytes) throws IOException {
+        Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        ByteArrayOutputStream data = new ByteArrayOutputStream(bytes.length / 8);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            byte[] buffer = new byte[64 * 1024];
+            while (!deflater.finished()) {
+                data.write(buffer, 0, deflater.deflate(buffer));
+            }
+        } finally {
+            deflater.end();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+
+        int size = HEADER_SIZE + data.size() + 8;
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream(size);
+        writeShort(out, GZIP_MAGIC);
+        // deflate, flags, modification time, extra flags and OS "unknown"
+        out.write(Deflater.DEFLATED);
+        out.write(FEXTRA);
+        writeInt(out, 0);
+        out.write(0);
+        out.write(255);
+
+        // extra field with the size of the whole member
+        writeShort(out, 8);
+        out.write(SUBFIELD_ID1);
+        out.write(SUBFIELD_ID2);
+        writeShort(out, 4);
+        writeInt(out, size);
+
+        data.writeTo(out);
+
+        writeInt(out, (int) crc.getValue());
+        writeInt(out, bytes.length);
+
+        return out.toByteArray();
+    }
+
+    private static void writeShort(OutputStream out, int value) throws IOException {
+        out.write(value & 0xff);
+        out.write((value >> 8) & 0xff);
+    }
+
+    private static void writeInt(OutputStream out, int value) throws IOException {
+        writeShort(out, value & 0xffff);
+        writeShort(out, (value >> 16) & 0xffff);
+    }
+
+    private static int readShort(byte[] bytes, int pos) {
+        return (bytes[pos] & 0xff) | ((bytes[pos + 1] & 0xff) << 8);
+    }
+
+    private static int readInt(byte[] bytes, int pos) {
+        return readShort(bytes, pos) | (readShort(bytes, pos + 2) << 16);
+    }
+
+    private static List<String> readRecords(File file) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (SnapshotReader reader = StatsReader.open(file)) {
+            while (reader.nextSnapshot()) {
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    records.add(record.toString());
+                }
+            }
+        }
+        return records;
+    }
+}
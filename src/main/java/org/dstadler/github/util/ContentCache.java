@@ -0,0 +1,248 @@
+package org.dstadler.github.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.Preconditions;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Downloaded build-files and the versions parsed from them, keyed by the SHA of
+ * the git blob as reported by the code-search. Most files do not change from one
+ * day to the next, so they are neither downloaded nor parsed again.
+ *
+ * The contents are stored as one file per blob until the versions parsed from it
+ * are stored, the parsed versions in one JSON-file. The parsed versions are discarded
+ * when {@link #PARSER_VERSION} changes, the files are downloaded again then.
+ *
+ * Blobs which were not used for {@link #RETENTION_DAYS} are removed when the cache
+ * is written, so the cache only grows with the number of files found by the searches.
+ */
+public class ContentCache {
+    public static File DIR = new File("contentCache");
+
+    // increase when parsing of versions changes, so cached results are computed again
+    private static final int PARSER_VERSION = 3;
+
+    // remove blobs which were not used for this many days
+    private static final int RETENTION_DAYS = 30;
+
+    private static final String RESULTS_FILE = "results.json";
+
+    private static ContentCache instance;
+
+    private final File dir;
+    private final String today = JSONWriter.DATE_FORMAT.format(new Date());
+
+    // SHA of the blob as key
+    private final Map<String, Blob> blobs = new ConcurrentHashMap<>();
+
+    private final AtomicInteger contentHits = new AtomicInteger();
+    private final AtomicInteger resultHits = new AtomicInteger();
+
+    private ContentCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * @return The cache stored in {@link #DIR}, read when it is used for the first time
+     * @throws IOException If reading the cache fails
+     */
+    public static synchronized ContentCache getInstance() throws IOException {
+        if (instance == null || !instance.dir.equals(DIR)) {
+            instance = read(DIR);
+        }
+        return instance;
+    }
+
+    /**
+     * @param dir The directory to store the cache in
+     * @return The cache with the results stored in the directory
+     * @throws IOException If reading fails
+     */
+    public static ContentCache read(File dir) throws IOException {
+        ContentCache cache = new ContentCache(dir);
+
+        File file = new File(dir, RESULTS_FILE);
+        if (file.exists()) {
+            // check the version first as older formats may have different fields
+            JsonNode node = JSONWriter.mapper.readTree(file);
+            if (node.path("parserVersion").asInt() == PARSER_VERSION) {
+                cache.blobs.putAll(JSONWriter.mapper.treeToValue(node, Stored.class).blobs);
+            }
+        }
+
+        return cache;
+    }
+
+    /**
+     * Store the parsed versions and remove blobs which were not used for
+     * {@link #RETENTION_DAYS}, the contents are written right away.
+     *
+     * @throws IOException If writing fails
+     */
+    public synchronized void write() throws IOException {
+        FileUtils.forceMkdir(dir);
+
+        int removed = prune(JSONWriter.DATE_FORMAT.format(System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS)));
+
+        Stored stored = new Stored();
+        stored.blobs.putAll(blobs);
+        JSONWriter.mapper.writeValue(new File(dir, RESULTS_FILE), stored);
+
+        System.out.println("Wrote " + blobs.size() + " blobs to " + dir + ", removed " + removed + ", used " + resultHits.get() +
+                " parsed and " + contentHits.get() + " downloaded files from the cache");
+    }
+
+    /**
+     * Remove blobs which were last used before the given date and the contents of
+     * blobs which are not known any more.
+     *
+     * @param before The date in the format of {@link JSONWriter#DATE_FORMAT}
+     * @return The number of removed blobs
+     */
+    int prune(String before) {
+        int removed = 0;
+        for (Map.Entry<String, Blob> entry : blobs.entrySet()) {
+            if (entry.getValue().used == null || entry.getValue().used.compareTo(before) < 0) {
+                blobs.remove(entry.getKey());
+                removed++;
+            }
+        }
+
+        // contents of removed blobs or of blobs which were parsed already
+        File[] prefixes = new File(dir, "blobs").listFiles();
+        if (prefixes != null) {
+            for (File prefix : prefixes) {
+                File[] files = prefix.listFiles();
+                if (files == null) {
+                    continue;
+                }
+
+                for (File file : files) {
+                    Blob blob = blobs.get(file.getName());
+                    if (blob == null || !blob.versions.isEmpty()) {
+                        FileUtils.deleteQuietly(file);
+                    }
+                }
+            }
+        }
+
+        return removed;
+    }
+
+    /**
+     * @param sha The SHA of the git blob
+     * @return The content of the file or null if it is not cached
+     * @throws IOException If reading fails
+     */
+    public String getContent(String sha) throws IOException {
+        File file = getFile(sha);
+        if (!file.exists()) {
+            return null;
+        }
+
+        use(sha);
+        contentHits.incrementAndGet();
+        return FileUtils.readFileToString(file, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param sha The SHA of the git blob
+     * @return true if the content of the file or the versions parsed from it are cached,
+     *      so the file does not need to be downloaded
+     */
+    public boolean contains(String sha) {
+        Blob blob = blobs.get(sha);
+        if (blob != null && !blob.versions.isEmpty()) {
+            blob.used = today;
+            return true;
+        }
+        return getFile(sha).exists();
+    }
+
+    /**
+     * @param sha The SHA of the git blob
+     * @param content The downloaded content of the file
+     * @throws IOException If writing fails
+     */
+    public void putContent(String sha, String content) throws IOException {
+        File file = getFile(sha);
+        FileUtils.forceMkdirParent(file);
+
+        // write to a temporary file first, so a concurrent reader never sees partial content
+        File tmp = File.createTempFile(sha, ".tmp", file.getParentFile());
+        FileUtils.writeStringToFile(tmp, content, StandardCharsets.UTF_8);
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        use(sha);
+    }
+
+    /**
+     * @param type The kind of file, e.g. the name of the search, as different searches parse differently
+     * @param sha The SHA of the git blob
+     * @return The versions which were found in the file or null if it was not parsed yet
+     */
+    public List<String> getVersions(String type, String sha) {
+        Blob blob = blobs.get(sha);
+        List<String> versions = blob == null ? null : blob.versions.get(type);
+        if (versions != null) {
+            blob.used = today;
+            resultHits.incrementAndGet();
+        }
+        return versions;
+    }
+
+    /**
+     * Store the versions of a file, the content is not needed any more afterwards
+     * and removed when the cache is written.
+     *
+     * @param type The kind of file, e.g. the name of the search, as different searches parse differently
+     * @param sha The SHA of the git blob
+     * @param versions The versions which were found in the file, can be empty
+     */
+    public void putVersions(String type, String sha, Collection<String> versions) {
+        use(sha).versions.put(type, new ArrayList<>(versions));
+    }
+
+    private Blob use(String sha) {
+        Blob blob = blobs.computeIfAbsent(sha, key -> new Blob());
+        blob.used = today;
+        return blob;
+    }
+
+    private File getFile(String sha) {
+        Preconditions.checkArgument(sha.matches("[0-9a-f]{40,64}"), "Invalid SHA: %s", sha);
+
+        return new File(dir, "blobs/" + sha.substring(0, 2) + '/' + sha);
+    }
+
+    public static class Blob {
+        // the date when the blob was found by a search the last time
+        public String used;
+
+        // the kind of file as key, the versions found in the file as value
+        public ConcurrentMap<String, List<String>> versions = new ConcurrentHashMap<>();
+    }
+
+    private static class Stored {
+        public int parserVersion = PARSER_VERSION;
+
+        // SHA of the blob as key
+        public Map<String, Blob> blobs = new TreeMap<>();
+    }
+}
@@ -0,0 +1,350 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.lang3.time.DateUtils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Optional storage mode which stores most days as delta against a full snapshot,
+ * as usually only a few repositories are added, removed or change their version
+ * from one day to the next.
+ *
+ * Full snapshots ("keyframes") are written to the normal stats-files, at most
+ * {@link #KEYFRAME_INTERVAL_DAYS} apart or earlier if a delta would contain more
+ * than half as many entries as the keyframe. Other days are written to
+ * stats&lt;date&gt;.delta.json and only contain the date of the keyframe and the
+ * entries which were added to or removed from it, a version change is stored
+ * as removal of the old and addition of the new version. If the order of the
+ * entries differs from the one of the keyframe, the delta also stores the
+ * order, so a reconstructed snapshot lists the entries like the full one.
+ *
+ * As each delta only refers to its keyframe, any date can be reconstructed
+ * by reading the keyframe and one delta, see {@link #getSnapshot(File, String)}.
+ * {@link StatsReader#open(File)} returns a {@link Reader} for delta-files, so they
+ * can be read like any other stats-file.
+ */
+public class DeltaStats {
+    public static final String DELTA_SUFFIX = ".delta.json";
+
+    public static int KEYFRAME_INTERVAL_DAYS = 30;
+
+    // keyframes are usually used by many delta-files, so keep the most recent ones
+    private static final int KEYFRAME_CACHE_SIZE = 4;
+    private static final Map<String, List<StatsRecord>> KEYFRAMES = new ConcurrentHashMap<>();
+
+    public static boolean isDelta(File file) {
+        return file.getName().endsWith(DELTA_SUFFIX) || file.getName().endsWith(DELTA_SUFFIX + CompressedStats.SUFFIX);
+    }
+
+    /**
+     * Write the given versions either as new keyframe or as delta to the current keyframe.
+     *
+     * @param dir The directory with the stats-files
+     * @param date The date of the snapshot
+     * @param versions The versions as they should be stored, i.e. already filtered
+     *                 via {@link JSONWriter.Holder#getVersions()}
+     * @return The file which was written, either a full stats-file or a delta-file
+     * @throws IOException If reading the keyframe or writing fails
+     */
+    public static File write(File dir, String date, SetMultimap<String, String> versions) throws IOException {
+        File keyframe = findKeyframe(dir, date);
+        if (keyframe == null || needsKeyframe(Stats.getDate(keyframe), date)) {
+            return writeKeyframe(dir, date, versions);
+        }
+
+        SetMultimap<String, String> base = toMultimap(readKeyframe(keyframe));
+
+        Delta delta = new Delta();
+        delta.date = date;
+        delta.keyframe = Stats.getDate(keyframe);
+        for (Map.Entry<String, String> entry : versions.entries()) {
+            if (!base.containsEntry(entry.getKey(), entry.getValue())) {
+                delta.added.put(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, String> entry : base.entries()) {
+            if (!versions.containsEntry(entry.getKey(), entry.getValue())) {
+                delta.removed.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        // start a new keyframe if too much changed since the current one
+        if (delta.added.size() + delta.removed.size() > base.size() / 2) {
+            return writeKeyframe(dir, date, versions);
+        }
+
+        delta.order = getOrder(merge(readKeyframe(keyframe), delta), entries(versions));
+
+        File file = CompressedStats.getFile(dir, "stats" + date + DELTA_SUFFIX);
+        CompressedStats.append(file, JSONWriter.mapper.writeValueAsString(delta));
+        return file;
+    }
+
+    private static File writeKeyframe(File dir, String date, SetMultimap<String, String> versions) throws IOException {
+        File file = CompressedStats.getFile(dir, "stats" + date + ".json");
+        JSONWriter.writeHolder(file, new JSONWriter.Holder(date, versions));
+        return file;
+    }
+
+    /**
+     * Reconstruct the snapshot of the given date, if there are multiple
+     * snapshots for the date, the last one is returned.
+     *
+     * @param dir The directory with the stats-files
+     * @param date The date to look for
+     * @return The versions found at the given date or null if there is no stats-file for the date
+     * @throws IOException If reading fails
+     */
+    public static SetMultimap<String, String> getSnapshot(File dir, String date) throws IOException {
+        File file = CompressedStats.getFile(dir, "stats" + date + ".json");
+        if (!file.exists()) {
+            file = CompressedStats.getFile(dir, "stats" + date + DELTA_SUFFIX);
+            if (!file.exists()) {
+                return null;
+            }
+        }
+
+        SetMultimap<String, String> versions = null;
+        try (SnapshotReader reader = isDelta(file) ? StatsReader.open(file) : CompressedStats.openLast(file)) {
+            while (reader.nextSnapshot()) {
+                versions = LinkedHashMultimap.create();
+
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    versions.put(record.version, record.url);
+                }
+            }
+        }
+
+        return versions;
+    }
+
+    private static File findKeyframe(File dir, String date) {
+        // the stats-files are sorted by date, so use the last full one up to the given date
+        File keyframe = null;
+        for (File file : Stats.getFiles(dir)) {
+            if (!isDelta(file) && Stats.getDate(file).compareTo(date) <= 0) {
+                keyframe = file;
+            }
+        }
+        return keyframe;
+    }
+
+    private static boolean needsKeyframe(String keyframeDate, String date) {
+        // more snapshots for the date of the keyframe are always written in full
+        if (keyframeDate.equals(date)) {
+            return true;
+        }
+
+        try {
+            return DateUtils.addDays(JSONWriter.DATE_FORMAT.parse(keyframeDate), KEYFRAME_INTERVAL_DAYS).
+                    compareTo(JSONWriter.DATE_FORMAT.parse(date)) <= 0;
+        } catch (ParseException e) {
+            throw new IllegalStateException("Failed to parse date " + keyframeDate + " or " + date, e);
+        }
+    }
+
+    /**
+     * @return The entries of the last snapshot in the keyframe-file in the order of the file
+     */
+    private static List<StatsRecord> readKeyframe(File file) throws IOException {
+        String key = file.getAbsolutePath() + ':' + file.length() + ':' + file.lastModified();
+        List<StatsRecord> records = KEYFRAMES.get(key);
+        if (records != null) {
+            return records;
+        }
+
+        records = new ArrayList<>();
+        try (SnapshotReader reader = CompressedStats.openLast(file)) {
+            while (reader.nextSnapshot()) {
+                records.clear();
+
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    records.add(record);
+                }
+            }
+        }
+
+        if (KEYFRAMES.size() >= KEYFRAME_CACHE_SIZE) {
+            KEYFRAMES.clear();
+        }
+        KEYFRAMES.put(key, records);
+
+        return records;
+    }
+
+    /**
+     * @return The entries of the keyframe without the removed ones, followed by the added
+     *      ones, i.e. the entries of the snapshot before the order of the delta is applied
+     */
+    private static List<Map.Entry<String, String>> merge(List<StatsRecord> keyframe, Delta delta) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(keyframe.size() + delta.added.size());
+        for (StatsRecord record : keyframe) {
+            if (!delta.removed.containsEntry(record.version, record.url)) {
+                entries.add(Maps.immutableEntry(record.version, record.url));
+            }
+        }
+        entries.addAll(entries(delta.added));
+        return entries;
+    }
+
+    /**
+     * @return The entries in the order in which they are written to a stats-file, i.e. grouped by version
+     */
+    private static List<Map.Entry<String, String>> entries(SetMultimap<String, String> versions) {
+        List<Map.Entry<String, String>> entries = new ArrayList<>(versions.size());
+        for (Map.Entry<String, Collection<String>> entry : versions.asMap().entrySet()) {
+            for (String url : entry.getValue()) {
+                entries.add(Maps.immutableEntry(entry.getKey(), url));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return Runs of indexes into the merged entries as pairs of start and length which
+     *      result in the entries of the snapshot, empty if the order is the same
+     */
+    private static List<Integer> getOrder(List<Map.Entry<String, String>> merged, List<Map.Entry<String, String>> snapshot) {
+        Map<Map.Entry<String, String>, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < merged.size(); i++) {
+            indexes.put(merged.get(i), i);
+        }
+
+        List<Integer> order = new ArrayList<>();
+        int start = -1;
+        int length = 0;
+        for (Map.Entry<String, String> entry : snapshot) {
+            int index = indexes.get(entry);
+            if (length > 0 && index == start + length) {
+                length++;
+                continue;
+            }
+
+            if (length > 0) {
+                order.add(start);
+                order.add(length);
+            }
+            start = index;
+            length = 1;
+        }
+        if (length > 0) {
+            order.add(start);
+            order.add(length);
+        }
+
+        if (order.size() == 2 && order.get(0) == 0) {
+            order.clear();
+        }
+        return order;
+    }
+
+    private static SetMultimap<String, String> toMultimap(List<StatsRecord> records) {
+        SetMultimap<String, String> versions = LinkedHashMultimap.create();
+        for (StatsRecord record : records) {
+            versions.put(record.version, record.url);
+        }
+        return versions;
+    }
+
+    /**
+     * One line in a delta-file.
+     */
+    public static class Delta {
+        public String date;
+        public String keyframe;
+        public SetMultimap<String, String> added = LinkedHashMultimap.create();
+        public SetMultimap<String, String> removed = LinkedHashMultimap.create();
+
+        // pairs of start and length of the merged entries, empty if they are in the right order
+        public List<Integer> order = new ArrayList<>();
+    }
+
+    /**
+     * Reads a delta-file, each snapshot is reconstructed from the keyframe
+     * and the delta and handed out like a full snapshot.
+     */
+    public static class Reader implements SnapshotReader {
+        private final File file;
+        private final BufferedReader lines;
+
+        private String date;
+        private Iterator<Map.Entry<String, String>> entries;
+
+        public Reader(File file) throws IOException {
+            this.file = file;
+            this.lines = new BufferedReader(new InputStreamReader(CompressedStats.open(file), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public boolean nextSnapshot() throws IOException {
+            String line;
+            do {
+                line = lines.readLine();
+                if (line == null) {
+                    date = null;
+                    entries = null;
+                    return false;
+                }
+            } while (line.isBlank());
+
+            Delta delta = JSONWriter.mapper.readValue(line, Delta.class);
+            Preconditions.checkState(delta.date != null && delta.keyframe != null,
+                    "Invalid delta in %s: %s", file, line);
+
+            File keyframe = CompressedStats.getFile(file.getParentFile(), "stats" + delta.keyframe + ".json");
+            Preconditions.checkState(keyframe.exists(), "Could not find keyframe %s for %s", keyframe, file);
+
+            List<Map.Entry<String, String>> merged = merge(readKeyframe(keyframe), delta);
+            if (!delta.order.isEmpty()) {
+                List<Map.Entry<String, String>> ordered = new ArrayList<>(merged.size());
+                for (int i = 0; i < delta.order.size(); i += 2) {
+                    int start = delta.order.get(i);
+                    ordered.addAll(merged.subList(start, start + delta.order.get(i + 1)));
+                }
+                merged = ordered;
+            }
+
+            date = delta.date;
+            entries = merged.iterator();
+            return true;
+        }
+
+        @Override
+        public String getDate() {
+            return date;
+        }
+
+        @Override
+        public StatsRecord nextRecord() {
+            if (entries == null || !entries.hasNext()) {
+                return null;
+            }
+
+            Map.Entry<String, String> entry = entries.next();
+            return new StatsRecord(date, entry.getKey(), entry.getValue());
+        }
+
+        @Override
+        public void close() throws IOException {
+            lines.close();
+        }
+    }
+}
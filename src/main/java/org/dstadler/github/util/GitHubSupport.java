@@ -4,10 +4,7 @@ import org.dstadler.github.search.BaseSearch;
 import org.dstadler.github.upgrade.ProjectStatus;
 import org.dstadler.github.upgrade.ProjectStatuses;
 import org.dstadler.github.upgrade.UpgradeStatus;
-import org.kohsuke.github.GHFileNotFoundException;
-import org.kohsuke.github.GHRepository;
 import org.kohsuke.github.GitHub;
-import org.kohsuke.github.HttpException;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -17,33 +14,36 @@ import java.util.Map;
 public class GitHubSupport {
     public static Map<String, String> filterForProjectsOfInterest(Map<String, String> projects, ProjectStatuses projectStatuses, int maxProjects) throws IOException {
         GitHub github = BaseSearch.connect();
+        RepositoryCache cache = RepositoryCache.getInstance();
 
         Map<String, String> projectsOfInterest = new HashMap<>();
         Iterator<Map.Entry<String, String>> it = projects.entrySet().iterator();
         for(int i = 0; i < maxProjects && it.hasNext(); i++) {
             Map.Entry<String, String> repo = it.next();
-            try {
-                GHRepository repository = github.getRepository(repo.getKey());
-                int stargazersCount = repository.getStargazersCount();
-                int watchers = repository.getWatchers();
-                System.out.println(i + "-Repo: " + repo + ": Had stars: " + stargazersCount + ", watchers: " + watchers);
-                if(stargazersCount > 0 || watchers > 0) {
-                    projectsOfInterest.put(repo.getKey(), repo.getValue());
-                } else {
-                    projectStatuses.add(new ProjectStatus(repo.getKey(), UpgradeStatus.NoStarsOrWatchers));
-                }
-            } catch (GHFileNotFoundException e) {
-                System.out.println(i + "-Repo: " + repo + ": Not found: " + e);
-                projectStatuses.add(new ProjectStatus(repo.getKey(), UpgradeStatus.NotAccessible));
-            } catch (HttpException e) {
-                if(e.getResponseCode() == 403) {
-                    System.out.println(i + "-Repo: " + repo + ": Forbidden: " + e);
+            RepositoryCache.Entry repository = cache.get(github, repo.getKey(), RepositoryCache.Field.STARS);
+            switch (repository.status) {
+                case NOT_FOUND:
+                    System.out.println(i + "-Repo: " + repo + ": Not found");
                     projectStatuses.add(new ProjectStatus(repo.getKey(), UpgradeStatus.NotAccessible));
-                } else {
-                    throw e;
-                }
+                    break;
+                case FORBIDDEN:
+                    System.out.println(i + "-Repo: " + repo + ": Forbidden");
+                    projectStatuses.add(new ProjectStatus(repo.getKey(), UpgradeStatus.NotAccessible));
+                    break;
+                default:
+                    int stargazersCount = repository.stars;
+                    int watchers = repository.watchers;
+                    System.out.println(i + "-Repo: " + repo + ": Had stars: " + stargazersCount + ", watchers: " + watchers);
+                    if(stargazersCount > 0 || watchers > 0) {
+                        projectsOfInterest.put(repo.getKey(), repo.getValue());
+                    } else {
+                        projectStatuses.add(new ProjectStatus(repo.getKey(), UpgradeStatus.NoStarsOrWatchers));
+                    }
             }
         }
+
+        cache.write();
+
         return projectsOfInterest;
     }
 }
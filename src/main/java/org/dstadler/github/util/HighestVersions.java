@@ -0,0 +1,126 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Collects the highest version ever found for each repository.
+ *
+ * Repositories and versions are stored as ids of the {@link SymbolTable}s, so
+ * memory only depends on the number of distinct repositories.
+ */
+public class HighestVersions implements SnapshotVisitor {
+    private static final int NONE = -1;
+
+    // version-id per repository-id, NONE if the repository was not seen yet
+    private int[] versions = new int[0];
+
+    // repository-ids in the order they were first seen
+    private int[] order = new int[1024];
+    private int size;
+
+    private Listener listener;
+
+    public HighestVersions() {
+    }
+
+    /**
+     * @param versions Previously collected results as returned by {@link #getVersions()}
+     */
+    public HighestVersions(Map<String, String> versions) {
+        for (Map.Entry<String, String> entry : versions.entrySet()) {
+            add(SymbolTable.REPOSITORIES.id(entry.getKey()), SymbolTable.VERSIONS.id(entry.getValue()));
+        }
+    }
+
+    /**
+     * @param listener Informed about each repository which is new or has a higher version than before
+     */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void visit(RepositorySnapshot snapshot) {
+        JSONWriter.addHigherVersions(this, snapshot);
+    }
+
+    /**
+     * @param repositoryId The id of the repository in {@link SymbolTable#REPOSITORIES}
+     * @param versionId The id of the version in {@link SymbolTable#VERSIONS}
+     * @return true if the repository was not seen before or had a lower version
+     */
+    public boolean add(int repositoryId, int versionId) {
+        if (repositoryId >= versions.length) {
+            int length = versions.length;
+            versions = Arrays.copyOf(versions, Math.max(repositoryId + 1, length * 2));
+            Arrays.fill(versions, length, versions.length, NONE);
+        }
+
+        int previous = versions[repositoryId];
+        if (previous != NONE && !JSONWriter.isHigherVersion(previous, versionId)) {
+            return false;
+        }
+
+        versions[repositoryId] = versionId;
+        if (previous == NONE) {
+            if (size == order.length) {
+                order = Arrays.copyOf(order, size * 2);
+            }
+            order[size++] = repositoryId;
+        }
+
+        if (listener != null) {
+            listener.changed(repositoryId, previous, versionId);
+        }
+        return true;
+    }
+
+    /**
+     * @param repositoryId The id of the repository in {@link SymbolTable#REPOSITORIES}
+     * @return The id of the highest version of the repository or -1 if it was not seen yet
+     */
+    public int get(int repositoryId) {
+        return repositoryId < versions.length ? versions[repositoryId] : NONE;
+    }
+
+    /**
+     * @return The number of repositories
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @param index Between 0 and {@link #size()}
+     * @return The id of the repository which was seen as index-th repository
+     */
+    public int getRepositoryId(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return order[index];
+    }
+
+    /**
+     * @return repo as key, highest seen version as value, in the order the
+     *      repositories were first seen
+     */
+    public Map<String, String> getVersions() {
+        Map<String, String> map = new LinkedHashMap<>();
+        for (int i = 0; i < size; i++) {
+            map.put(SymbolTable.REPOSITORIES.get(order[i]), SymbolTable.VERSIONS.get(versions[order[i]]));
+        }
+        return map;
+    }
+
+    public interface Listener {
+        /**
+         * @param repositoryId The id of the repository in {@link SymbolTable#REPOSITORIES}
+         * @param previousVersionId The id of the previous version or -1 if the repository is new
+         * @param versionId The id of the new version
+         */
+        void changed(int repositoryId, int previousVersionId, int versionId);
+    }
+}
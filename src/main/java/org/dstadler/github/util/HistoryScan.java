@@ -0,0 +1,61 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads the stats history once and hands each snapshot to all registered
+ * visitors, so multiple results can be computed with a single pass over the
+ * stats-files.
+ *
+ * Visitors are invoked in the order they were registered, so a visitor can rely
+ * on the state of visitors registered before it already including the current snapshot.
+ */
+public class HistoryScan {
+    private final List<SnapshotVisitor> visitors = new ArrayList<>();
+
+    /**
+     * @param visitor The visitor to invoke for each snapshot
+     * @return The given visitor, to allow to register and keep it in one statement
+     */
+    public <T extends SnapshotVisitor> T register(T visitor) {
+        visitors.add(Preconditions.checkNotNull(visitor));
+        return visitor;
+    }
+
+    /**
+     * @param files The files to read, usually the result of {@link Stats#getHistory()}
+     * @return The number of snapshots which were visited
+     * @throws IOException If reading a file fails or a visitor throws an exception
+     */
+    public int scan(File[] files) throws IOException {
+        return scan(files, null);
+    }
+
+    /**
+     * @param files The files to read, usually the result of {@link Stats#getHistory()}
+     * @param since If not null, only snapshots after this date are visited
+     * @return The number of snapshots which were visited
+     * @throws IOException If reading a file fails or a visitor throws an exception
+     */
+    public int scan(File[] files, String since) throws IOException {
+        Preconditions.checkState(!visitors.isEmpty(), "Need to register at least one visitor");
+
+        int count = 0;
+        try (SnapshotPipeline pipeline = new SnapshotPipeline(files, since)) {
+            RepositorySnapshot snapshot;
+            while ((snapshot = pipeline.next()) != null) {
+                for (SnapshotVisitor visitor : visitors) {
+                    visitor.visit(snapshot);
+                }
+                count++;
+            }
+        }
+
+        return count;
+    }
+}
@@ -1,12 +1,10 @@
 package org.dstadler.github.util;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.datatype.guava.GuavaModule;
-import com.google.common.base.Preconditions;
 import com.google.common.collect.*;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang3.time.FastDateFormat;
 import org.dstadler.github.search.BaseSearch;
 
@@ -25,19 +23,41 @@ public class JSONWriter {
 
     private static final Comparator<String> COMPARATOR = new VersionComparator();
 
+    // encoded version per id in SymbolTable.VERSIONS, see VersionComparator.key()
+    private static volatile long[] versionKeys = new long[0];
+
+    // store most days as delta to a previous full snapshot, see DeltaStats
+    public static boolean DELTA_MODE = Boolean.getBoolean("stats.delta");
+
+    // write new stats-files block-compressed, see CompressedStats
+    public static boolean COMPRESS = Boolean.getBoolean("stats.compress");
+
     public static void write(String date, SetMultimap<String, String> versions) throws IOException {
-        File file = new File(STATS_DIR, "stats" + date + ".json");
+        Holder holder = new Holder(date, versions);
 
-        try (BufferedWriter writer = new BufferedWriter(new FileWriter(file, true))) {
-            Holder holder = new Holder(date, versions);
+        File file;
+        if (DELTA_MODE) {
+            file = DeltaStats.write(STATS_DIR, date, holder.getVersions());
+        } else {
+            file = CompressedStats.getFile(STATS_DIR, "stats" + date + ".json");
+            writeHolder(file, holder);
+        }
 
-            StringWriter strWriter = new StringWriter();
-            try (strWriter) {
-                mapper.writeValue(strWriter, holder);
-            }
+        // keep the checksums of the stats-files up to date
+        StatsManifest.update(file);
+    }
+
+    static void writeHolder(File file, Holder holder) throws IOException {
+        if (CompressedStats.isCompressed(file)) {
+            // each line is compressed as one block, so it needs to be written in one go
+            CompressedStats.append(file, mapper.writeValueAsString(holder));
+            return;
+        }
 
-            // Need to write in one go as mapper.writeValue() closes the stream...
-            writer.write(strWriter.toString() + '\n');
+        // write the line directly instead of building it in memory first, the stream is closed here, not by the mapper
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file, true))) {
+            mapper.writer().without(JsonGenerator.Feature.AUTO_CLOSE_TARGET).writeValue(out, holder);
+            out.write('\n');
         }
     }
 
@@ -52,13 +72,17 @@ public class JSONWriter {
          */
         private SetMultimap<String, String> versions;
 
+        // the versions filtered for the highest version per repository, computed once when the versions are set
+        private SetMultimap<String, String> highestVersions;
+        private SetMultimap<String, String> repositoryVersions;
+
         @SuppressWarnings("unused")
         public Holder() {
         }
 
         public Holder(String date, SetMultimap<String, String> versions) {
             this.date = date;
-            this.versions = versions;
+            setVersions(versions);
         }
 
         public String getDate() {
@@ -66,37 +90,98 @@ public class JSONWriter {
         }
 
         /**
-         * @return A multimap with version as key and found file-URLs as value.
+         * @return An unmodifiable multimap with version as key and found file-URLs as value,
+         *      only the highest version per repository is included.
          */
         public SetMultimap<String, String> getVersions() {
-            final Multimap<String, String> repoVersions = HashMultimap.create();
+            return highestVersions;
+        }
+
+        @SuppressWarnings("unused")
+        private void setVersions(SetMultimap<String, String> versions) {
+            this.versions = versions;
+
+            index();
+        }
+
+        /**
+         *
+         * @return An unmodifiable Multimap with version as key and the repositories that use
+         *          this version.
+         */
+        @JsonIgnore
+        public SetMultimap<String, String> getRepositoryVersions() {
+            return repositoryVersions;
+        }
+
+        /**
+         * Filter for the highest version per repository once, so that iterating the
+         * results does not need to parse repositories or compare versions again.
+         */
+        private void index() {
+            // file-URL -> repository, so the repository is parsed only once per file
+            Map<String, String> repositories = new HashMap<>();
+
+            // repository -> all versions found for it
+            Map<String, Set<String>> repoVersions = new HashMap<>();
             for (Entry<String, String> entry : versions.entries()) {
-                repoVersions.put(BaseSearch.getRepository(entry.getValue()), entry.getKey());
+                String repository = repositories.computeIfAbsent(entry.getValue(), BaseSearch::getRepository);
+                repoVersions.computeIfAbsent(repository, repo -> new HashSet<>(2)).add(entry.getKey());
             }
 
-            return Multimaps.filterEntries(versions, input -> {
-                for(String version1 : repoVersions.get(BaseSearch.getRepository(input.getValue()))) {
-                    if(COMPARATOR.compare(version1, input.getKey()) > 0) {
-                        return false;
+            // repository -> the versions which are not lower than any other version of the repository
+            Map<String, Set<String>> highest = new HashMap<>();
+            for (Entry<String, Set<String>> entry : repoVersions.entrySet()) {
+                Set<String> set = new HashSet<>(2);
+                for (String version : entry.getValue()) {
+                    if (isHighest(entry.getValue(), version)) {
+                        set.add(version);
                     }
                 }
+                highest.put(entry.getKey(), set);
+            }
 
-                return true;
-            });
+            SetMultimap<String, String> files = LinkedHashMultimap.create();
+            SetMultimap<String, String> repos = LinkedHashMultimap.create();
+            for (Entry<String, String> entry : versions.entries()) {
+                String repository = repositories.get(entry.getValue());
+                if (highest.get(repository).contains(entry.getKey())) {
+                    files.put(entry.getKey(), entry.getValue());
+                    repos.put(entry.getKey(), repository);
+                }
+            }
+
+            highestVersions = Multimaps.unmodifiableSetMultimap(files);
+            repositoryVersions = Multimaps.unmodifiableSetMultimap(repos);
+        }
+
+        private static boolean isHighest(Set<String> versions, String version) {
+            for (String other : versions) {
+                if (COMPARATOR.compare(other, version) > 0) {
+                    return false;
+                }
+            }
+            return true;
         }
 
         /**
+         * Read the remaining entries of the current snapshot of the given reader,
+         * this allows to use the binary format via {@link BinaryStats} wherever
+         * a Holder is expected.
          *
-         * @return A Multimap with version as key and the repositories that use
-         *          this version.
+         * @param reader A reader positioned at a snapshot via {@link SnapshotReader#nextSnapshot()}
+         * @return A Holder with the date and all versions of the snapshot
+         * @throws IOException If reading fails
          */
-        @JsonIgnore
-        public SetMultimap<String, String> getRepositoryVersions() {
-            SetMultimap<String, String> repositories = HashMultimap.create();
-            for (Entry<String, String> entry : getVersions().entries()) {
-                repositories.put(entry.getKey(), BaseSearch.getRepository(entry.getValue()));
+        public static Holder read(SnapshotReader reader) throws IOException {
+            SetMultimap<String, String> versions = LinkedHashMultimap.create();
+
+            StatsRecord record;
+            while ((record = reader.nextRecord()) != null) {
+                versions.put(record.version, record.url);
             }
-            return repositories;
+
+            return new Holder(reader.getDate(), versions);
         }
 
         /**
@@ -108,15 +193,11 @@ public class JSONWriter {
          * @throws IOException If reading the file fails.
          */
         public static void readFile(Map<String, String> projects, File file) throws IOException {
-            List<String> lines = FileUtils.readLines(file, "UTF-8");
-
-            for (String line : lines) {
-                Holder holder = mapper.readValue(line, Holder.class);
-
-                for (Map.Entry<String, String> entry : holder.getRepositoryVersions().entries()) {
+            StatsReader.readSnapshots(new File[] { file }, snapshot -> {
+                for (Map.Entry<String, String> entry : snapshot.getRepositoryVersions().entries()) {
                     projects.put(entry.getValue(), entry.getKey());
                 }
-            }
+            });
         }
     }
 
@@ -128,23 +209,12 @@ public class JSONWriter {
      * @throws IOException If a file cannot be read
      */
     public static Map<String, String> getHighestVersions() throws IOException {
-        // read stats
-        File[] files = STATS_DIR.listFiles((FilenameFilter)new WildcardFileFilter("stats*.json"));
-        Preconditions.checkNotNull(files);
-
-        Arrays.sort(files);
-
-        Map<String, String> seenRepositoryVersions = new HashMap<>();
-        for(File file : files) {
-            List<String> lines = FileUtils.readLines(file, "UTF-8");
-            for (String line : lines) {
-                Holder holder = mapper.readValue(line, Holder.class);
-                // now update the map of highest version per Repository for the next date
-                addHigherVersions(seenRepositoryVersions, holder.getRepositoryVersions());
-            }
-        }
+        HistoryScan scan = new HistoryScan();
+        HighestVersions highestVersions = scan.register(new HighestVersions());
+
+        scan.scan(Stats.getHistory());
 
-        return seenRepositoryVersions;
+        return highestVersions.getVersions();
     }
 
     /**
@@ -162,4 +232,57 @@ public class JSONWriter {
             }
         }
     }
+
+    /**
+     * Same as {@link #addHigherVersions(Map, Multimap)}, but works on the ids of
+     * repositories and versions in the {@link SymbolTable}s.
+     *
+     * @param seenRepositoryVersions The highest versions per repository to update
+     * @param snapshot The snapshot with the versions to add
+     */
+    public static void addHigherVersions(HighestVersions seenRepositoryVersions, RepositorySnapshot snapshot) {
+        for (int i = 0; i < snapshot.getEntryCount(); i++) {
+            seenRepositoryVersions.add(snapshot.getRepositoryId(i), snapshot.getVersionId(i));
+        }
+    }
+
+    /**
+     * @param versionId The id of a version in {@link SymbolTable#VERSIONS}
+     * @param otherVersionId The id of another version in {@link SymbolTable#VERSIONS}
+     * @return true if the other version is higher than the version
+     */
+    public static boolean isHigherVersion(int versionId, int otherVersionId) {
+        if (versionId == otherVersionId) {
+            return false;
+        }
+
+        long[] keys = getVersionKeys(Math.max(versionId, otherVersionId));
+        long key = keys[versionId];
+        long otherKey = keys[otherVersionId];
+        if (key != VersionComparator.NOT_PACKED && otherKey != VersionComparator.NOT_PACKED && key != otherKey) {
+            return key < otherKey;
+        }
+
+        return COMPARATOR.compare(SymbolTable.VERSIONS.get(versionId), SymbolTable.VERSIONS.get(otherVersionId)) < 0;
+    }
+
+    private static long[] getVersionKeys(int versionId) {
+        long[] keys = versionKeys;
+        if (versionId < keys.length) {
+            return keys;
+        }
+
+        synchronized (JSONWriter.class) {
+            keys = versionKeys;
+            if (versionId >= keys.length) {
+                int length = keys.length;
+                keys = Arrays.copyOf(keys, Math.max(versionId + 1, SymbolTable.VERSIONS.size()));
+                for (int i = length; i < keys.length; i++) {
+                    keys[i] = VersionComparator.key(SymbolTable.VERSIONS.get(i));
+                }
+                versionKeys = keys;
+            }
+            return keys;
+        }
+    }
 }
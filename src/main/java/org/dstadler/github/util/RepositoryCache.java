@@ -0,0 +1,345 @@
+package org.dstadler.github.util;
+
+import com.google.common.base.Preconditions;
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.github.GHFileNotFoundException;
+import org.kohsuke.github.GHRepository;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.HttpException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Metadata of repositories on GitHub, kept on disk between runs so that the
+ * same repositories are not fetched again and again by the search,
+ * {@link GitHubSupport} and ListStars.
+ *
+ * Each piece of information is only used for some time, see {@link Field}, afterwards
+ * the whole entry is fetched again. Repositories which are not found or not accessible
+ * are remembered as well.
+ *
+ * Concurrent requests for the same repository wait for one fetch instead of
+ * sending the same request multiple times.
+ */
+public class RepositoryCache {
+    public static File FILE = new File("repositoryCache.json");
+
+    // increase when the format changes to start with an empty cache
+    private static final int FORMAT_VERSION = 1;
+
+    // how long repositories which are not found or not accessible are not tried again
+    private static final long NOT_ACCESSIBLE_TTL = TimeUnit.DAYS.toMillis(7);
+
+    // write the cache every so many fetches, so not too much is lost if a long run fails
+    private static final int WRITE_INTERVAL = 1000;
+
+    private static RepositoryCache instance;
+
+    public enum Field {
+        // repositories are forks from the start, so this hardly ever changes
+        FORK(TimeUnit.DAYS.toMillis(30)),
+
+        // stars and watchers
+        STARS(TimeUnit.DAYS.toMillis(7)),
+
+        PUSHED_AT(TimeUnit.HOURS.toMillis(12));
+
+        private final long ttl;
+
+        Field(long ttl) {
+            this.ttl = ttl;
+        }
+    }
+
+    public enum Status {
+        OK,
+        NOT_FOUND,
+        FORBIDDEN
+    }
+
+    /**
+     * Fetches the metadata of a repository, the cache fills in the time of fetching.
+     */
+    public interface Loader {
+        Entry load(String repository) throws IOException;
+    }
+
+    private final File file;
+
+    // repository as key
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Entry>> inFlight = new ConcurrentHashMap<>();
+
+    private final AtomicInteger hits = new AtomicInteger();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private RepositoryCache(File file) {
+        this.file = file;
+    }
+
+    /**
+     * @return The cache stored at {@link #FILE}, read when it is used for the first time or after the file was changed
+     * @throws IOException If reading the file fails
+     */
+    public static synchronized RepositoryCache getInstance() throws IOException {
+        if (instance == null || !instance.file.equals(FILE)) {
+            instance = read(FILE);
+        }
+        return instance;
+    }
+
+    /**
+     * @param file The file to read from and write to
+     * @return The cache with the entries of the file or an empty one if the file does
+     *      not exist or has a different format
+     * @throws IOException If reading the file fails
+     */
+    public static RepositoryCache read(File file) throws IOException {
+        RepositoryCache cache = new RepositoryCache(file);
+        if (file.exists()) {
+            Stored stored = JSONWriter.mapper.readValue(file, Stored.class);
+            if (stored.formatVersion == FORMAT_VERSION) {
+                cache.entries.putAll(stored.repositories);
+            }
+        }
+        return cache;
+    }
+
+    /**
+     * Write all entries to the file, called at the end of a run and every
+     * {@link #WRITE_INTERVAL} fetches. Entries which are too old for any
+     * {@link Field} are removed, they would be fetched again anyway.
+     *
+     * @throws IOException If writing fails
+     */
+    public synchronized void write() throws IOException {
+        long now = System.currentTimeMillis();
+        entries.values().removeIf(entry -> entry.isExpired(now));
+
+        Stored stored = new Stored();
+        stored.repositories.putAll(entries);
+        JSONWriter.mapper.writeValue(file, stored);
+
+        System.out.println("Wrote " + entries.size() + " repositories to " + file + ", fetched " + fetches.get() +
+                ", used " + hits.get() + " times from the cache");
+    }
+
+    /**
+     * @param github The connection to use for fetching the repository
+     * @param repository The name of the repository, e.g. "centic9/poi-mail-merge"
+     * @param field The information which is needed, decides how old the entry can be
+     * @return The cached or newly fetched entry, check {@link Entry#status} before using the other fields
+     * @throws IOException If fetching the repository fails
+     */
+    public Entry get(GitHub github, String repository, Field field) throws IOException {
+        return get(repository, field, repo -> fetch(github, repo));
+    }
+
+    /**
+     * @param repository The name of the repository, e.g. "centic9/poi-mail-merge"
+     * @param field The information which is needed, decides how old the entry can be
+     * @param loader Fetches the entry if it is not cached or too old
+     * @return The cached or newly fetched entry
+     * @throws IOException If fetching the repository fails
+     */
+    public Entry get(String repository, Field field, Loader loader) throws IOException {
+        long now = System.currentTimeMillis();
+        Entry entry = entries.get(repository);
+        if (entry != null && entry.isValid(field, now)) {
+            hits.incrementAndGet();
+            return entry;
+        }
+
+        // wait for another thread which is already fetching this repository
+        CompletableFuture<Entry> future = new CompletableFuture<>();
+        CompletableFuture<Entry> existing = inFlight.putIfAbsent(repository, future);
+        if (existing != null) {
+            hits.incrementAndGet();
+            return join(existing);
+        }
+
+        try {
+            // another thread may have finished fetching in the meantime
+            entry = entries.get(repository);
+            if (entry == null || !entry.isValid(field, now)) {
+                entry = loader.load(repository);
+                entry.fetched = now;
+                entries.put(repository, entry);
+
+                if (fetches.incrementAndGet() % WRITE_INTERVAL == 0) {
+                    write();
+                }
+            } else {
+                hits.incrementAndGet();
+            }
+
+            future.complete(entry);
+            return entry;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(repository, future);
+        }
+    }
+
+    /**
+     * @param repository The name of the repository, e.g. "centic9/poi-mail-merge"
+     * @param field The information which is needed, decides how old the entry can be
+     * @return true if the repository is cached and the entry is recent enough
+     */
+    public boolean contains(String repository, Field field) {
+        Entry entry = entries.get(repository);
+        return entry != null && entry.isValid(field, System.currentTimeMillis());
+    }
+
+    /**
+     * Store an entry which was fetched in another way, e.g. together with other repositories.
+     *
+     * @param repository The name of the repository, e.g. "centic9/poi-mail-merge"
+     * @param entry The entry with all fields filled in, the cache fills in the time of fetching
+     * @throws IOException If writing the cache fails
+     */
+    public void put(String repository, Entry entry) throws IOException {
+        entry.fetched = System.currentTimeMillis();
+        entries.put(repository, entry);
+
+        if (fetches.incrementAndGet() % WRITE_INTERVAL == 0) {
+            write();
+        }
+    }
+
+    private static Entry fetch(GitHub github, String repository) throws IOException {
+        Entry entry = new Entry();
+        try {
+            GHRepository repo = github.getRepository(repository);
+            entry.status = Status.OK;
+            entry.fork = repo.isFork();
+            entry.stars = repo.getStargazersCount();
+            entry.watchers = repo.getWatchers();
+            entry.pushedAt = repo.getPushedAt() == null ? 0 : repo.getPushedAt().getTime();
+        } catch (GHFileNotFoundException e) {
+            entry.status = Status.NOT_FOUND;
+        } catch (HttpException e) {
+            if (!isForbidden(e)) {
+                throw e;
+            }
+            entry.status = Status.FORBIDDEN;
+        }
+        return entry;
+    }
+
+    /**
+     * GitHub also reports exceeded rate-limits with 403, these are thrown to be retried
+     * instead of remembering the repository as not accessible.
+     *
+     * @param e The failure when fetching a repository
+     * @return true if access to the repository is not allowed
+     */
+    static boolean isForbidden(HttpException e) {
+        if (e.getResponseCode() != 403) {
+            return false;
+        }
+
+        Map<String, List<String>> headers = e.getResponseHeaderFields();
+        if (headers != null) {
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                if ("Retry-After".equalsIgnoreCase(header.getKey()) ||
+                        ("X-RateLimit-Remaining".equalsIgnoreCase(header.getKey()) && header.getValue().contains("0"))) {
+                    return false;
+                }
+            }
+        }
+
+        // primary and secondary rate-limits, the latter were called abuse-limits before
+        String message = e.getMessage();
+        return !StringUtils.containsIgnoreCase(message, "rate limit") && !StringUtils.containsIgnoreCase(message, "abuse");
+    }
+
+    private static Entry join(CompletableFuture<Entry> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for repository", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return The number of cached repositories
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return The number of repositories which were fetched since the cache was read
+     */
+    public int getFetches() {
+        return fetches.get();
+    }
+
+    public static class Entry {
+        public Status status = Status.OK;
+        public boolean fork;
+        public int stars;
+        public int watchers;
+
+        // milliseconds since the epoch, 0 if not known
+        public long pushedAt;
+
+        // when the entry was fetched, milliseconds since the epoch
+        public long fetched;
+
+        boolean isValid(Field field, long now) {
+            Preconditions.checkNotNull(field);
+
+            return now - fetched < (status == Status.OK ? field.ttl : NOT_ACCESSIBLE_TTL);
+        }
+
+        boolean isExpired(long now) {
+            for (Field field : Field.values()) {
+                if (isValid(field, now)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            return "Entry{" +
+                    "status=" + status +
+                    ", fork=" + fork +
+                    ", stars=" + stars +
+                    ", watchers=" + watchers +
+                    ", pushedAt=" + pushedAt +
+                    ", fetched=" + fetched +
+                    '}';
+        }
+    }
+
+    private static class Stored {
+        public int formatVersion = FORMAT_VERSION;
+
+        // repository as key
+        public Map<String, Entry> repositories = new TreeMap<>();
+    }
+}
@@ -0,0 +1,68 @@
+package org.dstadler.github.util;
+
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Collects all repositories found in the history and the ones
+ * found on the latest date which had results.
+ *
+ * Repositories are kept as bits indexed by the ids in {@link SymbolTable#REPOSITORIES}.
+ */
+public class RepositorySet implements SnapshotVisitor {
+    private final BitSet repositories = new BitSet();
+
+    private String latestDate;
+    private final BitSet latest = new BitSet();
+
+    @Override
+    public void visit(RepositorySnapshot snapshot) {
+        if (snapshot.getEntryCount() == 0) {
+            return;
+        }
+
+        // there can be multiple snapshots for the same date
+        if (latestDate == null || latestDate.compareTo(snapshot.getDate()) < 0) {
+            latestDate = snapshot.getDate();
+            latest.clear();
+        }
+        boolean isLatest = latestDate.equals(snapshot.getDate());
+
+        for (int i = 0; i < snapshot.getEntryCount(); i++) {
+            repositories.set(snapshot.getRepositoryId(i));
+            if (isLatest) {
+                latest.set(snapshot.getRepositoryId(i));
+            }
+        }
+    }
+
+    /**
+     * @return All repositories found in any snapshot
+     */
+    public Set<String> getRepositories() {
+        return toSet(repositories);
+    }
+
+    /**
+     * @return The date of the latest snapshot with results or null if there was none
+     */
+    public String getLatestDate() {
+        return latestDate;
+    }
+
+    /**
+     * @return The repositories found in the snapshots of the latest date
+     */
+    public Set<String> getLatestRepositories() {
+        return toSet(latest);
+    }
+
+    private static Set<String> toSet(BitSet ids) {
+        Set<String> set = new HashSet<>();
+        for (int id = ids.nextSetBit(0); id >= 0; id = ids.nextSetBit(id + 1)) {
+            set.add(SymbolTable.REPOSITORIES.get(id));
+        }
+        return set;
+    }
+}
@@ -0,0 +1,216 @@
+package org.dstadler.github.util;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import org.dstadler.github.search.BaseSearch;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The results of one snapshot reduced to what is needed for post-processing.
+ *
+ * Instead of all file-URLs only the versions per repository with the number of
+ * files and the first file are kept, so memory depends on the number of
+ * repositories in one snapshot, not on the number of files.
+ *
+ * The same filtering as {@link JSONWriter.Holder#getVersions()} is applied, i.e.
+ * only the highest version per repository is reported.
+ */
+public class RepositorySnapshot {
+    private static final Comparator<String> COMPARATOR = new VersionComparator();
+
+    private final String date;
+
+    // repository -> version -> files, versions are usually only one or two per repository
+    private final Map<String, Map<String, Files>> repositories = new HashMap<>();
+    private int position = 0;
+
+    private List<Files> resolved;
+    private Map<String, Integer> fileCounts;
+    private Map<String, String> firstFiles;
+    private SetMultimap<String, String> repositoryVersions;
+
+    // the entries of repositoryVersions as ids in the SymbolTables, in the same order
+    private int[] repositoryIds;
+    private int[] versionIds;
+
+    public RepositorySnapshot(String date) {
+        this.date = date;
+    }
+
+    /**
+     * Read the remaining records of the current snapshot of the given reader.
+     *
+     * @param reader A reader positioned at a snapshot via {@link SnapshotReader#nextSnapshot()}
+     * @return The snapshot with all records added
+     * @throws IOException If reading the file fails
+     */
+    public static RepositorySnapshot read(SnapshotReader reader) throws IOException {
+        RepositorySnapshot snapshot = new RepositorySnapshot(reader.getDate());
+
+        StatsRecord record;
+        while ((record = reader.nextRecord()) != null) {
+            snapshot.add(record.version, record.url);
+        }
+
+        // apply the filtering right away, so it is done by the thread which reads the snapshot
+        snapshot.resolve();
+
+        return snapshot;
+    }
+
+    public void add(String version, String url) {
+        resolved = null;
+
+        String repository = SymbolTable.REPOSITORIES.intern(BaseSearch.getRepository(url));
+        Files files = repositories.computeIfAbsent(repository, repo -> new LinkedHashMap<>(2)).
+                computeIfAbsent(version, ver -> new Files(repository, SymbolTable.VERSIONS.intern(ver), url, position));
+        files.count++;
+
+        position++;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    /**
+     * @return A multimap with version as key and the repositories which use this
+     *      version as value, see {@link JSONWriter.Holder#getRepositoryVersions()}
+     */
+    public SetMultimap<String, String> getRepositoryVersions() {
+        resolve();
+        return repositoryVersions;
+    }
+
+    /**
+     * @return The number of entries in {@link #getRepositoryVersions()}
+     */
+    public int getEntryCount() {
+        resolve();
+        return repositoryIds.length;
+    }
+
+    /**
+     * @param entry The index of the entry, in the order of {@link #getRepositoryVersions()}
+     * @return The id of the repository in {@link SymbolTable#REPOSITORIES}
+     */
+    public int getRepositoryId(int entry) {
+        return repositoryIds[entry];
+    }
+
+    /**
+     * @param entry The index of the entry, in the order of {@link #getRepositoryVersions()}
+     * @return The id of the version in {@link SymbolTable#VERSIONS}
+     */
+    public int getVersionId(int entry) {
+        return versionIds[entry];
+    }
+
+    /**
+     * @return version as key, number of files which use this version as value
+     */
+    public Map<String, Integer> getFileCounts() {
+        resolve();
+        return fileCounts;
+    }
+
+    /**
+     * @return version as key, the first file in the snapshot which uses this version as value
+     */
+    public Map<String, String> getFirstFiles() {
+        resolve();
+        return firstFiles;
+    }
+
+    /**
+     * @return The number of files after filtering for the highest version per repository
+     */
+    public int size() {
+        int size = 0;
+        for (Integer count : getFileCounts().values()) {
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * Apply the filtering for the highest version per repository and return the remaining
+     * entries in the order they were found in the stats-file.
+     */
+    List<Files> resolve() {
+        if (resolved != null) {
+            return resolved;
+        }
+
+        List<Files> list = new ArrayList<>();
+        for (Map<String, Files> versions : repositories.values()) {
+            for (Files files : versions.values()) {
+                if (isHighest(versions, files.version)) {
+                    list.add(files);
+                }
+            }
+        }
+
+        list.sort(Comparator.comparingInt(files -> files.firstPosition));
+        resolved = Collections.unmodifiableList(list);
+
+        Map<String, Integer> counts = new LinkedHashMap<>();
+        Map<String, String> first = new LinkedHashMap<>();
+        for (Files files : resolved) {
+            counts.merge(files.version, files.count, Integer::sum);
+            first.putIfAbsent(files.version, files.firstFile);
+        }
+        fileCounts = Collections.unmodifiableMap(counts);
+        firstFiles = Collections.unmodifiableMap(first);
+
+        SetMultimap<String, String> repos = HashMultimap.create();
+        for (Files files : resolved) {
+            repos.put(files.version, files.repository);
+        }
+        repositoryVersions = Multimaps.unmodifiableSetMultimap(repos);
+
+        repositoryIds = new int[repos.size()];
+        versionIds = new int[repos.size()];
+        int i = 0;
+        for (Map.Entry<String, String> entry : repos.entries()) {
+            versionIds[i] = SymbolTable.VERSIONS.id(entry.getKey());
+            repositoryIds[i] = SymbolTable.REPOSITORIES.id(entry.getValue());
+            i++;
+        }
+
+        return resolved;
+    }
+
+    private static boolean isHighest(Map<String, Files> versions, String version) {
+        for (String other : versions.keySet()) {
+            if (COMPARATOR.compare(other, version) > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Files {
+        private final String repository;
+        private final String version;
+        private final String firstFile;
+        private final int firstPosition;
+        private int count;
+
+        public Files(String repository, String version, String firstFile, int firstPosition) {
+            this.repository = repository;
+            this.version = version;
+            this.firstFile = firstFile;
+            this.firstPosition = firstPosition;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package org.dstadler.github.util;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Reads snapshots of the stats-files on all cores, but hands them out strictly
+ * in the order of the files and the snapshots within them, so the result of
+ * processing them one after the other is the same as with {@link StatsReader}.
+ *
+ * JSON stats-files are parsed and reduced to a {@link RepositorySnapshot} in parallel
+ * per file. The binary file is read sequentially as this is cheap, but the
+ * snapshots are reduced in parallel.
+ *
+ * Only a few files are read ahead, so memory usage does not depend on the
+ * number of stats-files.
+ */
+public class SnapshotPipeline implements Closeable {
+    private final ForkJoinPool pool;
+    private final int readAhead;
+
+    private final Iterator<File> files;
+    private final String since;
+
+    private final Deque<ForkJoinTask<List<RepositorySnapshot>>> pending = new ArrayDeque<>();
+    private Iterator<RepositorySnapshot> current = Collections.emptyIterator();
+
+    // a binary file is read here and only the reduction is done in parallel
+    private SnapshotReader binary;
+
+    // the last date in the binary file and how many snapshots it had for it, these
+    // are also contained in the stats-file of that date, see Stats.getHistory()
+    private String binaryDate;
+    private int binaryCount;
+
+    /**
+     * @param files The stats-files to read, usually the result of {@link Stats#getHistory()}
+     * @param since If not null, only snapshots after this date are returned
+     */
+    public SnapshotPipeline(File[] files, String since) {
+        this(files, since, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SnapshotPipeline(File[] files, String since, int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.readAhead = parallelism * 2;
+
+        List<File> list = new ArrayList<>();
+        for (File file : files) {
+            // skip files which only contain older snapshots
+            if (since == null || BinaryStats.isBinary(file) || Stats.getDate(file).compareTo(since) > 0) {
+                list.add(file);
+            }
+        }
+        this.files = list.iterator();
+        this.since = since;
+    }
+
+    /**
+     * @return The next snapshot in order or null if all files are processed
+     * @throws IOException If reading a file fails
+     */
+    public RepositorySnapshot next() throws IOException {
+        while (!current.hasNext()) {
+            fill();
+
+            ForkJoinTask<List<RepositorySnapshot>> task = pending.poll();
+            if (task == null) {
+                return null;
+            }
+
+            current = get(task).iterator();
+        }
+
+        return current.next();
+    }
+
+    private void fill() throws IOException {
+        while (pending.size() < readAhead) {
+            if (binary != null) {
+                if (binary.nextSnapshot()) {
+                    binaryCount = binary.getDate().equals(binaryDate) ? binaryCount + 1 : 1;
+                    binaryDate = binary.getDate();
+                    if (isIncluded(binary.getDate())) {
+                        pending.add(pool.submit(reduce(binary.getDate(), readRecords(binary))));
+                    }
+                    continue;
+                }
+
+                binary.close();
+                binary = null;
+            }
+
+            if (!files.hasNext()) {
+                return;
+            }
+
+            File file = files.next();
+            if (BinaryStats.isBinary(file)) {
+                binary = StatsReader.open(file);
+            } else {
+                String skipDate = binaryDate;
+                int skipCount = binaryCount;
+                binaryDate = null;
+                binaryCount = 0;
+                pending.add(pool.submit(() -> read(file, skipDate, skipCount)));
+            }
+        }
+    }
+
+    private List<RepositorySnapshot> read(File file, String skipDate, int skipCount) {
+        List<RepositorySnapshot> snapshots = new ArrayList<>();
+        try (SnapshotReader reader = StatsReader.open(file)) {
+            int skipped = 0;
+            while (reader.nextSnapshot()) {
+                // snapshots which were already read from the binary file
+                if (skipped < skipCount && reader.getDate().equals(skipDate)) {
+                    skipped++;
+                    continue;
+                }
+
+                if (isIncluded(reader.getDate())) {
+                    snapshots.add(RepositorySnapshot.read(reader));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read " + file, e);
+        }
+        return snapshots;
+    }
+
+    private static List<StatsRecord> readRecords(SnapshotReader reader) throws IOException {
+        List<StatsRecord> records = new ArrayList<>();
+        StatsRecord record;
+        while ((record = reader.nextRecord()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static Callable<List<RepositorySnapshot>> reduce(String date, List<StatsRecord> records) {
+        return () -> {
+            RepositorySnapshot snapshot = new RepositorySnapshot(date);
+            for (StatsRecord record : records) {
+                snapshot.add(record.version, record.url);
+            }
+            snapshot.resolve();
+            return Collections.singletonList(snapshot);
+        };
+    }
+
+    private boolean isIncluded(String date) {
+        return since == null || date.compareTo(since) > 0;
+    }
+
+    private static List<RepositorySnapshot> get(ForkJoinTask<List<RepositorySnapshot>> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while reading stats-files", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ForkJoinTask<List<RepositorySnapshot>> task : pending) {
+            task.cancel(true);
+        }
+        pending.clear();
+        pool.shutdownNow();
+
+        if (binary != null) {
+            binary.close();
+            binary = null;
+        }
+    }
+}
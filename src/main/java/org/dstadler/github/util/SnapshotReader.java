@@ -0,0 +1,29 @@
+package org.dstadler.github.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Common interface for the different storage formats of the stats,
+ * hands out the snapshots and their entries one at a time.
+ */
+public interface SnapshotReader extends Closeable {
+    /**
+     * Move to the next snapshot, any remaining records of the current snapshot are skipped.
+     *
+     * @return false if there are no more snapshots
+     * @throws IOException If reading fails
+     */
+    boolean nextSnapshot() throws IOException;
+
+    /**
+     * @return The date of the current snapshot
+     */
+    String getDate();
+
+    /**
+     * @return The next entry of the current snapshot or null if there are no more
+     * @throws IOException If reading fails
+     */
+    StatsRecord nextRecord() throws IOException;
+}
@@ -0,0 +1,11 @@
+package org.dstadler.github.util;
+
+import java.io.IOException;
+
+/**
+ * Receives the snapshots of the stats history one after the other,
+ * in the order of their date.
+ */
+public interface SnapshotVisitor {
+    void visit(RepositorySnapshot snapshot) throws IOException;
+}
@@ -2,20 +2,82 @@ package org.dstadler.github.util;
 
 import com.google.common.base.Preconditions;
 import org.apache.commons.io.filefilter.WildcardFileFilter;
+import org.apache.commons.lang3.StringUtils;
 
 import java.io.File;
 import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 public class Stats {
     public static File[] getFiles() {
+        File[] files = getFiles(JSONWriter.STATS_DIR);
+
+        System.out.println("Found " + files.length + " stats-files");
+        return files;
+    }
+
+    /**
+     * @param dir The directory with the stats-files
+     * @return All stats-files in the directory sorted by date, this includes
+     *      compressed files and the delta-files written by {@link DeltaStats}
+     */
+    public static File[] getFiles(File dir) {
         // read stats
-        File[] files = JSONWriter.STATS_DIR.listFiles((FilenameFilter)new WildcardFileFilter("stats*.json"));
+        File[] files = dir.listFiles((FilenameFilter)new WildcardFileFilter("stats*.json", "stats*.json" + CompressedStats.SUFFIX));
         Preconditions.checkNotNull(files);
 
         Arrays.sort(files);
 
-        System.out.println("Found " + files.length + " stats-files");
         return files;
     }
+
+    /**
+     * Returns the files which contain the full history: the binary file written
+     * by {@link BinaryStats} if it exists, followed by all stats-files which are
+     * newer than the last snapshot stored in it and the file of that last date.
+     *
+     * @return The files to read via {@link HistoryScan#scan(File[])}
+     * @throws IOException If the binary file cannot be read
+     */
+    public static File[] getHistory() throws IOException {
+        return getHistory(getFiles());
+    }
+
+    /**
+     * @param files The stats-files as returned by {@link #getFiles()}
+     * @return The files to read via {@link HistoryScan#scan(File[])}
+     * @throws IOException If the binary file cannot be read
+     */
+    public static File[] getHistory(File[] files) throws IOException {
+        File binary = new File(JSONWriter.STATS_DIR, BinaryStats.FILE_NAME);
+        if (!binary.exists()) {
+            return files;
+        }
+
+        String lastDate = BinaryStats.getLastDate(binary);
+
+        List<File> history = new ArrayList<>();
+        history.add(binary);
+        for (File file : files) {
+            // the file of the last date may contain more snapshots than the binary file,
+            // the snapshots which are in both are only read once, see SnapshotPipeline
+            if (lastDate == null || getDate(file).compareTo(lastDate) >= 0) {
+                history.add(file);
+            }
+        }
+
+        System.out.println("Using " + binary + " up to " + lastDate + " and " + (history.size() - 1) + " stats-files since then");
+        return history.toArray(new File[0]);
+    }
+
+    /**
+     * @param file A stats-file, e.g. stats2016-09-30.json, stats2016-09-30.json.gz or stats2016-09-30.delta.json
+     * @return The date of the stats-file as found in the name, e.g. 2016-09-30
+     */
+    public static String getDate(File file) {
+        return StringUtils.removeStart(StringUtils.substringBefore(file.getName(), "."), "stats");
+    }
 }
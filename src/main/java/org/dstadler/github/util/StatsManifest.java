@@ -0,0 +1,129 @@
+package org.dstadler.github.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.io.FileUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Summary of all stats-files, stored in the stats-directory and updated
+ * by {@link JSONWriter#write(String, com.google.common.collect.SetMultimap)}.
+ *
+ * For each file the date, size and checksum is recorded, so tools can find out
+ * which files changed since they processed them by only comparing checksums.
+ *
+ * Stats-files are only appended to, so a file with unchanged size is taken as
+ * unchanged without reading it, set "stats.verify" to also compare the checksums
+ * of all files. The modification time is not used as it differs after each checkout,
+ * the manifest stays the same as long as the stats-files do.
+ */
+public class StatsManifest {
+    public static final String FILE_NAME = "manifest.json";
+
+    // compute the checksum of all stats-files instead of only the ones with a different size
+    public static boolean VERIFY = Boolean.getBoolean("stats.verify");
+
+    // increase when the format changes to force re-computing all entries
+    private static final int FORMAT_VERSION = 3;
+
+    public int formatVersion = FORMAT_VERSION;
+
+    // file-name as key
+    public Map<String, Entry> files = new TreeMap<>();
+
+    /**
+     * Read the manifest and update it for all given files, only files which are
+     * new or which have a different size are read, all files are read if {@link #VERIFY} is set.
+     *
+     * @param dir The directory with the stats-files and the manifest
+     * @param statsFiles The stats-files as returned by {@link Stats#getFiles()}
+     * @return The manifest with an entry for each of the given files
+     * @throws IOException If reading or writing fails
+     */
+    public static StatsManifest update(File dir, File[] statsFiles) throws IOException {
+        StatsManifest manifest = read(dir);
+
+        int updated = 0;
+        Map<String, Entry> files = new TreeMap<>();
+        for (File file : statsFiles) {
+            Entry entry = manifest.files.get(file.getName());
+            if (entry == null || entry.size != file.length() || (VERIFY && entry.checksum != FileUtils.checksumCRC32(file))) {
+                entry = Entry.create(file);
+                updated++;
+            }
+            files.put(file.getName(), entry);
+        }
+
+        if (updated > 0 || files.size() != manifest.files.size()) {
+            manifest.files = files;
+            manifest.write(dir);
+
+            System.out.println("Updated " + updated + " entries of " + new File(dir, FILE_NAME));
+        }
+
+        return manifest;
+    }
+
+    /**
+     * Update the entry of one stats-file, e.g. after writing to it.
+     *
+     * @param file The stats-file
+     * @throws IOException If reading or writing fails
+     */
+    public static void update(File file) throws IOException {
+        File dir = file.getParentFile();
+        StatsManifest manifest = read(dir);
+
+        manifest.files.put(file.getName(), Entry.create(file));
+        manifest.write(dir);
+    }
+
+    /**
+     * @param dir The directory with the stats-files and the manifest
+     * @return The manifest or an empty one if there is none yet or it has a different format
+     * @throws IOException If reading fails
+     */
+    public static StatsManifest read(File dir) throws IOException {
+        File file = new File(dir, FILE_NAME);
+        if (!file.exists()) {
+            return new StatsManifest();
+        }
+
+        // check the version first as older formats may have different fields
+        JsonNode node = JSONWriter.mapper.readTree(file);
+        if (node.path("formatVersion").asInt() != FORMAT_VERSION) {
+            return new StatsManifest();
+        }
+
+        return JSONWriter.mapper.treeToValue(node, StatsManifest.class);
+    }
+
+    private void write(File dir) throws IOException {
+        JSONWriter.mapper.writeValue(new File(dir, FILE_NAME), this);
+    }
+
+    /**
+     * @param file A stats-file
+     * @return The entry for the file or null if there is none
+     */
+    public Entry get(File file) {
+        return files.get(file.getName());
+    }
+
+    public static class Entry {
+        public String date;
+        public long size;
+        public long checksum;
+
+        private static Entry create(File file) throws IOException {
+            Entry entry = new Entry();
+            entry.date = Stats.getDate(file);
+            entry.size = file.length();
+            entry.checksum = FileUtils.checksumCRC32(file);
+            return entry;
+        }
+    }
+}
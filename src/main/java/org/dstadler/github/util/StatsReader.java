@@ -0,0 +1,173 @@
+package org.dstadler.github.util;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.google.common.base.Preconditions;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming reader for the stats-files which returns one (date, version, file-URL)
+ * tuple at a time instead of reading whole files and converting every line
+ * into a {@link JSONWriter.Holder}.
+ *
+ * Each line in a stats-file is one snapshot, use {@link #nextSnapshot()} to move
+ * to the next one and {@link #nextRecord()} to read the entries of the current
+ * snapshot.
+ */
+public class StatsReader implements SnapshotReader {
+    private final JsonParser parser;
+
+    private String date;
+    private String version;
+    private boolean inVersions;
+
+    public StatsReader(File file) throws IOException {
+        this(CompressedStats.open(file));
+    }
+
+    public StatsReader(InputStream in) throws IOException {
+        parser = JSONWriter.mapper.getFactory().createParser(in);
+    }
+
+    @Override
+    public boolean nextSnapshot() throws IOException {
+        //noinspection StatementWithEmptyBody
+        while (nextRecord() != null) {
+            // skip entries which were not consumed
+        }
+
+        JsonToken token = parser.nextToken();
+        if (token == null) {
+            return false;
+        }
+        checkToken(token, JsonToken.START_OBJECT);
+
+        date = null;
+        version = null;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            token = parser.nextToken();
+            if ("date".equals(name)) {
+                date = parser.getValueAsString();
+            } else if ("versions".equals(name) && token == JsonToken.START_OBJECT) {
+                // the date is written first, so we can hand out complete records from here on
+                Preconditions.checkState(date != null, "Expected the date before the versions in %s", parser.currentLocation());
+                inVersions = true;
+                return true;
+            } else {
+                parser.skipChildren();
+            }
+        }
+        checkToken(token, JsonToken.END_OBJECT);
+
+        // snapshot without any versions
+        return true;
+    }
+
+    @Override
+    public String getDate() {
+        return date;
+    }
+
+    @Override
+    public StatsRecord nextRecord() throws IOException {
+        while (inVersions) {
+            JsonToken token = parser.nextToken();
+            if (version == null) {
+                if (token == JsonToken.END_OBJECT) {
+                    finishSnapshot();
+                    return null;
+                }
+
+                checkToken(token, JsonToken.FIELD_NAME);
+                version = parser.currentName();
+                checkToken(parser.nextToken(), JsonToken.START_ARRAY);
+            } else if (token == JsonToken.END_ARRAY) {
+                version = null;
+            } else {
+                return new StatsRecord(date, version, parser.getValueAsString());
+            }
+        }
+
+        return null;
+    }
+
+    private void finishSnapshot() throws IOException {
+        inVersions = false;
+
+        // skip any other fields which follow the versions
+        JsonToken token;
+        while ((token = parser.nextToken()) == JsonToken.FIELD_NAME) {
+            parser.nextToken();
+            parser.skipChildren();
+        }
+        checkToken(token, JsonToken.END_OBJECT);
+    }
+
+    private void checkToken(JsonToken token, JsonToken expected) {
+        Preconditions.checkState(token == expected, "Expected %s but had %s at %s", expected, token, parser.currentLocation());
+    }
+
+    @Override
+    public void close() throws IOException {
+        parser.close();
+    }
+
+    /**
+     * Open a reader for the given file, depending on the name either the JSON,
+     * the delta or the binary format is read.
+     *
+     * @param file A plain or compressed stats-file or a file written by {@link BinaryStats} or {@link DeltaStats}
+     * @return A reader for the snapshots in the file
+     * @throws IOException If opening the file fails
+     */
+    public static SnapshotReader open(File file) throws IOException {
+        if (BinaryStats.isBinary(file)) {
+            return new BinaryStats.Reader(file);
+        }
+        if (DeltaStats.isDelta(file)) {
+            return new DeltaStats.Reader(file);
+        }
+
+        return new StatsReader(file);
+    }
+
+    /**
+     * Read all snapshots from the given files one after the other, only one snapshot
+     * is kept in memory at any time. Snapshots of the file following a binary file
+     * which are already stored in the binary file are skipped.
+     *
+     * @param files The stats-files to read, usually the result of {@link Stats#getHistory()}
+     * @param visitor Invoked for each snapshot in the order of the given files
+     * @throws IOException If reading a file fails
+     */
+    public static void readSnapshots(File[] files, SnapshotVisitor visitor) throws IOException {
+        String lastDate = null;
+        int lastCount = 0;
+        for (File file : files) {
+            boolean binary = BinaryStats.isBinary(file);
+            int skipped = 0;
+            try (SnapshotReader reader = open(file)) {
+                while (reader.nextSnapshot()) {
+                    if (binary) {
+                        lastCount = reader.getDate().equals(lastDate) ? lastCount + 1 : 1;
+                        lastDate = reader.getDate();
+                    } else if (skipped < lastCount && reader.getDate().equals(lastDate)) {
+                        skipped++;
+                        continue;
+                    }
+
+                    visitor.visit(RepositorySnapshot.read(reader));
+                }
+            }
+
+            if (!binary) {
+                lastDate = null;
+                lastCount = 0;
+            }
+        }
+    }
+}
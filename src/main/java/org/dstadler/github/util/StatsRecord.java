@@ -0,0 +1,32 @@
+package org.dstadler.github.util;
+
+import org.dstadler.github.search.BaseSearch;
+
+/**
+ * One entry of a stats-file: the date of the snapshot, the version
+ * and the URL of the file where the version was found.
+ */
+public class StatsRecord {
+    public final String date;
+    public final String version;
+    public final String url;
+
+    public StatsRecord(String date, String version, String url) {
+        this.date = date;
+        this.version = version;
+        this.url = url;
+    }
+
+    public String getRepository() {
+        return BaseSearch.getRepository(url);
+    }
+
+    @Override
+    public String toString() {
+        return "StatsRecord{" +
+                "date='" + date + '\'' +
+                ", version='" + version + '\'' +
+                ", url='" + url + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,81 @@
+package org.dstadler.github.util;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Maps strings to dense int ids and back, so each distinct repository or version
+ * is kept in memory only once and aggregation can work on ints and arrays indexed
+ * by the id instead of maps with string keys.
+ *
+ * Ids are assigned in the order the strings are first seen, which can differ
+ * from run to run if snapshots are read in parallel, so ids should not be used
+ * to define any order of results.
+ */
+public class SymbolTable {
+    public static final SymbolTable REPOSITORIES = new SymbolTable();
+    public static final SymbolTable VERSIONS = new SymbolTable();
+
+    private final Map<String, Integer> ids = new ConcurrentHashMap<>();
+    private String[] symbols = new String[1024];
+    private int size;
+
+    // e.g. repositories which could not be parsed from the URL, ConcurrentHashMap does not support null
+    private volatile int nullId = -1;
+
+    /**
+     * @param symbol The string to look up, can be null
+     * @return The id of the string, a new one is assigned if it was not seen before
+     */
+    public int id(String symbol) {
+        Integer id = symbol == null ? (nullId == -1 ? null : nullId) : ids.get(symbol);
+        if (id != null) {
+            return id;
+        }
+
+        synchronized (this) {
+            id = symbol == null ? (nullId == -1 ? null : nullId) : ids.get(symbol);
+            if (id == null) {
+                if (size == symbols.length) {
+                    symbols = Arrays.copyOf(symbols, size * 2);
+                }
+                id = size;
+                symbols[size++] = symbol;
+
+                if (symbol == null) {
+                    nullId = id;
+                } else {
+                    ids.put(symbol, id);
+                }
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param id An id as returned by {@link #id(String)}
+     * @return The string for the id
+     */
+    public synchronized String get(int id) {
+        if (id < 0 || id >= size) {
+            throw new IllegalArgumentException("Unknown id " + id + ", having " + size + " symbols");
+        }
+        return symbols[id];
+    }
+
+    /**
+     * @param symbol A string
+     * @return The instance which is stored in the table, so equal strings share one instance
+     */
+    public String intern(String symbol) {
+        return get(id(symbol));
+    }
+
+    /**
+     * @return The number of distinct strings, all ids are smaller than this
+     */
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -8,6 +8,21 @@ import java.util.Comparator;
 import java.util.regex.Pattern;
 
 public class VersionComparator implements Comparator<String> {
+    /**
+     * Returned by {@link Version#pack()} and {@link #key(String)} for versions which
+     * cannot be encoded into a long, these need to be compared via {@link #compare(String, String)}.
+     */
+    public static final long NOT_PACKED = -1;
+
+    private static final int MAX_FIELD = 0xFFFF;
+
+    // parsed versions are kept for the few hundred distinct version-strings, the limit only guards against
+    // unexpected input, e.g. when sorting arbitrary strings
+    private static final BoundedCache<String, Version> CACHE = new BoundedCache<>(10_000);
+
+    // cached for strings which are not a version
+    private static final Version NO_VERSION = new Version();
+
     private final static Pattern SIMPLE_VERSION = Pattern.compile("[0-9.][0-9.]+[0-9.]");
     private final static Pattern BETA_VERSION = Pattern.compile("[0-9.][0-9.]+[0-9.]-(?:beta|BETA|SNAPSHOT|bbn)\\d*(-\\d*)?");
 
@@ -20,6 +35,10 @@ public class VersionComparator implements Comparator<String> {
         public boolean other;
         public int betaSnapshotOther;
 
+        /**
+         * @param version The version-string, needs to have 2 to 4 parts separated by "." or "-"
+         * @return A new instance with the parsed version
+         */
         public static Version parse(String version) {
             Version v = new Version();
 
@@ -29,6 +48,126 @@ public class VersionComparator implements Comparator<String> {
                 return v;
             }
 
+            if(version == null || !parseFast(v, version)) {
+                v = parseSplit(version);
+            }
+
+            return v;
+        }
+
+        /**
+         * Parse the usual forms like "3.15", "3.10.1", "3.15-beta2", "3.12-SNAPSHOT" or "3.12-bbn" in
+         * one pass without allocating.
+         *
+         * @return false if the string needs to be handled by {@link #parseSplit(String)}, e.g. because
+         *      of empty parts or numbers which might not fit into an int
+         */
+        private static boolean parseFast(Version v, String version) {
+            int length = version.length();
+            int part = 0;
+            int start = 0;
+            for(int i = 0; i <= length; i++) {
+                if(i < length) {
+                    char c = version.charAt(i);
+                    if(c != '.' && c != '-') {
+                        continue;
+                    }
+                }
+
+                if(i == start || part == 4 || !parsePart(v, version, part, start, i)) {
+                    return false;
+                }
+
+                part++;
+                start = i + 1;
+            }
+
+            return part > 1;
+        }
+
+        private static boolean parsePart(Version v, String version, int part, int start, int end) {
+            switch (part) {
+                case 0:
+                    v.major = parseNumber(version, start, end);
+                    return v.major != -1;
+                case 1:
+                    v.minor = parseNumber(version, start, end);
+                    return v.minor != -1;
+                case 2:
+                    return handleBetaSnapshotOrRevision(v, version, start, end);
+                default:
+                    if(!v.beta && !v.snapshot && !v.other) {
+                        return handleBetaSnapshotOrRevision(v, version, start, end);
+                    } else if (v.betaSnapshotOther == 0) {
+                        v.betaSnapshotOther = parseNumber(version, start, end);
+                        return v.betaSnapshotOther != -1;
+                    }
+                    return true;
+            }
+        }
+
+        private static boolean handleBetaSnapshotOrRevision(Version v, String version, int start, int end) {
+            if (end - start >= 4 && version.regionMatches(true, start, "beta", 0, 4)) {
+                v.beta = true;
+                if(end - start > 4) {
+                    v.betaSnapshotOther = parseNumber(version, start + 4, end);
+                    return v.betaSnapshotOther != -1;
+                }
+            } else if (end - start >= 8 && version.regionMatches(true, start, "snapshot", 0, 8)) {
+                v.snapshot = true;
+                if(end - start > 8) {
+                    v.betaSnapshotOther = parseNumber(version, start + 8, end);
+                    return v.betaSnapshotOther != -1;
+                }
+            } else {
+                int revision = parseNumber(version, start, end);
+                if (revision != -1) {
+                    v.revision = revision;
+                } else if (isLetters(version, start, end)) {
+                    v.other = true;
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The number or -1 if the range is not made of up to 9 ascii digits
+         */
+        private static int parseNumber(String version, int start, int end) {
+            if(end - start > 9) {
+                return -1;
+            }
+
+            int number = 0;
+            for(int i = start; i < end; i++) {
+                char c = version.charAt(i);
+                if(c < '0' || c > '9') {
+                    return -1;
+                }
+                number = number * 10 + (c - '0');
+            }
+            return number;
+        }
+
+        private static boolean isLetters(String version, int start, int end) {
+            for(int i = start; i < end; i++) {
+                char c = version.charAt(i);
+                if((c < 'a' || c > 'z') && (c < 'A' || c > 'Z')) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * The original parser based on String.split(), handles all the special cases which
+         * {@link #parseFast(Version, String)} does not support.
+         */
+        static Version parseSplit(String version) {
+            Version v = new Version();
+
             String[] parts = version.split("[-.]");
             Preconditions.checkState(parts.length > 1 && parts.length < 5, "Need a version with 2 to 4 parts, but had %s resulting from %s", Arrays.toString(parts), version);
 
@@ -130,6 +269,30 @@ public class VersionComparator implements Comparator<String> {
             return Integer.compare(betaSnapshotOther, o.betaSnapshotOther);
         }
 
+        /**
+         * Encode the version into one long whose natural order is the same as
+         * {@link #compareTo(Version)}, i.e. major, minor and revision with 16 bits each
+         * and a rank for snapshot/beta/release in the lowest 16 bits.
+         *
+         * The comparison of "other" qualifiers (e.g. "3.12-bbn") and of "beta" without number
+         * is not transitive, so these versions are not encoded and {@link #NOT_PACKED} is returned,
+         * the same happens if a number does not fit into the available bits.
+         *
+         * @return The encoded version or {@link #NOT_PACKED}
+         */
+        public long pack() {
+            if (other || (beta && betaSnapshotOther == 0) ||
+                    major > Short.MAX_VALUE || minor > MAX_FIELD || revision > MAX_FIELD ||
+                    betaSnapshotOther >= MAX_FIELD) {
+                return NOT_PACKED;
+            }
+
+            // snapshots and betas are only ordered by their number, releases are higher than both
+            final int rank = beta || snapshot ? betaSnapshotOther : MAX_FIELD;
+
+            return ((long)major << 48) | ((long)minor << 32) | ((long)revision << 16) | rank;
+        }
+
         @Override
         public String toString() {
             return "Version{" +
@@ -144,21 +307,50 @@ public class VersionComparator implements Comparator<String> {
         }
     }
 
-    @SuppressWarnings("ObjectInstantiationInEqualsHashCode")
-    @Override
-    public final int compare(String var1, String var2) {
-        boolean simple1 = var1 != null && SIMPLE_VERSION.matcher(var1).matches();
-        boolean simple2 = var2 != null && SIMPLE_VERSION.matcher(var2).matches();
+    /**
+     * @param version A version-string
+     * @return The encoding as returned by {@link Version#pack()} or {@link #NOT_PACKED} if the
+     *      string is not a version which can be encoded. Two versions with a different encoding
+     *      compare the same as their encodings, equal encodings compare as the strings.
+     */
+    public static long key(String version) {
+        Version v = getVersion(version);
+        return v == null ? NOT_PACKED : v.pack();
+    }
 
-        // check for beta/snapshot-versions
-        boolean beta1 = var1 != null && BETA_VERSION.matcher(var1).matches();
-        boolean beta2 = var2 != null && BETA_VERSION.matcher(var2).matches();
+    /**
+     * Parse the version or return the previously parsed instance for the same string.
+     *
+     * @param version A version-string, can be null
+     * @return The parsed version or null if the string is not a version. The instance is
+     *      shared and must not be modified.
+     */
+    public static Version getVersion(String version) {
+        if(version == null) {
+            return null;
+        }
 
-        if(("other".equals(var1) || simple1 || beta1) && ("other".equals(var2) || simple2 || beta2)) {
-            Version v1 = Version.parse(var1);
-            Version v2 = Version.parse(var2);
+        Version v = CACHE.get(version, str -> isVersion(str) ? Version.parse(str) : NO_VERSION);
+        return v == NO_VERSION ? null : v;
+    }
 
-            int ret = v1.compareTo(v2);
+    private static boolean isVersion(String version) {
+        return "other".equals(version) ||
+                SIMPLE_VERSION.matcher(version).matches() ||
+                // check for beta/snapshot-versions
+                BETA_VERSION.matcher(version).matches();
+    }
+
+    @Override
+    public final int compare(String var1, String var2) {
+        Version v1 = getVersion(var1);
+        Version v2 = getVersion(var2);
+        if(v1 != null && v2 != null) {
+            long key1 = v1.pack();
+            long key2 = v2.pack();
+            int ret = key1 != NOT_PACKED && key2 != NOT_PACKED ?
+                    Long.compare(key1, key2) :
+                    v1.compareTo(v2);
 
             // if the parsed version is equal, we still want to compare the string
             // itself as there can be subtle differences, e.g. "3.9" and "3.9.0" and
@@ -88,4 +88,19 @@ public class ProcessResultsTest {
         assertEquals(1, seenRepositoryVersions.size());
         assertEquals("3.15", seenRepositoryVersions.values().iterator().next());
     }
+
+    @Test
+    public void testVersionChangeJSON() throws IOException {
+        VersionChange change = new VersionChange("2016-11-12", "centic9/poi-mail-merge", "3.15-beta2", "3.15");
+
+        // version changes are persisted as part of the checkpoint
+        String json = JSONWriter.mapper.writeValueAsString(change);
+        VersionChange read = JSONWriter.mapper.readValue(json, VersionChange.class);
+
+        StringBuilder expected = new StringBuilder();
+        change.writeCSV(expected);
+        StringBuilder actual = new StringBuilder();
+        read.writeCSV(actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
 }
@@ -1,11 +1,23 @@
 package org.dstadler.github.search;
 
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.ImmutableSetMultimap;
 import com.google.common.collect.Multimap;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
 import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
 import org.kohsuke.github.GitHub;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -23,6 +35,26 @@ public class BaseSearchTest {
         assertNotNull(connect);
     }
 
+    @Test
+    public void testWorkers() {
+        int concurrency = BaseSearch.CONCURRENCY;
+        int shardConcurrency = BaseSearch.SHARD_CONCURRENCY;
+        try {
+            BaseSearch.CONCURRENCY = 8;
+            BaseSearch.SHARD_CONCURRENCY = 2;
+
+            assertEquals(4, BaseSearch.getSearchWorkers(2));
+            assertEquals(8, BaseSearch.getCoreWorkers(2));
+
+            // the matches are handled in the threads which page through the searches
+            BaseSearch.CONCURRENCY = 1;
+            assertEquals(4, BaseSearch.getCoreWorkers(2));
+        } finally {
+            BaseSearch.CONCURRENCY = concurrency;
+            BaseSearch.SHARD_CONCURRENCY = shardConcurrency;
+        }
+    }
+
     @Test
     public void testGetRepository() {
         assertNull(BaseSearch.getRepository(""));
@@ -49,6 +81,83 @@ public class BaseSearchTest {
                 "https://github.com/centic9/file-leak-detector/blob/master/README.adoc"));
     }
 
+    @Test
+    public void testProcessMatchCached() throws IOException {
+        File dir = Files.createTempDirectory("BaseSearchTest").toFile();
+        File cacheDir = ContentCache.DIR;
+        try {
+            ContentCache.DIR = dir;
+
+            AtomicInteger downloads = new AtomicInteger();
+            AtomicInteger parsed = new AtomicInteger();
+            BaseSearch search = new GradleBuildSearch() {
+                @Override
+                protected String getNonForkRepository(GitHub github, CharSequence htmlUrl) {
+                    return getRepository(htmlUrl);
+                }
+
+                @Override
+                protected void parseVersion(Multimap<String, String> versions, String htmlUrl, String repo, String str) {
+                    parsed.incrementAndGet();
+                    super.parseVersion(versions, htmlUrl, repo, str);
+                }
+            };
+
+            Multimap<String, String> versions = HashMultimap.create();
+            search.processMatch(null, versions, match("centic9/poi-mail-merge", downloads));
+            assertEquals(1, downloads.get());
+            assertEquals(1, parsed.get());
+
+            // same blob in another repository, neither downloaded nor parsed again
+            search.processMatch(null, versions, match("centic9/other", downloads));
+            assertEquals(1, downloads.get());
+            assertEquals(1, parsed.get());
+
+            // the same result as without the cache
+            assertEquals(ImmutableSetMultimap.of(
+                    "3.16", "https://github.com/centic9/poi-mail-merge/blob/master/build.gradle",
+                    "3.16", "https://github.com/centic9/other/blob/master/build.gradle"),
+                    ImmutableSetMultimap.copyOf(versions));
+
+            // also available for the next run
+            ContentCache.getInstance().write();
+            assertEquals(Collections.singletonList("3.16"),
+                    ContentCache.read(dir).getVersions(search.getClass().getSimpleName(), "0123456789abcdef0123456789abcdef01234567"));
+        } finally {
+            ContentCache.DIR = cacheDir;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static GHContent match(String repository, AtomicInteger downloads) {
+        return new GHContent() {
+            @Override
+            public String getHtmlUrl() {
+                return "https://github.com/" + repository + "/blob/master/build.gradle";
+            }
+
+            @Override
+            public String getSha() {
+                return "0123456789abcdef0123456789abcdef01234567";
+            }
+
+            @Override
+            public void refresh() {
+            }
+
+            @Override
+            public String getEncoding() {
+                return "base64";
+            }
+
+            @Override
+            public InputStream read() {
+                downloads.incrementAndGet();
+                return new ByteArrayInputStream("dependencies {\n    compile 'org.apache.poi:poi:3.16'\n}\n".getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
     private static class MyBaseSearch extends BaseSearch {
         MyBaseSearch() {
         }
@@ -0,0 +1,240 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GHException;
+import org.kohsuke.github.GitHub;
+import org.kohsuke.github.HttpException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FetchPipelineTest {
+    @Test
+    public void testSequential() throws IOException {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        MySearch search = new MySearch();
+        search.processResults(null, versions, matches(100));
+
+        assertEquals(expected(100), versions);
+        assertEquals(1, search.maxRunning.get());
+    }
+
+    @Test
+    public void testConcurrent() throws IOException {
+        int concurrency = BaseSearch.CONCURRENCY;
+        try {
+            BaseSearch.CONCURRENCY = 8;
+
+            SetMultimap<String, String> versions = HashMultimap.create();
+            MySearch search = new MySearch();
+            search.processResults(null, versions, matches(200));
+
+            assertEquals(expected(200), versions);
+            assertTrue(search.maxRunning.get() > 1, "Had: " + search.maxRunning.get());
+            assertTrue(search.maxRunning.get() <= 8, "Had: " + search.maxRunning.get());
+        } finally {
+            BaseSearch.CONCURRENCY = concurrency;
+        }
+    }
+
+    @Test
+    public void testSharedAcrossSearches() throws IOException {
+        int concurrency = BaseSearch.CONCURRENCY;
+        try {
+            BaseSearch.CONCURRENCY = 4;
+
+            // both searches count their matches together
+            MySearch search1 = new MySearch();
+            search1.matches = 100;
+            MySearch search2 = new MySearch(search1);
+            search2.matches = 100;
+
+            SetMultimap<String, String> versions = Search.search(null, search1, search2);
+
+            assertEquals(expected(100), versions);
+            assertEquals(200, search1.processed.get() + search2.processed.get());
+            assertTrue(search1.maxRunning.get() > 1, "Had: " + search1.maxRunning.get());
+            assertTrue(search1.maxRunning.get() <= 4, "Had: " + search1.maxRunning.get());
+            assertNull(search1.executor);
+        } finally {
+            BaseSearch.CONCURRENCY = concurrency;
+        }
+    }
+
+    @Test
+    public void testFailure() {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        MySearch search = new MySearch();
+        search.failAt = 57;
+
+        try (FetchPipeline pipeline = new FetchPipeline(search, null, versions, 4)) {
+            IllegalStateException e = assertThrows(IllegalStateException.class, () -> {
+                for (GHContent match : matches(100)) {
+                    pipeline.submit(match);
+                }
+                pipeline.finish();
+            });
+            assertTrue(e.getMessage().contains("repo57"), "Had: " + e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRetryOnHttpException() throws IOException {
+        int concurrency = BaseSearch.CONCURRENCY;
+        try {
+            BaseSearch.CONCURRENCY = 4;
+
+            SetMultimap<String, String> versions = HashMultimap.create();
+            MySearch search = new MySearch();
+            search.httpFailures.set(1);
+            search.processResults(null, versions, matches(50));
+
+            assertEquals(expected(50), versions);
+
+            // only the failing match was processed again
+            assertEquals(51, search.processed.get());
+        } finally {
+            BaseSearch.CONCURRENCY = concurrency;
+        }
+    }
+
+    @Test
+    public void testRetryFailedPage() throws IOException {
+        List<GHContent> matches = matches(100);
+        AtomicInteger pageFailures = new AtomicInteger(2);
+        Iterable<GHContent> list = () -> new Iterator<>() {
+            private int index;
+
+            @Override
+            public boolean hasNext() {
+                // fetching the second page fails twice
+                if (index == 30 && pageFailures.getAndDecrement() > 0) {
+                    throw new GHException("Failed to retrieve page",
+                            new HttpException("Server error", 502, "Bad Gateway", "https://api.github.com/search/code?page=2"));
+                }
+                return index < matches.size();
+            }
+
+            @Override
+            public GHContent next() {
+                return matches.get(index++);
+            }
+        };
+
+        SetMultimap<String, String> versions = HashMultimap.create();
+        MySearch search = new MySearch();
+        search.processResults(null, versions, list);
+
+        // the results before the failing page were not processed again
+        assertEquals(expected(100), versions);
+        assertEquals(100, search.processed.get());
+    }
+
+    @Test
+    public void testInvalidConcurrency() {
+        assertThrows(IllegalArgumentException.class, () -> new FetchPipeline(new MySearch(), null, HashMultimap.create(), 0));
+    }
+
+    private static List<GHContent> matches(int count) {
+        List<GHContent> matches = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            String url = "https://github.com/user/repo" + i + "/blob/master/build.gradle";
+            matches.add(new GHContent() {
+                @Override
+                public String getHtmlUrl() {
+                    return url;
+                }
+            });
+        }
+        return matches;
+    }
+
+    private static SetMultimap<String, String> expected(int count) {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        for (int i = 0; i < count; i++) {
+            versions.put("3." + (i % 10), "https://github.com/user/repo" + i + "/blob/master/build.gradle");
+        }
+        return versions;
+    }
+
+    private static class MySearch extends BaseSearch {
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final AtomicInteger httpFailures = new AtomicInteger();
+        private final AtomicInteger processed = new AtomicInteger();
+        private int failAt = -1;
+
+        // the number of matches returned by search()
+        private int matches;
+
+        private MySearch() {
+            this.running = new AtomicInteger();
+            this.maxRunning = new AtomicInteger();
+            retry = new Retry(3, 1, 1, 20, 1000);
+        }
+
+        // counts the running downloads together with the given search
+        private MySearch(MySearch other) {
+            this.running = other.running;
+            this.maxRunning = other.maxRunning;
+            retry = new Retry(3, 1, 1, 20, 1000);
+        }
+
+        @Override
+        protected void processMatch(GitHub github, Multimap<String, String> versions, GHContent match) throws IOException {
+            processed.incrementAndGet();
+            super.processMatch(github, versions, match);
+        }
+
+        @Override
+        protected String getNonForkRepository(GitHub github, CharSequence htmlUrl) throws IOException {
+            if (httpFailures.getAndDecrement() > 0) {
+                throw new HttpException("Server error", 502, "Bad Gateway", htmlUrl.toString());
+            }
+            return getRepository(htmlUrl);
+        }
+
+        @Override
+        protected String readFileContent(GHContent match, String htmlUrl, String repo) {
+            int now = running.incrementAndGet();
+            maxRunning.accumulateAndGet(now, Math::max);
+            try {
+                // simulate the download
+                Thread.sleep(2);
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+
+            return "compile 'org.apache.poi:poi:3." + (Integer.parseInt(repo.substring("user/repo".length())) % 10) + "'";
+        }
+
+        @Override
+        void search(GitHub github, Multimap<String, String> versions) throws IOException {
+            processResults(github, versions, matches(matches));
+        }
+
+        @Override
+        String getExcludeRegex() {
+            return null;
+        }
+
+        @Override
+        void parseVersion(Multimap<String, String> versions, String htmlUrl, String repo, String str) {
+            if (repo.equals("user/repo" + failAt)) {
+                throw new IllegalArgumentException("Cannot parse " + str);
+            }
+            versions.put(str.substring(str.lastIndexOf(':') + 1, str.length() - 1), htmlUrl);
+        }
+    }
+}
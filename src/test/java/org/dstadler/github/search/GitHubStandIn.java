@@ -0,0 +1,499 @@
+package org.dstadler.github.search;
+
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.dstadler.github.util.JSONWriter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A local stand-in for the parts of the GitHub API which the search uses, so the
+ * search can be tested and measured without network access, see {@link BaseSearch#ENDPOINT}.
+ *
+ * It replays search-results recorded in the stats, i.e. file-URLs with the version
+ * found in them: the code-search returns them page by page and only the first
+ * 1000 results like GitHub does, repositories and the content of the files are
+ * generated from them. Rate-limit headers are sent with each response, latency
+ * and failing requests can be injected.
+ */
+public class GitHubStandIn implements Closeable {
+    // GitHub only returns the first 1000 results of a search
+    private static final int MAX_RESULTS = 1000;
+
+    private static final Pattern URL = Pattern.compile("https://github\\.com/([-a-zA-Z0-9_.]+/[-a-zA-Z0-9_.]+)/blob/([-a-zA-Z0-9_.]+)/([-a-zA-Z0-9_./]+)");
+    private static final Pattern REPOSITORY = Pattern.compile("/repos/([-a-zA-Z0-9_.]+/[-a-zA-Z0-9_.]+)");
+    private static final Pattern CONTENT = Pattern.compile("/repos/([-a-zA-Z0-9_.]+/[-a-zA-Z0-9_.]+)/contents/(.+)");
+    private static final Pattern SIZE = Pattern.compile("size:(\\d+)\\.\\.(\\d+)");
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final String endpoint;
+
+    // ordered by URL, so results are returned in the same order each time
+    private final Map<String, BuildFile> files = new TreeMap<>();
+    private final Map<String, Boolean> repositories = new HashMap<>();
+
+    private int latency;
+    private double errorRate;
+    private final Random random = new Random(42);
+    private final RateLimit core = new RateLimit("core", 1_000_000, 3600);
+    private final RateLimit search = new RateLimit("search", 1_000_000, 60);
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger searchRequests = new AtomicInteger();
+    private final AtomicInteger repositoryRequests = new AtomicInteger();
+    private final AtomicInteger contentRequests = new AtomicInteger();
+    private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger hits = new AtomicInteger();
+
+    /**
+     * @param versions Version as key, URL of the file on GitHub as value, e.g. as stored in the stats,
+     *      only build.gradle and pom.xml files are used
+     * @throws IOException If starting the server fails
+     */
+    public GitHubStandIn(Multimap<String, String> versions) throws IOException {
+        for (Map.Entry<String, String> entry : versions.entries()) {
+            Matcher matcher = URL.matcher(entry.getValue());
+            if (!matcher.matches() || entry.getKey().equals("noVersion")) {
+                continue;
+            }
+
+            String content;
+            String path = matcher.group(3);
+            if (path.endsWith("build.gradle")) {
+                content = "apply plugin: 'java'\n\n" +
+                        "dependencies {\n" +
+                        "    compile 'org.apache.poi:poi:" + entry.getKey() + "'\n" +
+                        "}\n";
+            } else if (path.endsWith("pom.xml")) {
+                content = "<project>\n  <dependencies>\n" +
+                        "    <dependency>\n      <groupId>org.apache.poi</groupId>\n      <artifactId>poi</artifactId>\n" +
+                        "      <version>" + entry.getKey() + "</version>\n    </dependency>\n" +
+                        "  </dependencies>\n</project>\n";
+            } else {
+                continue;
+            }
+
+            files.put(entry.getValue(), new BuildFile(matcher.group(1), matcher.group(2), path, entry.getKey(), content));
+
+            // some repositories are forks
+            repositories.put(matcher.group(1), Math.floorMod(matcher.group(1).hashCode(), 10) == 0);
+        }
+
+        executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setNameFormat("standin-%d").setDaemon(true).build());
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 100);
+        server.setExecutor(executor);
+        server.createContext("/", exchange -> {
+            try {
+                handle(exchange);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+
+        endpoint = "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return The URL to use as {@link BaseSearch#ENDPOINT}
+     */
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    /**
+     * @return The number of files which can be found
+     */
+    public int getFileCount() {
+        return files.size();
+    }
+
+    /**
+     * @return Version as key, URL as value for all files which a search should find,
+     *      i.e. the files which are not in forked repositories
+     */
+    public SetMultimap<String, String> getExpected() {
+        SetMultimap<String, String> expected = HashMultimap.create();
+        for (Map.Entry<String, BuildFile> entry : files.entrySet()) {
+            if (!repositories.get(entry.getValue().repository)) {
+                expected.put(entry.getValue().version, entry.getKey());
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * @param latency The milliseconds to wait before each response
+     */
+    public void setLatency(int latency) {
+        this.latency = latency;
+    }
+
+    /**
+     * @param errorRate The share of requests which fail with "502 Bad Gateway", between 0 and 1
+     */
+    public void setErrorRate(double errorRate) {
+        this.errorRate = errorRate;
+    }
+
+    /**
+     * @param coreLimit The number of requests to repositories and files per hour
+     * @param searchLimit The number of search-requests per minute
+     */
+    public void setRateLimits(int coreLimit, int searchLimit) {
+        core.reset(coreLimit);
+        search.reset(searchLimit);
+    }
+
+    public int getRequests() {
+        return requests.get();
+    }
+
+    public int getSearchRequests() {
+        return searchRequests.get();
+    }
+
+    public int getRepositoryRequests() {
+        return repositoryRequests.get();
+    }
+
+    public int getContentRequests() {
+        return contentRequests.get();
+    }
+
+    public int getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return The number of search-results which were returned
+     */
+    public int getHits() {
+        return hits.get();
+    }
+
+    public void resetCounters() {
+        requests.set(0);
+        searchRequests.set(0);
+        repositoryRequests.set(0);
+        contentRequests.set(0);
+        errors.set(0);
+        hits.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.incrementAndGet();
+
+        String path = exchange.getRequestURI().getRawPath();
+        Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+
+        if (path.equals("/rate_limit")) {
+            ObjectNode resources = JSONWriter.mapper.createObjectNode();
+            resources.set("core", core.toJson());
+            resources.set("search", search.toJson());
+            resources.set("graphql", core.toJson());
+            resources.set("integration_manifest", core.toJson());
+
+            ObjectNode json = JSONWriter.mapper.createObjectNode();
+            json.set("resources", resources);
+            json.set("rate", core.toJson());
+            send(exchange, 200, json, null);
+            return;
+        }
+
+        RateLimit limit = path.startsWith("/search/") ? search : core;
+
+        if (latency > 0) {
+            try {
+                Thread.sleep(latency);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException(e);
+            }
+        }
+
+        if (!limit.acquire()) {
+            send(exchange, 403, message("API rate limit exceeded"), limit);
+            return;
+        }
+
+        final boolean fail;
+        synchronized (random) {
+            fail = errorRate > 0 && random.nextDouble() < errorRate;
+        }
+        if (fail) {
+            errors.incrementAndGet();
+            send(exchange, 502, message("Server Error"), limit);
+            return;
+        }
+
+        Matcher matcher;
+        if (path.equals("/search/code")) {
+            searchRequests.incrementAndGet();
+            searchCode(exchange, query);
+        } else if ((matcher = CONTENT.matcher(path)).matches()) {
+            contentRequests.incrementAndGet();
+            BuildFile file = files.get("https://github.com/" + matcher.group(1) + "/blob/" +
+                    query.getOrDefault("ref", "master") + '/' + matcher.group(2));
+            if (file == null) {
+                send(exchange, 404, message("Not Found"), core);
+            } else {
+                ObjectNode json = file.toJson(endpoint);
+                json.put("content", Base64.getMimeEncoder().encodeToString(file.content.getBytes(StandardCharsets.UTF_8)));
+                json.put("encoding", "base64");
+                send(exchange, 200, json, core);
+            }
+        } else if ((matcher = REPOSITORY.matcher(path)).matches()) {
+            repositoryRequests.incrementAndGet();
+            String repository = matcher.group(1);
+            Boolean fork = repositories.get(repository);
+            if (fork == null) {
+                send(exchange, 404, message("Not Found"), core);
+            } else {
+                send(exchange, 200, repository(repository, fork), core);
+            }
+        } else {
+            send(exchange, 404, message("Not Found"), limit);
+        }
+    }
+
+    private void searchCode(HttpExchange exchange, Map<String, String> query) throws IOException {
+        String q = query.getOrDefault("q", "");
+        int perPage = Math.min(100, Integer.parseInt(query.getOrDefault("per_page", "30")));
+        int page = Integer.parseInt(query.getOrDefault("page", "1"));
+
+        Matcher size = SIZE.matcher(q);
+        int minSize = 0;
+        int maxSize = Integer.MAX_VALUE;
+        if (size.find()) {
+            minSize = Integer.parseInt(size.group(1));
+            maxSize = Integer.parseInt(size.group(2));
+        }
+
+        List<Map.Entry<String, BuildFile>> found = new ArrayList<>();
+        for (Map.Entry<String, BuildFile> entry : files.entrySet()) {
+            BuildFile file = entry.getValue();
+            if (q.contains("filename:" + file.getName()) && file.getSize() >= minSize && file.getSize() <= maxSize) {
+                found.add(entry);
+            }
+        }
+
+        int start = (page - 1) * perPage;
+        if (start >= MAX_RESULTS) {
+            send(exchange, 422, message("Only the first 1000 search results are available"), search);
+            return;
+        }
+
+        ArrayNode items = JSONWriter.mapper.createArrayNode();
+        int end = Math.min(Math.min(found.size(), MAX_RESULTS), start + perPage);
+        for (int i = start; i < end; i++) {
+            Map.Entry<String, BuildFile> entry = found.get(i);
+            ObjectNode item = entry.getValue().toJson(endpoint);
+            item.put("score", 1.0);
+            item.set("repository", repository(entry.getValue().repository, repositories.get(entry.getValue().repository)));
+            items.add(item);
+        }
+        hits.addAndGet(items.size());
+
+        ObjectNode json = JSONWriter.mapper.createObjectNode();
+        json.put("total_count", found.size());
+        json.put("incomplete_results", false);
+        json.set("items", items);
+
+        if (end < Math.min(found.size(), MAX_RESULTS)) {
+            String next = endpoint + "/search/code?q=" + URLEncoder.encode(q, StandardCharsets.UTF_8) +
+                    "&per_page=" + perPage + "&page=" + (page + 1);
+            exchange.getResponseHeaders().add("Link", '<' + next + ">; rel=\"next\"");
+        }
+
+        send(exchange, 200, json, search);
+    }
+
+    private ObjectNode repository(String repository, boolean fork) {
+        ObjectNode owner = JSONWriter.mapper.createObjectNode();
+        owner.put("login", repository.substring(0, repository.indexOf('/')));
+
+        ObjectNode json = JSONWriter.mapper.createObjectNode();
+        json.put("id", Math.abs(repository.hashCode()));
+        json.put("name", repository.substring(repository.indexOf('/') + 1));
+        json.put("full_name", repository);
+        json.set("owner", owner);
+        json.put("fork", fork);
+        json.put("html_url", "https://github.com/" + repository);
+        json.put("url", endpoint + "/repos/" + repository);
+        json.put("stargazers_count", repository.length());
+        json.put("watchers_count", repository.length());
+        json.put("watchers", repository.length());
+        json.put("pushed_at", "2017-05-01T10:00:00Z");
+        return json;
+    }
+
+    private static ObjectNode message(String message) {
+        ObjectNode json = JSONWriter.mapper.createObjectNode();
+        json.put("message", message);
+        return json;
+    }
+
+    private static void send(HttpExchange exchange, int status, ObjectNode json, RateLimit limit) throws IOException {
+        if (limit != null) {
+            limit.addHeaders(exchange);
+        }
+        exchange.getResponseHeaders().add("Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+        exchange.getResponseHeaders().add("Content-Type", "application/json; charset=utf-8");
+
+        byte[] bytes = JSONWriter.mapper.writeValueAsBytes(json);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static Map<String, String> parseQuery(String query) {
+        Map<String, String> params = new HashMap<>();
+        if (query == null) {
+            return params;
+        }
+
+        for (String param : query.split("&")) {
+            int pos = param.indexOf('=');
+            if (pos > 0) {
+                params.put(URLDecoder.decode(param.substring(0, pos), StandardCharsets.UTF_8),
+                        URLDecoder.decode(param.substring(pos + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return params;
+    }
+
+    private static class BuildFile {
+        private final String repository;
+        private final String ref;
+        private final String path;
+        private final String version;
+        private final String content;
+        private final String sha;
+
+        private BuildFile(String repository, String ref, String path, String version, String content) {
+            this.repository = repository;
+            this.ref = ref;
+            this.path = path;
+            this.version = version;
+            this.content = content;
+
+            // the SHA of a git blob
+            byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+            try {
+                this.sha = HexFormat.of().formatHex(MessageDigest.getInstance("SHA-1").digest(
+                        ("blob " + bytes.length + '\0' + content).getBytes(StandardCharsets.UTF_8)));
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private String getName() {
+            return path.substring(path.lastIndexOf('/') + 1);
+        }
+
+        private int getSize() {
+            return content.getBytes(StandardCharsets.UTF_8).length;
+        }
+
+        private ObjectNode toJson(String endpoint) {
+            ObjectNode json = JSONWriter.mapper.createObjectNode();
+            json.put("type", "file");
+            json.put("name", getName());
+            json.put("path", path);
+            json.put("sha", sha);
+            json.put("size", getSize());
+            json.put("url", endpoint + "/repos/" + repository + "/contents/" + path + "?ref=" + ref);
+            json.put("git_url", endpoint + "/repos/" + repository + "/git/blobs/" + sha);
+            json.put("html_url", "https://github.com/" + repository + "/blob/" + ref + '/' + path);
+            return json;
+        }
+    }
+
+    private static class RateLimit {
+        private final String resource;
+        private final int window;
+
+        private int limit;
+        private int remaining;
+        private long reset;
+
+        private RateLimit(String resource, int limit, int window) {
+            this.resource = resource;
+            this.window = window;
+            reset(limit);
+        }
+
+        private synchronized void reset(int limit) {
+            this.limit = limit;
+            this.remaining = limit;
+            this.reset = System.currentTimeMillis() / 1000 + window;
+        }
+
+        private synchronized boolean acquire() {
+            if (System.currentTimeMillis() / 1000 >= reset) {
+                reset(limit);
+            }
+            if (remaining == 0) {
+                return false;
+            }
+            remaining--;
+            return true;
+        }
+
+        private synchronized void addHeaders(HttpExchange exchange) {
+            exchange.getResponseHeaders().add("X-RateLimit-Limit", Integer.toString(limit));
+            exchange.getResponseHeaders().add("X-RateLimit-Remaining", Integer.toString(remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Reset", Long.toString(reset));
+            exchange.getResponseHeaders().add("X-RateLimit-Used", Integer.toString(limit - remaining));
+            exchange.getResponseHeaders().add("X-RateLimit-Resource", resource);
+        }
+
+        private synchronized ObjectNode toJson() {
+            ObjectNode json = JSONWriter.mapper.createObjectNode();
+            json.put("limit", limit);
+            json.put("remaining", remaining);
+            json.put("reset", reset);
+            json.put("used", limit - remaining);
+            return json;
+        }
+    }
+}
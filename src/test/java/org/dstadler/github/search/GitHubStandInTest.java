@@ -0,0 +1,133 @@
+package org.dstadler.github.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.dstadler.github.util.JSONWriter;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GitHubStandInTest {
+    private final HttpClient client = HttpClient.newHttpClient();
+
+    @Test
+    public void testSearchAndContent() throws Exception {
+        try (GitHubStandIn standIn = new GitHubStandIn(versions(1500))) {
+            assertEquals(1510, standIn.getFileCount());
+
+            HttpResponse<String> response = get(standIn, "/search/code?q=" +
+                    URLEncoder.encode("org\\.apache\\.poi filename:build.gradle in:file", StandardCharsets.UTF_8) + "&per_page=100");
+            assertEquals(200, response.statusCode());
+            assertEquals("search", response.headers().firstValue("X-RateLimit-Resource").orElse(null));
+
+            JsonNode json = JSONWriter.mapper.readTree(response.body());
+            assertEquals(1500, json.get("total_count").asInt());
+            assertEquals(100, json.get("items").size());
+            assertTrue(response.headers().firstValue("Link").orElse("").contains("page=2"),
+                    "Had: " + response.headers().map());
+
+            // the content of a found file
+            JsonNode item = json.get("items").get(0);
+            String url = item.get("url").asText();
+            assertTrue(url.startsWith(standIn.getEndpoint()), "Had: " + url);
+            response = client.send(HttpRequest.newBuilder(URI.create(url)).build(), HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode());
+            JsonNode content = JSONWriter.mapper.readTree(response.body());
+            assertEquals(item.get("sha").asText(), content.get("sha").asText());
+            String str = new String(Base64.getMimeDecoder().decode(content.get("content").asText()), StandardCharsets.UTF_8);
+            assertTrue(str.contains("compile 'org.apache.poi:poi:3."), "Had: " + str);
+
+            // the repository of the file
+            response = get(standIn, "/repos/" + item.get("repository").get("full_name").asText());
+            assertEquals(200, response.statusCode());
+            assertEquals("core", response.headers().firstValue("X-RateLimit-Resource").orElse(null));
+            assertTrue(JSONWriter.mapper.readTree(response.body()).has("fork"));
+
+            assertEquals(404, get(standIn, "/repos/unknown/repo").statusCode());
+
+            // only the first 1000 results are available
+            response = get(standIn, "/search/code?q=filename:build.gradle&per_page=100&page=10");
+            assertEquals(200, response.statusCode());
+            assertFalse(response.headers().firstValue("Link").isPresent());
+            assertEquals(422, get(standIn, "/search/code?q=filename:build.gradle&per_page=100&page=11").statusCode());
+
+            // restricted by size
+            response = get(standIn, "/search/code?q=" + URLEncoder.encode("filename:pom.xml size:0..10000", StandardCharsets.UTF_8));
+            assertEquals(10, JSONWriter.mapper.readTree(response.body()).get("total_count").asInt());
+            response = get(standIn, "/search/code?q=" + URLEncoder.encode("filename:pom.xml size:0..10", StandardCharsets.UTF_8));
+            assertEquals(0, JSONWriter.mapper.readTree(response.body()).get("total_count").asInt());
+
+            assertEquals(8, standIn.getRequests());
+            assertEquals(5, standIn.getSearchRequests());
+            assertEquals(1, standIn.getContentRequests());
+            assertEquals(2, standIn.getRepositoryRequests());
+            assertEquals(100 + 100 + 10, standIn.getHits());
+        }
+    }
+
+    @Test
+    public void testErrorsAndRateLimit() throws Exception {
+        try (GitHubStandIn standIn = new GitHubStandIn(versions(10))) {
+            standIn.setErrorRate(1);
+            assertEquals(502, get(standIn, "/repos/user/repo1").statusCode());
+            assertEquals(1, standIn.getErrors());
+
+            standIn.setErrorRate(0);
+            standIn.setRateLimits(2, 1);
+            assertEquals(200, get(standIn, "/repos/user/repo1").statusCode());
+
+            HttpResponse<String> response = get(standIn, "/repos/user/repo1");
+            assertEquals(200, response.statusCode());
+            assertEquals("0", response.headers().firstValue("X-RateLimit-Remaining").orElse(null));
+            assertEquals(403, get(standIn, "/repos/user/repo1").statusCode());
+
+            assertEquals(200, get(standIn, "/search/code?q=filename:pom.xml").statusCode());
+            assertEquals(403, get(standIn, "/search/code?q=filename:pom.xml").statusCode());
+
+            JsonNode json = JSONWriter.mapper.readTree(get(standIn, "/rate_limit").body());
+            assertEquals(0, json.get("resources").get("core").get("remaining").asInt());
+            assertEquals(1, json.get("resources").get("search").get("limit").asInt());
+
+            standIn.resetCounters();
+            assertEquals(0, standIn.getRequests());
+        }
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        try (GitHubStandIn standIn = new GitHubStandIn(versions(10))) {
+            standIn.setLatency(200);
+
+            long start = System.currentTimeMillis();
+            assertEquals(200, get(standIn, "/repos/user/repo1").statusCode());
+            assertTrue(System.currentTimeMillis() - start >= 200);
+        }
+    }
+
+    private HttpResponse<String> get(GitHubStandIn standIn, String path) throws IOException, InterruptedException {
+        return client.send(HttpRequest.newBuilder(URI.create(standIn.getEndpoint() + path)).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    static SetMultimap<String, String> versions(int count) {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        for (int i = 0; i < count; i++) {
+            versions.put("3." + (i % 17), "https://github.com/user/repo" + i + "/blob/master/build.gradle");
+        }
+        for (int i = 0; i < 10; i++) {
+            versions.put("4.1." + i, "https://github.com/other/project" + i + "/blob/0123abcd/module/pom.xml");
+        }
+        versions.put("noVersion", "https://github.com/user/noversion/blob/master/build.gradle");
+        versions.put("3.17", "https://github.com/user/readme/blob/master/README.md");
+        return versions;
+    }
+}
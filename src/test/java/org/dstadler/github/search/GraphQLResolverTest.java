@@ -0,0 +1,296 @@
+package org.dstadler.github.search;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
+import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.RepositoryCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GitHub;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GraphQLResolverTest {
+    private static final String SHA1 = "1111111111111111111111111111111111111111";
+    private static final String SHA2 = "2222222222222222222222222222222222222222";
+    private static final String SHA3 = "3333333333333333333333333333333333333333";
+    private static final String SHA4 = "4444444444444444444444444444444444444444";
+
+    private static final String CONTENT = "dependencies {\n    compile 'org.apache.poi:poi:3.17'\n}\n";
+
+    private HttpServer server;
+    private final List<String> queries = new ArrayList<>();
+    private final List<String> authorizations = new ArrayList<>();
+    private int status = 200;
+    private String response;
+
+    private File dir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("GraphQLResolverTest").toFile();
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/graphql", exchange -> {
+            JsonNode request = JSONWriter.mapper.readTree(exchange.getRequestBody());
+            synchronized (queries) {
+                queries.add(request.get("query").asText());
+                authorizations.add(exchange.getRequestHeaders().getFirst("Authorization"));
+            }
+
+            byte[] bytes = response.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.stop(0);
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testResolve() throws IOException {
+        RepositoryCache repositories = RepositoryCache.read(new File(dir, "repositories.json"));
+        ContentCache contents = ContentCache.read(new File(dir, "content"));
+
+        response = "{\"data\": {" +
+                "\"h0\": {\"isFork\": false, \"stargazerCount\": 12, \"pushedAt\": \"2017-05-01T10:00:00Z\", " +
+                        "\"object\": {\"text\": " + JSONWriter.mapper.writeValueAsString(CONTENT) + ", \"isBinary\": false, \"isTruncated\": false}}, " +
+                "\"h1\": null, " +
+                "\"h2\": {\"isFork\": true, \"stargazerCount\": 0, \"pushedAt\": null, " +
+                        "\"object\": {\"text\": null, \"isBinary\": true, \"isTruncated\": false}}}, " +
+                "\"errors\": [{\"type\": \"NOT_FOUND\", \"path\": [\"h1\"], \"message\": \"Could not resolve to a Repository\"}]}";
+
+        GraphQLResolver resolver = resolver(repositories, contents);
+        assertEquals(3, resolver.resolve(Arrays.asList(
+                match("user/repo", SHA1, null),
+                match("user/missing", SHA2, null),
+                match("user/fork", SHA3, null))));
+
+        assertEquals(1, queries.size());
+        String query = queries.get(0);
+        assertTrue(query.contains("h0: repository(owner: \"user\", name: \"repo\")"), "Had: " + query);
+        assertTrue(query.contains("object(oid: \"" + SHA1 + "\")"), "Had: " + query);
+        assertTrue(query.contains("h2: repository(owner: \"user\", name: \"fork\")"), "Had: " + query);
+        assertEquals("bearer token", authorizations.get(0));
+
+        assertTrue(repositories.contains("user/repo", RepositoryCache.Field.FORK));
+        RepositoryCache.Entry entry = repositories.get("user/repo", RepositoryCache.Field.STARS, repo -> {
+            throw new IllegalStateException("Should be cached");
+        });
+        assertFalse(entry.fork);
+        assertEquals(12, entry.stars);
+        assertEquals(1493632800000L, entry.pushedAt);
+        assertEquals(CONTENT, contents.getContent(SHA1));
+
+        assertTrue(repositories.contains("user/fork", RepositoryCache.Field.FORK));
+        assertTrue(repositories.get("user/fork", RepositoryCache.Field.FORK, repo -> {
+            throw new IllegalStateException("Should be cached");
+        }).fork);
+
+        // not answered, so left for the REST API
+        assertFalse(repositories.contains("user/missing", RepositoryCache.Field.FORK));
+        assertNull(contents.getContent(SHA2));
+        assertNull(contents.getContent(SHA3));
+
+        // everything which is cached is not queried again
+        response = "{\"data\": {\"h1\": null}}";
+        assertEquals(0, resolver.resolve(Arrays.asList(
+                match("user/repo", SHA1, null),
+                match("user/missing", SHA2, null))));
+        assertEquals(2, queries.size());
+        assertFalse(queries.get(1).contains("h0:"), "Had: " + queries.get(1));
+        assertTrue(queries.get(1).contains("h1:"), "Had: " + queries.get(1));
+
+        assertEquals(0, resolver.resolve(Arrays.asList(
+                match("user/repo", SHA1, null),
+                match("user/fork", null, null))));
+        assertEquals(2, queries.size());
+    }
+
+    @Test
+    public void testResolveFails() throws IOException {
+        GraphQLResolver resolver = resolver(RepositoryCache.read(new File(dir, "repositories.json")),
+                ContentCache.read(new File(dir, "content")));
+
+        status = 502;
+        response = "Bad Gateway";
+        IOException e = assertThrows(IOException.class, () -> resolver.resolve(List.of(match("user/repo", SHA1, null))));
+        assertTrue(e.getMessage().contains("502"), "Had: " + e.getMessage());
+
+        status = 200;
+        response = "{\"errors\": [{\"type\": \"RATE_LIMITED\", \"message\": \"API rate limit exceeded\"}]}";
+        e = assertThrows(IOException.class, () -> resolver.resolve(List.of(match("user/repo", SHA1, null))));
+        assertTrue(e.getMessage().contains("RATE_LIMITED"), "Had: " + e.getMessage());
+    }
+
+    @Test
+    public void testProcessResults() throws IOException {
+        File cacheDir = ContentCache.DIR;
+        int batch = BaseSearch.GRAPHQL_BATCH;
+        try {
+            ContentCache.DIR = new File(dir, "content");
+            BaseSearch.GRAPHQL_BATCH = 2;
+
+            // unique names as the repository-cache is shared
+            String prefix = "graphql-" + System.nanoTime() + "/repo";
+            StringBuilder data = new StringBuilder("{\"data\": {");
+            for (int i = 0; i < 2; i++) {
+                data.append(i > 0 ? ", " : "").append("\"h").append(i).append("\": {\"isFork\": false, \"stargazerCount\": 1, \"pushedAt\": null, ").
+                        append("\"object\": {\"text\": ").append(JSONWriter.mapper.writeValueAsString(CONTENT)).
+                        append(", \"isBinary\": false, \"isTruncated\": false}}");
+            }
+            response = data.append("}}").toString();
+
+            BaseSearch search = new GradleBuildSearch() {
+                @Override
+                GraphQLResolver createResolver() throws IOException {
+                    return resolver(RepositoryCache.getInstance(), ContentCache.getInstance());
+                }
+            };
+
+            AtomicInteger downloads = new AtomicInteger();
+            SetMultimap<String, String> versions = HashMultimap.create();
+            search.processResults(null, versions, Arrays.asList(
+                    match(prefix + 1, SHA1, downloads),
+                    match(prefix + 2, SHA2, downloads),
+                    match(prefix + 3, SHA3, downloads),
+                    match(prefix + 4, SHA4, downloads)));
+
+            // two batches, everything was found in the caches afterwards
+            assertEquals(2, queries.size());
+            assertEquals(4, versions.size(), "Had: " + versions);
+            assertEquals(4, versions.get("3.17").size(), "Had: " + versions);
+            assertEquals(0, downloads.get());
+        } finally {
+            ContentCache.DIR = cacheDir;
+            BaseSearch.GRAPHQL_BATCH = batch;
+        }
+    }
+
+    @Test
+    public void testIncrementalRestCalls() throws IOException {
+        // with the time of the last push fetched in the batch, unchanged repositories need no REST call
+        assertEquals(0, processIncremental(true));
+
+        // only checking the fork-flag in the batch leaves the time of the last push to the REST API
+        assertEquals(4, processIncremental(false));
+    }
+
+    private int processIncremental(boolean resolvePushedAt) throws IOException {
+        File repositoryCache = RepositoryCache.FILE;
+        File cacheDir = ContentCache.DIR;
+        int batch = BaseSearch.GRAPHQL_BATCH;
+        try {
+            RepositoryCache.FILE = new File(dir, "repositories-" + resolvePushedAt + ".json");
+            ContentCache.DIR = new File(dir, "content-" + resolvePushedAt);
+            BaseSearch.GRAPHQL_BATCH = 2;
+
+            // fetched yesterday, so the fork-flag is still valid, but the time of the last push is not
+            long fetched = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(1);
+            StringBuilder cache = new StringBuilder("{\"formatVersion\": 1, \"repositories\": {");
+            SetMultimap<String, String> previous = HashMultimap.create();
+            for (int i = 1; i <= 4; i++) {
+                cache.append(i > 1 ? ", " : "").append("\"user/incremental").append(i).append("\": {\"status\": \"OK\", ").
+                        append("\"pushedAt\": 1493632800000, \"fetched\": ").append(fetched).append('}');
+                previous.put("3.16", "https://github.com/user/incremental" + i + "/blob/master/build.gradle");
+            }
+            FileUtils.writeStringToFile(RepositoryCache.FILE, cache.append("}}").toString(), StandardCharsets.UTF_8);
+
+            // not pushed to since 2017-05-01
+            response = "{\"data\": {" +
+                    "\"h0\": {\"isFork\": false, \"stargazerCount\": 1, \"pushedAt\": \"2017-05-01T10:00:00Z\"}, " +
+                    "\"h1\": {\"isFork\": false, \"stargazerCount\": 1, \"pushedAt\": \"2017-05-01T10:00:00Z\"}}}";
+
+            AtomicInteger restCalls = new AtomicInteger();
+            BaseSearch search = new GradleBuildSearch() {
+                @Override
+                GraphQLResolver createResolver() throws IOException {
+                    return new GraphQLResolver(URI.create("http://localhost:" + server.getAddress().getPort() + "/graphql"), "token",
+                            RepositoryCache.getInstance(), ContentCache.getInstance(),
+                            resolvePushedAt ? getRepositoryField() : RepositoryCache.Field.FORK);
+                }
+
+                @Override
+                protected RepositoryCache.Entry getRepositoryEntry(GitHub github, String repo, RepositoryCache.Field field) throws IOException {
+                    return RepositoryCache.getInstance().get(repo, field, name -> {
+                        restCalls.incrementAndGet();
+                        RepositoryCache.Entry entry = new RepositoryCache.Entry();
+                        entry.pushedAt = 1493632800000L;
+                        return entry;
+                    });
+                }
+            };
+            search.previous = new PreviousResults("2017-05-15", previous);
+
+            AtomicInteger downloads = new AtomicInteger();
+            SetMultimap<String, String> versions = HashMultimap.create();
+            search.processResults(null, versions, Arrays.asList(
+                    match("user/incremental1", null, downloads),
+                    match("user/incremental2", null, downloads),
+                    match("user/incremental3", null, downloads),
+                    match("user/incremental4", null, downloads)));
+
+            // the versions are taken from the previous stats without reading the files
+            assertEquals(previous, versions);
+            assertEquals(0, downloads.get());
+
+            return restCalls.get();
+        } finally {
+            RepositoryCache.FILE = repositoryCache;
+            ContentCache.DIR = cacheDir;
+            BaseSearch.GRAPHQL_BATCH = batch;
+        }
+    }
+
+    private GraphQLResolver resolver(RepositoryCache repositories, ContentCache contents) {
+        return new GraphQLResolver(URI.create("http://localhost:" + server.getAddress().getPort() + "/graphql"), "token",
+                repositories, contents);
+    }
+
+    private static GHContent match(String repository, String sha, AtomicInteger downloads) {
+        return new GHContent() {
+            @Override
+            public String getHtmlUrl() {
+                return "https://github.com/" + repository + "/blob/master/build.gradle";
+            }
+
+            @Override
+            public String getSha() {
+                return sha;
+            }
+
+            @Override
+            public InputStream read() {
+                downloads.incrementAndGet();
+                return new ByteArrayInputStream(CONTENT.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
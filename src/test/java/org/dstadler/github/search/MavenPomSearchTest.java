@@ -2,7 +2,20 @@ package org.dstadler.github.search;
 
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
 import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GitHub;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import static org.dstadler.github.search.MavenPomSearch.PATTERN_NO_VERSION;
 import static org.junit.jupiter.api.Assertions.*;
@@ -147,4 +160,88 @@ public class MavenPomSearchTest {
         assertEquals("noVersion", versions.keySet().iterator().next());
         assertEquals("url", versions.values().iterator().next());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSameFileWithDifferentParents() throws IOException {
+        // the same child pom at two commits, the parent defines a different version at each commit
+        String child = """
+                <parent>
+                    <artifactId>parent</artifactId>
+                </parent>
+                <dependency>
+                    <groupId>org.apache.poi</groupId>
+                    <artifactId>poi</artifactId>
+                    <version>${poi.version}</version>
+                </dependency>""";
+        String sha = "1111111111111111111111111111111111111111";
+        String commit1 = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaaa";
+        String commit2 = "bbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbbb";
+
+        HttpServer server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", exchange -> {
+            String path = exchange.getRequestURI().getPath();
+            byte[] bytes = ("<poi.version>" + (path.contains(commit1) ? "3.16" : "3.17") + "</poi.version>").
+                    getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        });
+        server.start();
+
+        File dir = Files.createTempDirectory("MavenPomSearchTest").toFile();
+        File contentCache = ContentCache.DIR;
+        String rawUrl = MavenPomSearch.RAW_URL;
+        try {
+            ContentCache.DIR = dir;
+            MavenPomSearch.RAW_URL = "http://localhost:" + server.getAddress().getPort() + "/";
+            ContentCache.getInstance().putContent(sha, child);
+
+            MavenPomSearch search = new MavenPomSearch() {
+                @Override
+                protected String getNonForkRepository(GitHub github, CharSequence htmlUrl) {
+                    return getRepository(htmlUrl);
+                }
+            };
+
+            String url1 = "https://github.com/user/repo/blob/" + commit1 + "/module/pom.xml";
+            String url2 = "https://github.com/other/repo/blob/" + commit2 + "/module/pom.xml";
+            SetMultimap<String, String> found = HashMultimap.create();
+            search.processMatch(null, found, match(url1, sha));
+            search.processMatch(null, found, match(url2, sha));
+
+            assertEquals("[" + url1 + "]", found.get("3.16").toString(), "Had: " + found);
+            assertEquals("[" + url2 + "]", found.get("3.17").toString(), "Had: " + found);
+            assertNull(ContentCache.getInstance().getVersions("MavenPomSearch", sha),
+                    "Versions from a parent pom are not cached by the SHA of the child");
+        } finally {
+            server.stop(0);
+            ContentCache.DIR = contentCache;
+            MavenPomSearch.RAW_URL = rawUrl;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testIsSelfContained() {
+        MavenPomSearch search = new MavenPomSearch();
+        assertTrue(search.isSelfContained("<groupId>org.apache.poi</groupId>\n<artifactId>poi</artifactId>\n<version>3.17</version>"));
+        assertTrue(search.isSelfContained("<poi.version>3.17</poi.version>\n" +
+                "<groupId>org.apache.poi</groupId>\n<artifactId>poi</artifactId>\n<version>${poi.version}</version>"));
+        assertFalse(search.isSelfContained("<groupId>org.apache.poi</groupId>\n<artifactId>poi</artifactId>\n<version>${poi.version}</version>"));
+    }
+
+    private static GHContent match(String url, String sha) {
+        return new GHContent() {
+            @Override
+            public String getHtmlUrl() {
+                return url;
+            }
+
+            @Override
+            public String getSha() {
+                return sha;
+            }
+        };
+    }
+}
@@ -0,0 +1,156 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
+import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.RepositoryCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GitHub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PreviousResultsTest {
+    private static final String URL1 = "https://github.com/user/repo1/blob/master/build.gradle";
+    private static final String URL2 = "https://github.com/user/repo2/blob/master/build.gradle";
+
+    private static final long BEFORE = 1493632800000L;  // 2017-05-01
+    private static final long AFTER = 1496311200000L;   // 2017-06-01
+
+    private File dir;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("PreviousResultsTest").toFile();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testGetVersions() {
+        PreviousResults previous = new PreviousResults("2017-05-15", versions());
+        assertEquals("2017-05-15", previous.getDate());
+
+        assertEquals(Collections.singletonList("3.16"), previous.getVersions(URL1, BEFORE));
+        assertEquals(1, previous.getReused());
+
+        // pushed to since then or not known
+        assertNull(previous.getVersions(URL1, AFTER));
+        assertNull(previous.getVersions(URL1, 0));
+
+        // not part of the stats
+        assertNull(previous.getVersions("https://github.com/user/other/blob/master/pom.xml", BEFORE));
+        assertEquals(1, previous.getReused());
+    }
+
+    @Test
+    public void testRead() throws IOException {
+        assertNull(PreviousResults.read(dir));
+
+        File statsDir = JSONWriter.STATS_DIR;
+        try {
+            JSONWriter.STATS_DIR = dir;
+            JSONWriter.write("2017-05-10", HashMultimap.create());
+            JSONWriter.write("2017-05-15", versions());
+        } finally {
+            JSONWriter.STATS_DIR = statsDir;
+        }
+
+        PreviousResults previous = PreviousResults.read(dir);
+        assertNotNull(previous);
+        assertEquals("2017-05-15", previous.getDate());
+        assertEquals(Collections.singletonList("3.17"), previous.getVersions(URL2, BEFORE));
+    }
+
+    @Test
+    public void testProcessMatch() throws IOException {
+        File repositoryCache = RepositoryCache.FILE;
+        File contentCache = ContentCache.DIR;
+        try {
+            RepositoryCache.FILE = new File(dir, "repositoryCache.json");
+            ContentCache.DIR = new File(dir, "contentCache");
+
+            RepositoryCache.Entry unchanged = new RepositoryCache.Entry();
+            unchanged.pushedAt = BEFORE;
+            RepositoryCache.getInstance().put("user/repo1", unchanged);
+
+            RepositoryCache.Entry changed = new RepositoryCache.Entry();
+            changed.pushedAt = AFTER;
+            RepositoryCache.getInstance().put("user/repo2", changed);
+
+            MySearch search = new MySearch();
+            search.previous = new PreviousResults("2017-05-15", versions());
+
+            SetMultimap<String, String> versions = HashMultimap.create();
+            search.processMatch(null, versions, match(URL1));
+            search.processMatch(null, versions, match(URL2));
+
+            // only the file of the changed repository is read
+            assertEquals(1, search.reads.get());
+            assertEquals("{3.16=[" + URL1 + "], 3.17.1=[" + URL2 + "]}", new TreeMap<>(versions.asMap()).toString());
+        } finally {
+            RepositoryCache.FILE = repositoryCache;
+            ContentCache.DIR = contentCache;
+        }
+    }
+
+    private static SetMultimap<String, String> versions() {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        versions.put("3.16", URL1);
+        versions.put("3.17", URL2);
+        return versions;
+    }
+
+    private static GHContent match(String url) {
+        return new GHContent() {
+            @Override
+            public String getHtmlUrl() {
+                return url;
+            }
+        };
+    }
+
+    private static class MySearch extends BaseSearch {
+        private final AtomicInteger reads = new AtomicInteger();
+
+        @Override
+        protected String getNonForkRepository(GitHub github, CharSequence htmlUrl) {
+            return getRepository(htmlUrl);
+        }
+
+        @Override
+        protected String readFileContent(GHContent match, String htmlUrl, String repo) {
+            reads.incrementAndGet();
+            return "compile 'org.apache.poi:poi:3.17.1'";
+        }
+
+        @Override
+        void search(GitHub github, Multimap<String, String> versions) {
+        }
+
+        @Override
+        String getExcludeRegex() {
+            return null;
+        }
+
+        @Override
+        void parseVersion(Multimap<String, String> versions, String htmlUrl, String repo, String str) {
+            versions.put(str.substring(str.lastIndexOf(':') + 1, str.length() - 1), htmlUrl);
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GitHub;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QueryPlannerTest {
+    @Test
+    public void testPlanSmall() throws IOException {
+        MyQuery query = new MyQuery(sizes(500));
+        List<QueryPlanner.Shard> shards = QueryPlanner.plan(query, 1000);
+
+        assertEquals(1, shards.size());
+        assertNull(shards.get(0).size);
+        assertEquals(500, shards.get(0).totalCount);
+        assertEquals(1, query.counts.get());
+    }
+
+    @Test
+    public void testPlanSplits() throws IOException {
+        MyQuery query = new MyQuery(sizes(10_000));
+        List<QueryPlanner.Shard> shards = QueryPlanner.plan(query, 1000);
+
+        assertTrue(shards.size() >= 10, "Had: " + shards);
+
+        int total = 0;
+        int previousMax = -1;
+        for (QueryPlanner.Shard shard : shards) {
+            assertTrue(shard.totalCount <= 1000, "Had: " + shard);
+            assertTrue(shard.totalCount > 0, "Had: " + shard);
+
+            // ranges are disjoint and ascending
+            int min = Integer.parseInt(shard.size.substring(0, shard.size.indexOf("..")));
+            int max = Integer.parseInt(shard.size.substring(shard.size.indexOf("..") + 2));
+            assertTrue(min > previousMax, "Had: " + shards);
+            assertTrue(max >= min, "Had: " + shard);
+            previousMax = max;
+
+            total += shard.totalCount;
+        }
+        assertEquals(10_000, total);
+    }
+
+    @Test
+    public void testPlanCannotSplit() throws IOException {
+        List<Integer> sizes = sizes(100);
+        for (int i = 0; i < 50; i++) {
+            sizes.add(1234);
+        }
+
+        List<QueryPlanner.Shard> shards = QueryPlanner.plan(new MyQuery(sizes), 20);
+
+        int total = 0;
+        boolean found = false;
+        for (QueryPlanner.Shard shard : shards) {
+            if ("1234..1234".equals(shard.size)) {
+                found = true;
+                assertTrue(shard.totalCount >= 50, "Had: " + shard);
+            } else {
+                assertTrue(shard.totalCount <= 20, "Had: " + shard);
+            }
+            total += shard.totalCount;
+        }
+        assertTrue(found, "Had: " + shards);
+        assertEquals(150, total);
+    }
+
+    @Test
+    public void testPlanInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> QueryPlanner.plan(new MyQuery(sizes(10)), 0));
+    }
+
+    @Test
+    public void testProcessQuery() throws IOException {
+        int shardConcurrency = BaseSearch.SHARD_CONCURRENCY;
+        try {
+            BaseSearch.SHARD_CONCURRENCY = 4;
+
+            MyQuery query = new MyQuery(sizes(3000));
+            SetMultimap<String, String> versions = HashMultimap.create();
+            new MySearch(query).processQuery(null, versions, query);
+
+            // only 1000 per search are read, but all results are found via the size-ranges
+            assertEquals(3000, versions.size());
+            assertEquals(3, versions.keySet().size());
+        } finally {
+            BaseSearch.SHARD_CONCURRENCY = shardConcurrency;
+        }
+    }
+
+    private static List<Integer> sizes(int count) {
+        Random random = new Random(42);
+        List<Integer> sizes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            // most build-files are small
+            sizes.add((int) Math.abs(random.nextGaussian() * 3000));
+        }
+        return sizes;
+    }
+
+    private static class MyQuery implements QueryPlanner.Query {
+        private final List<Integer> sizes;
+        private final AtomicInteger counts = new AtomicInteger();
+
+        private MyQuery(List<Integer> sizes) {
+            this.sizes = sizes;
+        }
+
+        @Override
+        public int getTotalCount(String size) {
+            counts.incrementAndGet();
+            return matches(size).size();
+        }
+
+        @Override
+        public Iterable<GHContent> list(String size) {
+            List<GHContent> list = new ArrayList<>();
+            for (int index : matches(size)) {
+                // like GitHub only the first results can be read
+                if (list.size() == QueryPlanner.MAX_RESULTS) {
+                    break;
+                }
+
+                list.add(new GHContent() {
+                    @Override
+                    public String getHtmlUrl() {
+                        return "https://github.com/user/repo" + index + "/blob/master/build.gradle";
+                    }
+                });
+            }
+            return list;
+        }
+
+        private List<Integer> matches(String size) {
+            int min = 0;
+            int max = Integer.MAX_VALUE;
+            if (size != null) {
+                min = Integer.parseInt(size.substring(0, size.indexOf("..")));
+                max = Integer.parseInt(size.substring(size.indexOf("..") + 2));
+            }
+
+            List<Integer> matches = new ArrayList<>();
+            for (int i = 0; i < sizes.size(); i++) {
+                if (sizes.get(i) >= min && sizes.get(i) <= max) {
+                    matches.add(i);
+                }
+            }
+            return matches;
+        }
+    }
+
+    private static class MySearch extends BaseSearch {
+        private final MyQuery query;
+
+        private MySearch(MyQuery query) {
+            this.query = query;
+        }
+
+        @Override
+        void search(GitHub github, Multimap<String, String> versions) throws IOException {
+            processQuery(github, versions, query);
+        }
+
+        @Override
+        protected void processMatch(GitHub github, Multimap<String, String> versions, GHContent match) {
+            String url = match.getHtmlUrl();
+            int index = Integer.parseInt(url.substring(url.indexOf("repo") + 4, url.indexOf("/blob")));
+            versions.put("1." + (index % 3), url);
+        }
+
+        @Override
+        String getExcludeRegex() {
+            return null;
+        }
+
+        @Override
+        void parseVersion(Multimap<String, String> versions, String htmlUrl, String repo, String str) {
+        }
+    }
+}
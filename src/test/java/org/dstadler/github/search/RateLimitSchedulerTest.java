@@ -0,0 +1,57 @@
+package org.dstadler.github.search;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RateLimitSchedulerTest {
+    private static final long NOW = 1_000_000;
+
+    @Test
+    public void testEnoughRemaining() {
+        RateLimitScheduler scheduler = new RateLimitScheduler(1);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(0, scheduler.reserve(5000, 4000 - i, NOW + 3_600_000, NOW));
+        }
+    }
+
+    @Test
+    public void testPacing() {
+        RateLimitScheduler scheduler = new RateLimitScheduler(1);
+
+        // 10 requests left for 10 seconds, one is kept for requests in flight
+        long reset = NOW + 10_000;
+        assertEquals(0, scheduler.reserve(30, 11, reset, NOW));
+        assertEquals(1000, scheduler.reserve(30, 11, reset, NOW));
+        assertEquals(1000 + 9000 / 10, scheduler.reserve(30, 11, reset, NOW));
+
+        // time passed and fewer requests are remaining
+        assertEquals(0, scheduler.reserve(30, 9, reset, NOW + 3000));
+        long delay = scheduler.reserve(30, 8, reset, NOW + 3000);
+        assertEquals(7000 / 8, delay, "Had: " + delay);
+    }
+
+    @Test
+    public void testExhausted() {
+        RateLimitScheduler scheduler = new RateLimitScheduler(2);
+
+        long reset = NOW + 20_000;
+        assertEquals(21_000, scheduler.reserve(30, 2, reset, NOW));
+        assertEquals(21_000, scheduler.reserve(30, 0, reset, NOW));
+
+        // the reset is over, but no new numbers were reported yet
+        assertEquals(0, scheduler.reserve(30, 0, reset, reset + 5000));
+    }
+
+    @Test
+    public void testResetPassed() {
+        RateLimitScheduler scheduler = new RateLimitScheduler(0);
+        assertEquals(0, scheduler.reserve(30, 5, NOW - 1000, NOW));
+        assertEquals(0, scheduler.reserve(30, 5, NOW - 1000, NOW));
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new RateLimitScheduler(-1));
+    }
+}
@@ -0,0 +1,125 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Multimaps;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ResultStreamTest {
+    private File file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = File.createTempFile("ResultStreamTest", ".results");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.forceDelete(file);
+    }
+
+    @Test
+    public void testWriteAndRead() throws IOException {
+        try (ResultStream stream = new ResultStream(file)) {
+            SetMultimap<String, String> sink = stream.asMultimap("MavenPomSearch");
+            assertTrue(sink.put("3.17", "https://github.com/user/repo2/blob/master/build.gradle"));
+            assertTrue(sink.putAll("3.9", Arrays.asList("https://github.com/user/repo1/blob/master/pom.xml",
+                    "https://github.com/user/repo\"3/blob/master/pom.xml")));
+
+            Multimap<String, String> found = HashMultimap.create();
+            found.put("3.17", "https://github.com/user/repo1/blob/master/pom.xml");
+            // duplicates are removed when reading
+            found.put("3.17", "https://github.com/user/repo2/blob/master/build.gradle");
+            assertTrue(sink.putAll(found));
+
+            // nothing is kept
+            assertTrue(sink.isEmpty());
+            assertEquals(0, sink.size());
+            assertFalse(sink.containsKey("3.17"));
+            assertEquals(5, stream.getCount());
+        }
+
+        List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+        assertEquals(5, lines.size(), "Had: " + lines);
+        assertEquals("{\"search\":\"MavenPomSearch\",\"version\":\"3.17\",\"url\":\"https://github.com/user/repo2/blob/master/build.gradle\"}", lines.get(0));
+
+        SetMultimap<String, String> versions = ResultStream.read(file, Collections.emptyList());
+        assertEquals("{3.17=[https://github.com/user/repo1/blob/master/pom.xml, https://github.com/user/repo2/blob/master/build.gradle], " +
+                "3.9=[https://github.com/user/repo\"3/blob/master/pom.xml, https://github.com/user/repo1/blob/master/pom.xml]}",
+                versions.toString());
+    }
+
+    @Test
+    public void testReadOrder() throws IOException {
+        try (ResultStream stream = new ResultStream(file)) {
+            stream.asMultimap("OtherSearch").put("1.0", "https://github.com/g/h/blob/master/pom.xml");
+            stream.asMultimap("MavenPomSearch").put("2.0", "https://github.com/c/d/blob/master/pom.xml");
+            stream.asMultimap("GradleBuildSearch").put("2.0", "https://github.com/e/f/blob/master/build.gradle");
+            stream.asMultimap("MavenPomSearch").put("1.0", "https://github.com/a/b/blob/master/pom.xml");
+            stream.asMultimap("GradleBuildSearch").put("1.0", "https://github.com/a/b/blob/master/pom.xml");
+        }
+
+        // in the order of the given searches, unknown ones last, sorted by version and URL within each one
+        assertEquals("[1.0=https://github.com/a/b/blob/master/pom.xml, 2.0=https://github.com/e/f/blob/master/build.gradle, " +
+                        "2.0=https://github.com/c/d/blob/master/pom.xml, 1.0=https://github.com/g/h/blob/master/pom.xml]",
+                ResultStream.read(file, Arrays.asList("GradleBuildSearch", "MavenPomSearch")).entries().toString());
+    }
+
+    @Test
+    public void testTruncates() throws IOException {
+        FileUtils.writeStringToFile(file, "{\"version\":\"1.0\",\"url\":\"https://github.com/a/b/blob/master/pom.xml\"}\n", StandardCharsets.UTF_8);
+
+        try (ResultStream stream = new ResultStream(file)) {
+            stream.asMultimap("MavenPomSearch").put("2.0", "https://github.com/c/d/blob/master/pom.xml");
+        }
+
+        assertEquals("{2.0=[https://github.com/c/d/blob/master/pom.xml]}", ResultStream.read(file, Collections.emptyList()).toString());
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try (ResultStream stream = new ResultStream(file)) {
+            // used via a synchronized view like in FetchPipeline
+            Multimap<String, String> sink = Multimaps.synchronizedMultimap(stream.asMultimap("MavenPomSearch"));
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 1000; i++) {
+                        sink.put("3." + (i % 17), "https://github.com/user" + thread + "/repo" + i + "/blob/master/build.gradle");
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(8000, ResultStream.read(file, Collections.emptyList()).size());
+    }
+
+    @Test
+    public void testReadEmpty() throws IOException {
+        assertTrue(ResultStream.read(file, Collections.emptyList()).isEmpty());
+    }
+}
@@ -0,0 +1,121 @@
+package org.dstadler.github.search;
+
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHException;
+import org.kohsuke.github.HttpException;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RetryTest {
+    @Test
+    public void testSuccess() throws IOException {
+        Retry retry = new Retry(3, 1, 1, 10, 1000);
+        assertEquals("ok", retry.call("test", () -> "ok"));
+    }
+
+    @Test
+    public void testRetry() throws IOException {
+        Retry retry = new Retry(3, 1, 1, 10, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        assertEquals("ok", retry.call("test", () -> {
+            if (calls.incrementAndGet() < 3) {
+                throw httpException();
+            }
+            return "ok";
+        }));
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testRetryWrapped() throws IOException {
+        Retry retry = new Retry(3, 1, 1, 10, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        assertTrue(retry.call("test", () -> {
+            if (calls.incrementAndGet() < 2) {
+                throw new GHException("Failed to retrieve page", httpException());
+            }
+            return true;
+        }));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testGiveUp() {
+        Retry retry = new Retry(3, 1, 1, 10, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        HttpException e = assertThrows(HttpException.class, () -> retry.call("test", () -> {
+            calls.incrementAndGet();
+            throw httpException();
+        }));
+        assertEquals("Server error", e.getMessage());
+        assertEquals(3, calls.get());
+    }
+
+    @Test
+    public void testNoRetry() {
+        Retry retry = new Retry(3, 1, 1, 10, 1000);
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(FileNotFoundException.class, () -> retry.call("test", () -> {
+            calls.incrementAndGet();
+            throw new FileNotFoundException("missing");
+        }));
+        assertThrows(GHException.class, () -> retry.call("test", () -> {
+            calls.incrementAndGet();
+            throw new GHException("other", new IllegalStateException());
+        }));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void testCircuitBreaker() throws Exception {
+        Retry retry = new Retry(2, 1, 1, 4, 200);
+        AtomicInteger calls = new AtomicInteger();
+        Retry.Call<String> failing = () -> {
+            calls.incrementAndGet();
+            throw httpException();
+        };
+
+        assertThrows(HttpException.class, () -> retry.call("test", failing));
+        assertThrows(HttpException.class, () -> retry.call("test", failing));
+        assertEquals(4, calls.get());
+
+        // the breaker is open now, so GitHub is not called at all
+        IOException e = assertThrows(IOException.class, () -> retry.call("test", () -> "ok"));
+        assertTrue(e.getMessage().contains("4 failures in a row"), "Had: " + e.getMessage());
+
+        // after the open-time a call is tried again and closes the breaker if it works
+        Thread.sleep(250);
+        assertEquals("ok", retry.call("test", () -> "ok"));
+        assertEquals("ok", retry.call("test", () -> "ok"));
+    }
+
+    @Test
+    public void testGetDelay() {
+        Retry retry = new Retry(10, 1000, 10_000, 10, 1000);
+        for (int i = 0; i < 100; i++) {
+            long delay = retry.getDelay(1);
+            assertTrue(delay >= 500 && delay <= 1000, "Had: " + delay);
+
+            delay = retry.getDelay(3);
+            assertTrue(delay >= 2000 && delay <= 4000, "Had: " + delay);
+
+            delay = retry.getDelay(50);
+            assertTrue(delay >= 5000 && delay <= 10_000, "Had: " + delay);
+        }
+    }
+
+    @Test
+    public void testInvalid() {
+        assertThrows(IllegalArgumentException.class, () -> new Retry(0, 1, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Retry(1, 10, 1, 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> new Retry(1, 1, 1, 0, 1));
+    }
+
+    private static HttpException httpException() {
+        return new HttpException("Server error", 502, "Bad Gateway", "https://api.github.com/repos/user/repo");
+    }
+}
@@ -0,0 +1,223 @@
+package org.dstadler.github.search;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.GHContent;
+import org.kohsuke.github.GitHub;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SearchJournalTest {
+    private static final String URL = "https://github.com/user/repo/blob/master/build.gradle";
+
+    private File dir;
+    private File file;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("SearchJournalTest").toFile();
+        file = new File(dir, "search.journal");
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        FileUtils.deleteDirectory(dir);
+    }
+
+    @Test
+    public void testReopen() throws IOException {
+        List<QueryPlanner.Shard> shards = Arrays.asList(new QueryPlanner.Shard("0..1023", 800), new QueryPlanner.Shard("1024..393216", 900));
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            assertNull(journal.getPlan("GradleBuildSearch"));
+            assertNull(journal.getVersions("GradleBuildSearch", null, URL));
+
+            journal.plan("GradleBuildSearch", shards);
+            journal.processed("GradleBuildSearch", "0..1023", URL, Arrays.asList("3.17", "4.0.0"));
+            journal.processed("GradleBuildSearch", "0..1023", URL + "2", Collections.emptyList());
+            journal.processed("MavenPomSearch", null, URL, Collections.singletonList("3.16"));
+            journal.done("GradleBuildSearch", "0..1023");
+        }
+
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            assertEquals(shards.toString(), journal.getPlan("GradleBuildSearch").toString());
+            assertNull(journal.getPlan("MavenPomSearch"));
+
+            assertEquals(Arrays.asList("3.17", "4.0.0"), journal.getVersions("GradleBuildSearch", "0..1023", URL));
+            assertEquals(Collections.emptyList(), journal.getVersions("GradleBuildSearch", "0..1023", URL + "2"));
+            assertNull(journal.getVersions("GradleBuildSearch", "1024..393216", URL));
+            assertEquals(Collections.singletonList("3.16"), journal.getVersions("MavenPomSearch", null, URL));
+            assertEquals(2, journal.getProcessed("GradleBuildSearch", "0..1023").size());
+
+            assertTrue(journal.isDone("GradleBuildSearch", "0..1023"));
+            assertFalse(journal.isDone("GradleBuildSearch", "1024..393216"));
+            assertFalse(journal.isDone("MavenPomSearch", null));
+
+            journal.finish();
+        }
+
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void testIncompleteLine() throws IOException {
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            journal.processed("GradleBuildSearch", null, URL, Collections.singletonList("3.17"));
+        }
+
+        // the process was killed while writing the last line
+        FileUtils.writeStringToFile(file, "{\"type\":\"processed\",\"search\":\"Gra", StandardCharsets.UTF_8, true);
+
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            assertEquals(Collections.singletonList("3.17"), journal.getVersions("GradleBuildSearch", null, URL));
+            assertEquals(1, journal.getProcessed("GradleBuildSearch", null).size());
+
+            journal.processed("GradleBuildSearch", null, URL + "2", Collections.singletonList("4.0"));
+        }
+
+        // the line written after the incomplete one is kept
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            assertEquals(Collections.singletonList("4.0"), journal.getVersions("GradleBuildSearch", null, URL + "2"));
+            assertEquals(2, journal.getProcessed("GradleBuildSearch", null).size());
+        }
+    }
+
+    @Test
+    public void testOutdated() throws IOException {
+        FileUtils.writeStringToFile(file,
+                "{\"type\":\"start\",\"started\":" + (System.currentTimeMillis() - TimeUnit.DAYS.toMillis(2)) + "}\n" +
+                "{\"type\":\"processed\",\"search\":\"GradleBuildSearch\",\"size\":\"any\",\"url\":\"" + URL + "\",\"versions\":[\"3.17\"]}\n",
+                StandardCharsets.UTF_8);
+
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            assertNull(journal.getVersions("GradleBuildSearch", null, URL));
+        }
+
+        // the outdated journal was replaced
+        List<String> lines = FileUtils.readLines(file, StandardCharsets.UTF_8);
+        assertEquals(1, lines.size(), "Had: " + lines);
+        assertTrue(lines.get(0).contains("\"start\""), "Had: " + lines);
+    }
+
+    @Test
+    public void testContinueSearch() throws IOException {
+        MyQuery query = new MyQuery(10);
+
+        // the first run fails at the sixth result
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            MySearch search = new MySearch(journal);
+            search.failAt = 5;
+            assertThrows(IllegalStateException.class, () -> search.processQuery(null, HashMultimap.create(), query));
+            assertEquals(6, search.processed.get());
+        }
+
+        // the second one only processes the remaining results
+        SetMultimap<String, String> versions = HashMultimap.create();
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            MySearch search = new MySearch(journal);
+            search.processQuery(null, versions, query);
+            assertEquals(5, search.processed.get());
+        }
+        assertEquals(expected(10), versions);
+        assertEquals(1, query.counted.get(), "The plan of the first run is used");
+        assertEquals(2, query.listed.get());
+
+        // a completed search is not run again
+        versions = HashMultimap.create();
+        try (SearchJournal journal = SearchJournal.open(file)) {
+            MySearch search = new MySearch(journal);
+            search.processQuery(null, versions, query);
+            assertEquals(0, search.processed.get());
+        }
+        assertEquals(expected(10), versions);
+        assertEquals(2, query.listed.get());
+    }
+
+    private static SetMultimap<String, String> expected(int count) {
+        SetMultimap<String, String> versions = HashMultimap.create();
+        for (int i = 0; i < count; i++) {
+            versions.put("3." + i, "https://github.com/user/repo" + i + "/blob/master/build.gradle");
+        }
+        return versions;
+    }
+
+    private static class MyQuery implements QueryPlanner.Query {
+        private final List<GHContent> matches = new ArrayList<>();
+        private final AtomicInteger counted = new AtomicInteger();
+        private final AtomicInteger listed = new AtomicInteger();
+
+        private MyQuery(int count) {
+            for (int i = 0; i < count; i++) {
+                String url = "https://github.com/user/repo" + i + "/blob/master/build.gradle";
+                matches.add(new GHContent() {
+                    @Override
+                    public String getHtmlUrl() {
+                        return url;
+                    }
+                });
+            }
+        }
+
+        @Override
+        public int getTotalCount(String size) {
+            counted.incrementAndGet();
+            return matches.size();
+        }
+
+        @Override
+        public Iterable<GHContent> list(String size) {
+            listed.incrementAndGet();
+            return matches;
+        }
+    }
+
+    private static class MySearch extends BaseSearch {
+        private final AtomicInteger processed = new AtomicInteger();
+        private int failAt = -1;
+
+        private MySearch(SearchJournal journal) {
+            this.journal = journal;
+        }
+
+        @Override
+        protected void processMatch(GitHub github, Multimap<String, String> versions, GHContent match) {
+            String repo = getRepository(match.getHtmlUrl());
+            int i = Integer.parseInt(repo.substring("user/repo".length()));
+
+            processed.incrementAndGet();
+            if (i == failAt) {
+                throw new IllegalStateException("Failed for " + repo);
+            }
+
+            versions.put("3." + i, match.getHtmlUrl());
+        }
+
+        @Override
+        void search(GitHub github, Multimap<String, String> versions) {
+        }
+
+        @Override
+        String getExcludeRegex() {
+            return null;
+        }
+
+        @Override
+        void parseVersion(Multimap<String, String> versions, String htmlUrl, String repo, String str) {
+        }
+    }
+}
@@ -1,34 +1,49 @@
 package org.dstadler.github.search;
 
 import com.google.common.collect.Multimap;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.TreeMultimap;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.ContentCache;
 import org.dstadler.github.util.JSONWriter;
+import org.dstadler.github.util.RepositoryCache;
 import org.junit.jupiter.api.Test;
 import org.kohsuke.github.GitHub;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.dstadler.github.util.JSONWriter.DATE_FORMAT;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeFalse;
 
 public class SearchTest {
     @Test
     public void runSearch() throws Exception {
-        File dir = File.createTempFile("github-version-statistics", ".dir");
-        assertTrue(dir.delete());
-        assertTrue(dir.mkdir());
-        File backupDir = JSONWriter.STATS_DIR;
-        JSONWriter.STATS_DIR = dir;
+        File dir = Files.createTempDirectory("SearchTest").toFile();
+        File statsDir = JSONWriter.STATS_DIR;
+        File repositoryCache = RepositoryCache.FILE;
+        File contentCache = ContentCache.DIR;
+        File journal = SearchJournal.FILE;
         try {
+            JSONWriter.STATS_DIR = dir;
+            RepositoryCache.FILE = new File(dir, "repositoryCache.json");
+            ContentCache.DIR = new File(dir, "contentCache");
+            SearchJournal.FILE = new File(dir, "search.journal");
+
             Search.runSearch(new MyBaseSearch());
 
             File file = new File(dir, "stats" + DATE_FORMAT.format(new Date()) + ".json");
             assertTrue(file.exists());
-            assertTrue(file.delete());
-            assertTrue(dir.exists());
-            assertTrue(dir.delete());
+            assertFalse(SearchJournal.FILE.exists());
         } catch (IOException e) {
             // ignore test if we do not have .github credentials
             assumeFalse(e.getMessage().contains("Failed to resolve credentials from ~/.github or the environment."));
@@ -36,13 +51,155 @@ public class SearchTest {
             // throw any other exception
             throw e;
         } finally {
-            JSONWriter.STATS_DIR = backupDir;
+            JSONWriter.STATS_DIR = statsDir;
+            RepositoryCache.FILE = repositoryCache;
+            ContentCache.DIR = contentCache;
+            SearchJournal.FILE = journal;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void runSearchStandIn() throws Exception {
+        File dir = Files.createTempDirectory("SearchTest").toFile();
+        File statsDir = JSONWriter.STATS_DIR;
+        File repositoryCache = RepositoryCache.FILE;
+        File contentCache = ContentCache.DIR;
+        File journal = SearchJournal.FILE;
+        int graphqlBatch = BaseSearch.GRAPHQL_BATCH;
+        try (GitHubStandIn standIn = new GitHubStandIn(GitHubStandInTest.versions(1500))) {
+            JSONWriter.STATS_DIR = dir;
+            RepositoryCache.FILE = new File(dir, "repositoryCache.json");
+            ContentCache.DIR = new File(dir, "contentCache");
+            SearchJournal.FILE = new File(dir, "search.journal");
+            BaseSearch.ENDPOINT = standIn.getEndpoint();
+            BaseSearch.GRAPHQL_BATCH = 1;
+
+            Search.runSearch(new GradleBuildSearch(), new MavenPomSearch());
+
+            File file = new File(dir, "stats" + DATE_FORMAT.format(new Date()) + ".json");
+            assertTrue(file.exists());
+            assertTrue(standIn.getHits() >= standIn.getFileCount() - 2, "Had: " + standIn.getHits());
+            assertFalse(SearchJournal.FILE.exists(), "The journal is removed after the results are written");
+
+            // the same files are found again with failing requests, the caches are not used now
+            RepositoryCache.FILE = new File(dir, "repositoryCache2.json");
+            ContentCache.DIR = new File(dir, "contentCache2");
+            standIn.setErrorRate(0.02);
+
+            GradleBuildSearch gradle = new GradleBuildSearch();
+            gradle.retry = new Retry(5, 1, 1, 50, 1000);
+            MavenPomSearch maven = new MavenPomSearch();
+            maven.retry = new Retry(5, 1, 1, 50, 1000);
+
+            SetMultimap<String, String> versions = Search.search(BaseSearch.connect(), gradle, maven);
+            assertEquals(TreeMultimap.create(standIn.getExpected()), TreeMultimap.create(versions));
+            assertTrue(standIn.getErrors() > 0);
+        } finally {
+            JSONWriter.STATS_DIR = statsDir;
+            RepositoryCache.FILE = repositoryCache;
+            ContentCache.DIR = contentCache;
+            SearchJournal.FILE = journal;
+            BaseSearch.ENDPOINT = null;
+            BaseSearch.GRAPHQL_BATCH = graphqlBatch;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testSearchParallel() throws IOException {
+        // each search waits for the other one, so this only finishes if they run in parallel
+        CountDownLatch latch = new CountDownLatch(2);
+        SetMultimap<String, String> versions = Search.search(null,
+                new MyBaseSearch(latch, "1.0", "https://github.com/a/b/blob/master/build.gradle",
+                        "2.0", "https://github.com/c/d/blob/master/build.gradle"),
+                new MyBaseSearch(latch, "1.0", "https://github.com/e/f/blob/master/pom.xml",
+                        "1.0", "https://github.com/a/b/blob/master/build.gradle"));
+
+        assertEquals("{1.0=[https://github.com/a/b/blob/master/build.gradle, https://github.com/e/f/blob/master/pom.xml], " +
+                "2.0=[https://github.com/c/d/blob/master/build.gradle]}",
+                TreeMultimap.create(versions).toString());
+    }
+
+    @Test
+    public void testSearchOrder() throws IOException {
+        SetMultimap<String, String> versions = Search.search(null,
+                new MyBaseSearch(null, "2.0", "https://github.com/c/d/blob/master/build.gradle",
+                        "1.0", "https://github.com/a/b/blob/master/build.gradle"),
+                new MyBaseSearch(null, "1.0", "https://github.com/e/f/blob/master/pom.xml",
+                        "1.0", "https://github.com/a/b/blob/master/build.gradle"));
+
+        // in the order of the searches and sorted by version and URL within each one
+        assertEquals("[1.0=https://github.com/a/b/blob/master/build.gradle, 2.0=https://github.com/c/d/blob/master/build.gradle, " +
+                "1.0=https://github.com/e/f/blob/master/pom.xml]", versions.entries().toString());
+    }
+
+    @Test
+    public void testSearchStream() throws IOException {
+        File file = File.createTempFile("SearchTest", ".results");
+        try {
+            MyBaseSearch search1 = new MyBaseSearch(null, "2.0", "https://github.com/c/d/blob/master/build.gradle",
+                    "1.0", "https://github.com/a/b/blob/master/build.gradle");
+            MyBaseSearch search2 = new MyOtherSearch("1.0", "https://github.com/e/f/blob/master/pom.xml",
+                    "1.0", "https://github.com/a/b/blob/master/build.gradle");
+            SetMultimap<String, String> expected = Search.search(null, search1, search2);
+            try (ResultStream stream = new ResultStream(file)) {
+                search1.stream = stream;
+                search2.stream = stream;
+
+                // nothing is kept in memory
+                assertTrue(Search.search(null, search1, search2).isEmpty());
+                assertEquals(4, stream.getCount());
+            }
+
+            // the same order as without the stream
+            assertEquals(expected.entries().toString(),
+                    ResultStream.read(file, Arrays.asList("MyBaseSearch", "MyOtherSearch")).entries().toString());
+        } finally {
+            assertTrue(file.delete());
         }
     }
 
+    @Test
+    public void testSearchFails() {
+        BaseSearch failing = new MyBaseSearch() {
+            @Override
+            void search(GitHub github, Multimap<String, String> versions) throws IOException {
+                throw new IOException("Search failed");
+            }
+        };
+
+        IOException e = assertThrows(IOException.class, () -> Search.search(null, new MyBaseSearch(), failing));
+        assertEquals("Search failed", e.getMessage());
+    }
+
     private static class MyBaseSearch extends BaseSearch {
+        private final CountDownLatch latch;
+        private final String[] versionAndUrl;
+
+        private MyBaseSearch(CountDownLatch latch, String... versionAndUrl) {
+            this.latch = latch;
+            this.versionAndUrl = versionAndUrl;
+        }
+
+        private MyBaseSearch() {
+            this(null);
+        }
+
         @Override
-        void search(GitHub github, Multimap<String, String> versions) {
+        void search(GitHub github, Multimap<String, String> versions) throws IOException {
+            for (int i = 0; i < versionAndUrl.length; i += 2) {
+                versions.put(versionAndUrl[i], versionAndUrl[i + 1]);
+            }
+
+            if (latch != null) {
+                latch.countDown();
+                try {
+                    assertTrue(latch.await(10, TimeUnit.SECONDS), "Searches did not run in parallel");
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+            }
         }
 
         @Override
@@ -54,4 +211,10 @@ public class SearchTest {
         void parseVersion(Multimap<String, String> versions, String htmlUrl, String repo, String str) {
         }
     }
+
+    private static class MyOtherSearch extends MyBaseSearch {
+        private MyOtherSearch(String... versionAndUrl) {
+            super(null, versionAndUrl);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,155 @@
+package org.dstadler.github.util;
+
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.JSONWriter.Holder;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryStatsTest {
+    @Test
+    public void testConvertAndRead() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 20);
+
+        File binary = File.createTempFile("BinaryStatsTest", ".bin");
+        assertTrue(binary.delete());
+        try {
+            assertEquals(20, BinaryStats.convert(files, binary));
+            assertEquals(Stats.getDate(files[19]), BinaryStats.getLastDate(binary));
+
+            long jsonSize = 0;
+            for (File file : files) {
+                jsonSize += file.length();
+            }
+            assertTrue(binary.length() * 10 < jsonSize,
+                    "Expected to be at least 10 times smaller, but had " + binary.length() + " and " + jsonSize);
+
+            assertEquals(readRecords(files), readRecords(new File[] { binary }));
+
+            // converting again does not add anything
+            assertEquals(0, BinaryStats.convert(files, binary));
+        } finally {
+            assertTrue(!binary.exists() || binary.delete());
+        }
+    }
+
+    @Test
+    public void testAppend() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 10);
+
+        File binary = File.createTempFile("BinaryStatsTest", ".bin");
+        assertTrue(binary.delete());
+        try {
+            assertEquals(5, BinaryStats.convert(Arrays.copyOf(files, 5), binary));
+            assertEquals(5, BinaryStats.convert(files, binary));
+
+            assertEquals(readRecords(files), readRecords(new File[] { binary }));
+        } finally {
+            assertTrue(!binary.exists() || binary.delete());
+        }
+    }
+
+    @Test
+    public void testIncompleteSnapshot() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 5);
+
+        File dir = Files.createTempDirectory("BinaryStatsTest").toFile();
+        try {
+            File binary = new File(dir, BinaryStats.FILE_NAME);
+            assertEquals(5, BinaryStats.convert(files, binary));
+            byte[] before = FileUtils.readFileToByteArray(binary);
+
+            // e.g. reading a stats-file fails in the middle of a snapshot
+            BinaryStats.Writer writer = new BinaryStats.Writer(binary);
+            writer.startSnapshot("2099-01-01");
+            writer.add("1.0", "https://github.com/user/repo/blob/master/build.gradle");
+            assertThrows(IllegalStateException.class, writer::close);
+
+            // the file is unchanged and no temporary file is left
+            assertArrayEquals(before, FileUtils.readFileToByteArray(binary));
+            assertEquals("[" + BinaryStats.FILE_NAME + "]", Arrays.toString(dir.list()));
+            assertEquals(readRecords(files), readRecords(new File[] { binary }));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testSecondSnapshotOfLastDate() throws IOException {
+        File[] files = Stats.getFiles();
+
+        File dir = Files.createTempDirectory("BinaryStatsTest").toFile();
+        try {
+            File file = new File(dir, files[0].getName());
+            FileUtils.copyFile(files[0], file);
+
+            File binary = new File(dir, BinaryStats.FILE_NAME);
+            assertEquals(1, BinaryStats.convert(new File[] { file }, binary));
+
+            // the search ran a second time on the same day after the file was converted
+            String line = FileUtils.readFileToString(files[1], StandardCharsets.UTF_8)
+                    .replace(Stats.getDate(files[1]), Stats.getDate(files[0]));
+            FileUtils.writeStringToFile(file, line, StandardCharsets.UTF_8, true);
+
+            assertEquals(1, BinaryStats.convert(new File[] { file }, binary));
+            assertEquals(0, BinaryStats.convert(new File[] { file }, binary));
+
+            assertEquals(readRecords(new File[] { file }), readRecords(new File[] { binary }));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testReadHolder() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 2);
+
+        File binary = File.createTempFile("BinaryStatsTest", ".bin");
+        assertTrue(binary.delete());
+        try {
+            BinaryStats.convert(files, binary);
+
+            try (SnapshotReader reader = StatsReader.open(binary)) {
+                assertTrue(reader.nextSnapshot());
+                Holder holder = Holder.read(reader);
+                assertEquals(Stats.getDate(files[0]), holder.getDate());
+                assertFalse(holder.getRepositoryVersions().isEmpty());
+
+                assertTrue(reader.nextSnapshot());
+                assertEquals(Stats.getDate(files[1]), reader.getDate());
+                assertFalse(reader.nextSnapshot());
+            }
+        } finally {
+            assertTrue(!binary.exists() || binary.delete());
+        }
+    }
+
+    @Test
+    public void testIsBinary() {
+        assertTrue(BinaryStats.isBinary(new File(BinaryStats.FILE_NAME)));
+        assertFalse(BinaryStats.isBinary(new File("stats2016-09-30.json")));
+    }
+
+    private static List<String> readRecords(File[] files) throws IOException {
+        List<String> records = new ArrayList<>();
+        for (File file : files) {
+            try (SnapshotReader reader = StatsReader.open(file)) {
+                while (reader.nextSnapshot()) {
+                    StatsRecord record;
+                    while ((record = reader.nextRecord()) != null) {
+                        records.add(record.toString());
+                    }
+                }
+            }
+        }
+        return records;
+    }
+}
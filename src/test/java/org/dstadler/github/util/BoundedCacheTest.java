@@ -0,0 +1,40 @@
+package org.dstadler.github.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BoundedCacheTest {
+    @Test
+    public void testGet() {
+        AtomicInteger calls = new AtomicInteger();
+        BoundedCache<String, Integer> cache = new BoundedCache<>(10);
+
+        assertEquals(3, (int) cache.get("abc", key -> {
+            calls.incrementAndGet();
+            return key.length();
+        }));
+        assertEquals(3, (int) cache.get("abc", key -> {
+            calls.incrementAndGet();
+            return key.length();
+        }));
+        assertEquals(1, calls.get());
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testBounded() {
+        BoundedCache<Integer, Integer> cache = new BoundedCache<>(10);
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i * 2, (int) cache.get(i, key -> key * 2));
+            assertTrue(cache.size() <= 10, "Had: " + cache.size());
+        }
+    }
+
+    @Test
+    public void testInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(0));
+    }
+}
@@ -0,0 +1,139 @@
+package org.dstadler.github.util;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompressedStatsTest {
+    private static final String LINE_1 = "{\"date\":\"2016-11-11\",\"versions\":{\"3.15\":[\"https://github.com/centic9/poi-mail-merge/blob/837194207f83c9274bfd175ca94fbac45282f5e4//build.gradle\"]}}";
+    private static final String LINE_2 = "{\"date\":\"2016-11-11\",\"versions\":{\"3.16\":[\"https://github.com/centic9/poi-mail-merge/blob/837194207f83c9274bfd175ca94fbac45282f5e4//build.gradle\"]}}";
+    private static final String LINE_3 = "{\"date\":\"2016-11-11\",\"versions\":{\"3.17\":[\"https://github.com/centic9/poi-mail-merge/blob/837194207f83c9274bfd175ca94fbac45282f5e4//build.gradle\"]}}";
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        File file = File.createTempFile("stats2016-11-11", ".json.gz");
+        assertTrue(file.delete());
+        try {
+            CompressedStats.append(file, LINE_1);
+            CompressedStats.append(file, LINE_2);
+            CompressedStats.append(file, LINE_3);
+
+            // a normal gzip-file
+            try (InputStream in = new GZIPInputStream(Files.newInputStream(file.toPath()))) {
+                assertEquals(LINE_1 + '\n' + LINE_2 + '\n' + LINE_3 + '\n', new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            }
+
+            List<Long> blocks = CompressedStats.getBlocks(file);
+            assertEquals(3, blocks.size(), "Had: " + blocks);
+            assertEquals(0L, (long) blocks.get(0));
+            assertEquals(LINE_2 + '\n', new String(CompressedStats.readBlock(file, blocks.get(1)), StandardCharsets.UTF_8));
+
+            assertEquals(Arrays.asList("3.15", "3.16", "3.17"), readVersions(StatsReader.open(file)));
+            assertEquals(List.of("3.17"), readVersions(CompressedStats.openLast(file)));
+        } finally {
+            assertTrue(!file.exists() || file.delete());
+        }
+    }
+
+    @Test
+    public void testReadLastWithoutOtherBlocks() throws IOException {
+        File file = File.createTempFile("stats2016-11-11", ".json.gz");
+        assertTrue(file.delete());
+        try {
+            CompressedStats.append(file, LINE_1);
+            CompressedStats.append(file, LINE_2);
+
+            // destroy the compressed data of the first block, the last one can still be read
+            try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+                raf.seek(25);
+                raf.write(new byte[] { (byte)0xff, (byte)0xff, (byte)0xff, (byte)0xff });
+            }
+
+            assertEquals(List.of("3.16"), readVersions(CompressedStats.openLast(file)));
+        } finally {
+            assertTrue(!file.exists() || file.delete());
+        }
+    }
+
+    @Test
+    public void testWriteCompressed() throws IOException {
+        File dir = Files.createTempDirectory("CompressedStatsTest").toFile();
+        File statsDir = JSONWriter.STATS_DIR;
+        boolean compress = JSONWriter.COMPRESS;
+        try {
+            JSONWriter.STATS_DIR = dir;
+            JSONWriter.COMPRESS = true;
+
+            SetMultimap<String, String> versions = HashMultimap.create();
+            versions.put("3.15", "https://github.com/centic9/poi-mail-merge/blob/master/build.gradle");
+            JSONWriter.write("2016-11-11", versions);
+            JSONWriter.write("2016-11-11", versions);
+
+            File[] files = Stats.getFiles(dir);
+            assertEquals(1, files.length, "Had: " + Arrays.toString(files));
+            assertEquals("stats2016-11-11.json.gz", files[0].getName());
+            assertEquals("2016-11-11", Stats.getDate(files[0]));
+            assertEquals(2, CompressedStats.getBlocks(files[0]).size());
+
+            assertEquals(Arrays.asList("3.15", "3.15"), readVersions(StatsReader.open(files[0])));
+
+            // an existing plain file is continued
+            JSONWriter.COMPRESS = false;
+            JSONWriter.write("2016-11-11", versions);
+            assertEquals(3, CompressedStats.getBlocks(files[0]).size());
+            assertEquals(1, Stats.getFiles(dir).length);
+        } finally {
+            JSONWriter.STATS_DIR = statsDir;
+            JSONWriter.COMPRESS = compress;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testCompressionRatio() throws IOException {
+        File plain = Stats.getFiles()[100];
+
+        File file = File.createTempFile("stats", ".json.gz");
+        assertTrue(file.delete());
+        try {
+            for (String line : FileUtils.readLines(plain, "UTF-8")) {
+                CompressedStats.append(file, line);
+            }
+
+            // the commit-ids in the URLs do not compress well
+            assertTrue(file.length() * 2 < plain.length(),
+                    "Expected to be at least 2 times smaller, but had " + file.length() + " and " + plain.length());
+
+            assertEquals(readVersions(StatsReader.open(plain)), readVersions(StatsReader.open(file)));
+        } finally {
+            assertTrue(!file.exists() || file.delete());
+        }
+    }
+
+    private static List<String> readVersions(SnapshotReader reader) throws IOException {
+        List<String> versions = new ArrayList<>();
+        try (reader) {
+            while (reader.nextSnapshot()) {
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    versions.add(record.version);
+                }
+            }
+        }
+        return versions;
+    }
+}
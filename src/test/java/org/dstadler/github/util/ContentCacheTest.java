@@ -0,0 +1,106 @@
+package org.dstadler.github.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ContentCacheTest {
+    private static final String SHA = "0123456789abcdef0123456789abcdef01234567";
+    private static final String SHA_2 = "89abcdef0123456789abcdef0123456789abcdef";
+
+    @Test
+    public void testContent() throws IOException {
+        File dir = Files.createTempDirectory("ContentCacheTest").toFile();
+        try {
+            ContentCache cache = ContentCache.read(dir);
+            assertNull(cache.getContent(SHA));
+
+            cache.putContent(SHA, "compile 'org.apache.poi:poi:3.16'");
+            assertEquals("compile 'org.apache.poi:poi:3.16'", cache.getContent(SHA));
+            assertNull(cache.getContent(SHA_2));
+
+            // contents are available without writing the cache
+            assertEquals("compile 'org.apache.poi:poi:3.16'", ContentCache.read(dir).getContent(SHA));
+
+            assertThrows(IllegalArgumentException.class, () -> cache.getContent("../../etc/passwd"));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testVersions() throws IOException {
+        File dir = Files.createTempDirectory("ContentCacheTest").toFile();
+        try {
+            ContentCache cache = ContentCache.read(dir);
+            assertNull(cache.getVersions("GradleBuildSearch", SHA));
+
+            cache.putVersions("GradleBuildSearch", SHA, Arrays.asList("3.16", "3.15"));
+            cache.putVersions("GradleBuildSearch", SHA_2, Collections.emptyList());
+            assertEquals(Arrays.asList("3.16", "3.15"), cache.getVersions("GradleBuildSearch", SHA));
+            assertEquals(Collections.emptyList(), cache.getVersions("GradleBuildSearch", SHA_2));
+            assertNull(cache.getVersions("MavenPomSearch", SHA));
+
+            cache.write();
+
+            ContentCache read = ContentCache.read(dir);
+            List<String> versions = read.getVersions("GradleBuildSearch", SHA);
+            assertEquals(Arrays.asList("3.16", "3.15"), versions);
+            assertEquals(Collections.emptyList(), read.getVersions("GradleBuildSearch", SHA_2));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testPrune() throws IOException {
+        File dir = Files.createTempDirectory("ContentCacheTest").toFile();
+        try {
+            ContentCache cache = ContentCache.read(dir);
+            cache.putContent(SHA, "compile 'org.apache.poi:poi:3.16'");
+            cache.putContent(SHA_2, "<version>${poi.version}</version>");
+            assertTrue(cache.contains(SHA));
+
+            // the content is not needed any more when the versions are known
+            cache.putVersions("GradleBuildSearch", SHA, Collections.singletonList("3.16"));
+            cache.write();
+            assertNull(cache.getContent(SHA));
+            assertTrue(cache.contains(SHA));
+            assertNotNull(cache.getContent(SHA_2));
+
+            // blobs which were not used for some time are removed
+            assertEquals(0, cache.prune("2000-01-01"));
+            assertEquals(2, cache.prune("2999-01-01"));
+            assertFalse(cache.contains(SHA));
+            assertFalse(cache.contains(SHA_2));
+            assertNull(cache.getVersions("GradleBuildSearch", SHA));
+
+            cache.write();
+            assertNull(ContentCache.read(dir).getVersions("GradleBuildSearch", SHA));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testReadOtherFormat() throws IOException {
+        File dir = Files.createTempDirectory("ContentCacheTest").toFile();
+        try {
+            FileUtils.writeStringToFile(new File(dir, "results.json"),
+                    "{\"parserVersion\":2,\"results\":{\"GradleBuildSearch:" + SHA + "\":[\"3.16\"]}}", StandardCharsets.UTF_8);
+
+            assertNull(ContentCache.read(dir).getVersions("GradleBuildSearch", SHA));
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package org.dstadler.github.util;
+
+import com.google.common.collect.LinkedHashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.JSONWriter.Holder;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaStatsTest {
+    @Test
+    public void testWriteAndReconstruct() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 40);
+
+        File dir = Files.createTempDirectory("DeltaStatsTest").toFile();
+        try {
+            // date -> last snapshot of the date as it is written by JSONWriter
+            Map<String, SetMultimap<String, String>> expected = new LinkedHashMap<>();
+            long fullSize = 0;
+            for (File file : files) {
+                SetMultimap<String, String> versions = readLastSnapshot(file);
+                String date = Stats.getDate(file);
+
+                DeltaStats.write(dir, date, versions);
+                expected.put(date, new Holder(date, versions).getVersions());
+                fullSize += file.length();
+            }
+
+            File[] written = Stats.getFiles(dir);
+            assertEquals(40, written.length);
+
+            long size = 0;
+            int keyframes = 0;
+            for (File file : written) {
+                size += file.length();
+                if (!DeltaStats.isDelta(file)) {
+                    keyframes++;
+                }
+            }
+            // at least one keyframe per interval, more if there were many changes
+            assertTrue(keyframes >= 2 && keyframes < 10, "Had: " + Arrays.toString(written));
+            assertTrue(size * 3 < fullSize, "Expected to be much smaller, but had " + size + " and " + fullSize);
+
+            for (Map.Entry<String, SetMultimap<String, String>> entry : expected.entrySet()) {
+                assertEquals(entry.getValue(), DeltaStats.getSnapshot(dir, entry.getKey()),
+                        "Failed for " + entry.getKey());
+            }
+
+            assertNull(DeltaStats.getSnapshot(dir, "2000-01-01"));
+
+            // the delta-files are reconstructed transparently when reading the history
+            List<String> dates = new ArrayList<>();
+            List<SetMultimap<String, String>> repositories = new ArrayList<>();
+            StatsReader.readSnapshots(written, snapshot -> {
+                dates.add(snapshot.getDate());
+                repositories.add(snapshot.getRepositoryVersions());
+            });
+            assertEquals(new ArrayList<>(expected.keySet()), dates);
+            for (int i = 0; i < dates.size(); i++) {
+                assertEquals(new Holder(dates.get(i), expected.get(dates.get(i))).getRepositoryVersions(),
+                        repositories.get(i), "Failed for " + dates.get(i));
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testSameOrderAsFullFile() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 12);
+
+        File dir = Files.createTempDirectory("DeltaStatsTest").toFile();
+        File fullDir = Files.createTempDirectory("DeltaStatsTest").toFile();
+        try {
+            for (File file : files) {
+                String date = Stats.getDate(file);
+                SetMultimap<String, String> versions = readLastSnapshot(file);
+
+                // move some entries to the front, so the order differs from the one of the keyframe
+                SetMultimap<String, String> reordered = LinkedHashMultimap.create();
+                int i = 0;
+                for (Map.Entry<String, String> entry : versions.entries()) {
+                    if (i++ % 7 == 3) {
+                        reordered.put(entry.getKey(), entry.getValue());
+                    }
+                }
+                reordered.putAll(versions);
+
+                Holder holder = new Holder(date, reordered);
+                DeltaStats.write(dir, date, holder.getVersions());
+                JSONWriter.writeHolder(CompressedStats.getFile(fullDir, "stats" + date + ".json"), holder);
+            }
+
+            File[] written = Stats.getFiles(dir);
+            File[] full = Stats.getFiles(fullDir);
+            assertEquals(full.length, written.length);
+            assertTrue(DeltaStats.isDelta(written[1]), "Had: " + Arrays.toString(written));
+
+            for (int i = 0; i < written.length; i++) {
+                assertEquals(readRecords(full[i]), readRecords(written[i]), "Failed for " + written[i]);
+            }
+        } finally {
+            FileUtils.deleteDirectory(dir);
+            FileUtils.deleteDirectory(fullDir);
+        }
+    }
+
+    @Test
+    public void testSameDateWritesFull() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 2);
+
+        File dir = Files.createTempDirectory("DeltaStatsTest").toFile();
+        try {
+            String date = Stats.getDate(files[0]);
+            DeltaStats.write(dir, date, readLastSnapshot(files[0]));
+            DeltaStats.write(dir, date, readLastSnapshot(files[1]));
+
+            File[] written = Stats.getFiles(dir);
+            assertEquals(1, written.length, "Had: " + Arrays.toString(written));
+            assertFalse(DeltaStats.isDelta(written[0]));
+            assertEquals(2, FileUtils.readLines(written[0], "UTF-8").size());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testCompressed() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 5);
+
+        File dir = Files.createTempDirectory("DeltaStatsTest").toFile();
+        boolean compress = JSONWriter.COMPRESS;
+        try {
+            JSONWriter.COMPRESS = true;
+
+            for (File file : files) {
+                DeltaStats.write(dir, Stats.getDate(file), readLastSnapshot(file));
+            }
+
+            File[] written = Stats.getFiles(dir);
+            assertEquals(5, written.length);
+            for (int i = 0; i < written.length; i++) {
+                assertTrue(CompressedStats.isCompressed(written[i]), "Had: " + written[i]);
+                assertEquals(i > 0, DeltaStats.isDelta(written[i]), "Had: " + written[i]);
+
+                String date = Stats.getDate(files[i]);
+                assertEquals(new Holder(date, readLastSnapshot(files[i])).getVersions(), DeltaStats.getSnapshot(dir, date));
+            }
+        } finally {
+            JSONWriter.COMPRESS = compress;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testIsDelta() {
+        assertTrue(DeltaStats.isDelta(new File("stats/stats2016-09-30.delta.json")));
+        assertFalse(DeltaStats.isDelta(new File("stats/stats2016-09-30.json")));
+        assertTrue(DeltaStats.isDelta(new File("stats/stats2016-09-30.delta.json.gz")));
+        assertEquals("2016-09-30", Stats.getDate(new File("stats/stats2016-09-30.delta.json")));
+    }
+
+    private static List<String> readRecords(File file) throws IOException {
+        List<String> records = new ArrayList<>();
+        try (SnapshotReader reader = StatsReader.open(file)) {
+            while (reader.nextSnapshot()) {
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    records.add(record.toString());
+                }
+            }
+        }
+        return records;
+    }
+
+    private static SetMultimap<String, String> readLastSnapshot(File file) throws IOException {
+        SetMultimap<String, String> versions = LinkedHashMultimap.create();
+        try (SnapshotReader reader = StatsReader.open(file)) {
+            while (reader.nextSnapshot()) {
+                versions.clear();
+
+                StatsRecord record;
+                while ((record = reader.nextRecord()) != null) {
+                    versions.put(record.version, record.url);
+                }
+            }
+        }
+        return versions;
+    }
+}
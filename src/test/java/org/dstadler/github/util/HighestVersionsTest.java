@@ -0,0 +1,50 @@
+package org.dstadler.github.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HighestVersionsTest {
+    @Test
+    public void testAdd() {
+        int repo1 = SymbolTable.REPOSITORIES.id("centic9/poi-mail-merge");
+        int repo2 = SymbolTable.REPOSITORIES.id("centic9/other");
+        int v15 = SymbolTable.VERSIONS.id("3.15");
+        int v16 = SymbolTable.VERSIONS.id("3.16");
+
+        HighestVersions versions = new HighestVersions();
+        List<String> changes = new ArrayList<>();
+        versions.setListener((repositoryId, previousVersionId, versionId) ->
+                changes.add(repositoryId + ":" + previousVersionId + ":" + versionId));
+
+        assertEquals(-1, versions.get(repo1));
+        assertTrue(versions.add(repo1, v15));
+        assertTrue(versions.add(repo2, v16));
+        assertTrue(versions.add(repo1, v16));
+        assertFalse(versions.add(repo1, v15));
+        assertFalse(versions.add(repo2, v15));
+
+        assertEquals(v16, versions.get(repo1));
+        assertEquals(v16, versions.get(repo2));
+        assertEquals(2, versions.size());
+        assertEquals(repo1, versions.getRepositoryId(0));
+        assertEquals(repo2, versions.getRepositoryId(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> versions.getRepositoryId(2));
+
+        assertEquals(List.of(repo1 + ":-1:" + v15, repo2 + ":-1:" + v16, repo1 + ":" + v15 + ":" + v16), changes);
+
+        Map<String, String> expected = new LinkedHashMap<>();
+        expected.put("centic9/poi-mail-merge", "3.16");
+        expected.put("centic9/other", "3.16");
+        assertEquals(expected, versions.getVersions());
+
+        // restoring keeps versions and order
+        HighestVersions restored = new HighestVersions(versions.getVersions());
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(restored.getVersions().entrySet()));
+    }
+}
@@ -0,0 +1,81 @@
+package org.dstadler.github.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HistoryScanTest {
+    @Test
+    public void testVisitorsSeeSameSnapshots() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 20);
+
+        // compute the results separately for comparison
+        Map<String, String> expectedHighest = new HashMap<>();
+        Set<String> expectedRepositories = new HashSet<>();
+        List<String> expectedDates = new ArrayList<>();
+        StatsReader.readSnapshots(files, snapshot -> {
+            JSONWriter.addHigherVersions(expectedHighest, snapshot.getRepositoryVersions());
+            expectedRepositories.addAll(snapshot.getRepositoryVersions().values());
+            expectedDates.add(snapshot.getDate());
+        });
+
+        HistoryScan scan = new HistoryScan();
+        HighestVersions highest = scan.register(new HighestVersions());
+        RepositorySet repositories = scan.register(new RepositorySet());
+        List<String> dates = new ArrayList<>();
+        scan.register(snapshot -> dates.add(snapshot.getDate()));
+
+        assertEquals(expectedDates.size(), scan.scan(files));
+
+        assertEquals(expectedDates, dates);
+        assertEquals(expectedHighest, highest.getVersions());
+        assertEquals(expectedRepositories, repositories.getRepositories());
+        assertEquals(Stats.getDate(files[19]), repositories.getLatestDate());
+        assertFalse(repositories.getLatestRepositories().isEmpty());
+        assertTrue(repositories.getRepositories().containsAll(repositories.getLatestRepositories()));
+    }
+
+    @Test
+    public void testVisitorOrder() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 3);
+
+        HistoryScan scan = new HistoryScan();
+        List<String> calls = new ArrayList<>();
+        scan.register(snapshot -> calls.add("first " + snapshot.getDate()));
+        scan.register(snapshot -> calls.add("second " + snapshot.getDate()));
+
+        assertEquals(3, scan.scan(files, null));
+
+        assertEquals(6, calls.size(), "Had: " + calls);
+        for (int i = 0; i < calls.size(); i += 2) {
+            assertTrue(calls.get(i).startsWith("first "), "Had: " + calls);
+            assertTrue(calls.get(i + 1).startsWith("second "), "Had: " + calls);
+        }
+    }
+
+    @Test
+    public void testSince() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 5);
+
+        HistoryScan scan = new HistoryScan();
+        RepositorySet repositories = scan.register(new RepositorySet());
+
+        assertEquals(2, scan.scan(files, Stats.getDate(files[2])));
+        assertEquals(Stats.getDate(files[4]), repositories.getLatestDate());
+    }
+
+    @Test
+    public void testNoVisitor() {
+        assertThrows(IllegalStateException.class, () -> new HistoryScan().scan(new File[0]));
+    }
+}
@@ -1,6 +1,7 @@
 package org.dstadler.github.util;
 
 import com.google.common.collect.HashMultimap;
+import com.google.common.collect.LinkedHashMultimap;
 import com.google.common.collect.SetMultimap;
 import org.apache.commons.io.FileUtils;
 import org.dstadler.github.util.JSONWriter.Holder;
@@ -64,6 +65,7 @@ public class JSONWriterTest {
                 assertTrue(dir.exists());
                 assertTrue(testFile.exists());
                 assertTrue(testFile.delete());
+                assertTrue(new File(dir, StatsManifest.FILE_NAME).delete());
                 assertTrue(dir.delete());
             }
         } finally {
@@ -116,6 +118,29 @@ public class JSONWriterTest {
         assertEquals("centic9/poi-mail-merge", repos.values().iterator().next(), "Had: " + repos);
     }
 
+    @Test
+    public void testHolderIndex() {
+        SetMultimap<String, String> versions = LinkedHashMultimap.create();
+        versions.put("3.15", "https://github.com/centic9/poi-mail-merge/blob/master/build.gradle");
+        versions.put("3.16", "https://github.com/centic9/poi-mail-merge/blob/master/sub/build.gradle");
+        versions.put("3.15", "https://github.com/centic9/other/blob/master/build.gradle");
+        versions.put("3.14", "https://github.com/centic9/other/blob/master/sub/build.gradle");
+
+        Holder holder = new Holder("2017-01-01", versions);
+
+        SetMultimap<String, String> highest = holder.getVersions();
+        assertEquals("[3.16, 3.15]", highest.keySet().toString(), "Had: " + highest);
+        assertEquals(2, highest.size(), "Had: " + highest);
+        assertEquals("[https://github.com/centic9/poi-mail-merge/blob/master/sub/build.gradle]", highest.get("3.16").toString(), "Had: " + highest);
+        assertEquals("[https://github.com/centic9/other/blob/master/build.gradle]", highest.get("3.15").toString(), "Had: " + highest);
+
+        SetMultimap<String, String> repos = holder.getRepositoryVersions();
+        assertEquals("{3.16=[centic9/poi-mail-merge], 3.15=[centic9/other]}", repos.toString(), "Had: " + repos);
+
+        assertThrows(UnsupportedOperationException.class, () -> highest.put("3.17", "url"));
+        assertThrows(UnsupportedOperationException.class, () -> repos.put("3.17", "repo"));
+    }
+
     @Test
     public void getHighestVersions() throws Exception {
         Map<String, String> repoVersions = JSONWriter.getHighestVersions();
@@ -0,0 +1,176 @@
+package org.dstadler.github.util;
+
+import org.junit.jupiter.api.Test;
+import org.kohsuke.github.HttpException;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RepositoryCacheTest {
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private RepositoryCache.Entry load(String repository) {
+        loads.incrementAndGet();
+
+        RepositoryCache.Entry entry = new RepositoryCache.Entry();
+        if (repository.startsWith("missing/")) {
+            entry.status = RepositoryCache.Status.NOT_FOUND;
+        } else {
+            entry.stars = repository.length();
+            entry.fork = repository.startsWith("fork/");
+        }
+        return entry;
+    }
+
+    @Test
+    public void testGet() throws IOException {
+        File file = File.createTempFile("RepositoryCacheTest", ".json");
+        assertTrue(file.delete());
+        try {
+            RepositoryCache cache = RepositoryCache.read(file);
+            assertEquals(0, cache.size());
+
+            RepositoryCache.Entry entry = cache.get("centic9/poi-mail-merge", RepositoryCache.Field.STARS, this::load);
+            assertEquals(RepositoryCache.Status.OK, entry.status);
+            assertEquals(22, entry.stars);
+            assertFalse(entry.fork);
+            assertTrue(entry.fetched > 0);
+
+            assertSame(entry, cache.get("centic9/poi-mail-merge", RepositoryCache.Field.FORK, this::load));
+            assertTrue(cache.get("fork/repo", RepositoryCache.Field.FORK, this::load).fork);
+            assertEquals(2, loads.get());
+            assertEquals(2, cache.getFetches());
+
+            // stars are too old now, but the fork-flag can still be used
+            entry.fetched -= TimeUnit.DAYS.toMillis(8);
+            assertSame(entry, cache.get("centic9/poi-mail-merge", RepositoryCache.Field.FORK, this::load));
+            assertEquals(2, loads.get());
+            assertNotSame(entry, cache.get("centic9/poi-mail-merge", RepositoryCache.Field.STARS, this::load));
+            assertEquals(3, loads.get());
+
+            // missing repositories are remembered
+            assertEquals(RepositoryCache.Status.NOT_FOUND, cache.get("missing/repo", RepositoryCache.Field.PUSHED_AT, this::load).status);
+            assertEquals(RepositoryCache.Status.NOT_FOUND, cache.get("missing/repo", RepositoryCache.Field.PUSHED_AT, this::load).status);
+            assertEquals(4, loads.get());
+
+            // read back from disk
+            cache.write();
+            RepositoryCache read = RepositoryCache.read(file);
+            assertEquals(3, read.size());
+            assertEquals(RepositoryCache.Status.NOT_FOUND, read.get("missing/repo", RepositoryCache.Field.STARS, this::load).status);
+            assertTrue(read.get("fork/repo", RepositoryCache.Field.FORK, this::load).fork);
+            assertEquals(22, read.get("centic9/poi-mail-merge", RepositoryCache.Field.STARS, this::load).stars);
+            assertEquals(4, loads.get());
+            assertEquals(0, read.getFetches());
+        } finally {
+            assertTrue(!file.exists() || file.delete());
+        }
+    }
+
+    @Test
+    public void testWriteRemovesExpired() throws IOException {
+        File file = File.createTempFile("RepositoryCacheTest", ".json");
+        assertTrue(file.delete());
+        try {
+            RepositoryCache cache = RepositoryCache.read(file);
+
+            // only the fork-flag can still be used
+            cache.get("centic9/poi-mail-merge", RepositoryCache.Field.FORK, this::load).fetched -= TimeUnit.DAYS.toMillis(20);
+            // too old for any field
+            cache.get("centic9/other", RepositoryCache.Field.FORK, this::load).fetched -= TimeUnit.DAYS.toMillis(31);
+            cache.get("missing/repo", RepositoryCache.Field.FORK, this::load).fetched -= TimeUnit.DAYS.toMillis(8);
+            assertEquals(3, cache.size());
+
+            cache.write();
+            assertEquals(1, cache.size());
+            assertTrue(RepositoryCache.read(file).contains("centic9/poi-mail-merge", RepositoryCache.Field.FORK));
+            assertEquals(1, RepositoryCache.read(file).size());
+        } finally {
+            assertTrue(!file.exists() || file.delete());
+        }
+    }
+
+    @Test
+    public void testFailure() throws IOException {
+        RepositoryCache cache = RepositoryCache.read(new File("not-existing-file.json"));
+
+        assertThrows(IOException.class, () -> cache.get("centic9/poi-mail-merge", RepositoryCache.Field.STARS, repository -> {
+            throw new IOException("Failed");
+        }));
+        assertThrows(IllegalArgumentException.class, () -> cache.get("centic9/invalid project", RepositoryCache.Field.STARS, repository -> {
+            throw new IllegalArgumentException("Invalid");
+        }));
+
+        // failures are not cached
+        assertEquals(0, cache.size());
+        assertEquals(22, cache.get("centic9/poi-mail-merge", RepositoryCache.Field.STARS, this::load).stars);
+    }
+
+    @Test
+    public void testRateLimitIsNotForbidden() throws IOException {
+        assertTrue(RepositoryCache.isForbidden(new HttpException("{\"message\":\"Repository access blocked\"}",
+                403, "Forbidden", "https://api.github.com/repos/user/blocked")));
+        assertFalse(RepositoryCache.isForbidden(new HttpException("Server error", 502, "Bad Gateway", "https://api.github.com/repos/user/repo")));
+
+        HttpException rateLimit = new HttpException("{\"message\":\"API rate limit exceeded for 1.2.3.4.\"}",
+                403, "Forbidden", "https://api.github.com/repos/user/repo");
+        assertFalse(RepositoryCache.isForbidden(rateLimit));
+        assertFalse(RepositoryCache.isForbidden(new HttpException("{\"message\":\"You have exceeded a secondary rate limit.\"}",
+                403, "Forbidden", "https://api.github.com/repos/user/repo")));
+        assertFalse(RepositoryCache.isForbidden(new HttpException("Abuse limit reached", 403, "Forbidden", "https://api.github.com/repos/user/repo")));
+
+        // the rate-limit is thrown to be retried, the repository is not remembered as forbidden
+        RepositoryCache cache = RepositoryCache.read(new File("not-existing-file.json"));
+        assertSame(rateLimit, assertThrows(HttpException.class, () -> cache.get("user/repo", RepositoryCache.Field.FORK, repository -> {
+            throw rateLimit;
+        })));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testConcurrentFetchesOnce() throws Exception {
+        RepositoryCache cache = RepositoryCache.read(new File("not-existing-file.json"));
+        CountDownLatch start = new CountDownLatch(1);
+
+        List<Thread> threads = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    RepositoryCache.Entry entry = cache.get("centic9/poi-mail-merge", RepositoryCache.Field.STARS, repository -> {
+                        try {
+                            // make the fetch slow so the other threads need to wait for it
+                            Thread.sleep(200);
+                        } catch (InterruptedException e) {
+                            throw new IllegalStateException(e);
+                        }
+                        return load(repository);
+                    });
+                    assertEquals(22, entry.stars);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(failures.isEmpty(), "Had: " + failures);
+        assertEquals(1, loads.get());
+    }
+}
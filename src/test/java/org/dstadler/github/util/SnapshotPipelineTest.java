@@ -0,0 +1,109 @@
+package org.dstadler.github.util;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotPipelineTest {
+    @Test
+    public void testSameAsSequential() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 30);
+
+        List<String> expected = new ArrayList<>();
+        StatsReader.readSnapshots(files, snapshot -> expected.add(toString(snapshot)));
+
+        assertEquals(expected, readPipeline(files, null, 4));
+        assertEquals(expected, readPipeline(files, null, 1));
+    }
+
+    @Test
+    public void testSince() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 10);
+        String since = Stats.getDate(files[6]);
+
+        List<String> expected = new ArrayList<>();
+        StatsReader.readSnapshots(Arrays.copyOfRange(files, 7, 10), snapshot -> expected.add(toString(snapshot)));
+
+        List<String> actual = readPipeline(files, since, 3);
+        assertEquals(3, actual.size());
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    public void testBinary() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 12);
+
+        File binary = File.createTempFile("SnapshotPipelineTest", ".bin");
+        assertTrue(binary.delete());
+        try {
+            BinaryStats.convert(Arrays.copyOf(files, 8), binary);
+
+            List<String> expected = new ArrayList<>();
+            StatsReader.readSnapshots(files, snapshot -> expected.add(toString(snapshot)));
+
+            File[] history = new File[] { binary, files[8], files[9], files[10], files[11] };
+            assertEquals(expected, readPipeline(history, null, 4));
+            assertEquals(expected.subList(5, 12), readPipeline(history, Stats.getDate(files[4]), 2));
+        } finally {
+            assertTrue(!binary.exists() || binary.delete());
+        }
+    }
+
+    @Test
+    public void testBinaryWithSecondSnapshotOfLastDate() throws IOException {
+        File[] files = Arrays.copyOf(Stats.getFiles(), 4);
+
+        File dir = Files.createTempDirectory("SnapshotPipelineTest").toFile();
+        try {
+            File file = new File(dir, files[1].getName());
+            FileUtils.copyFile(files[1], file);
+
+            File binary = new File(dir, BinaryStats.FILE_NAME);
+            BinaryStats.convert(new File[] { files[0], file }, binary);
+
+            // the search ran a second time on the day of the last converted file
+            String line = FileUtils.readFileToString(files[2], StandardCharsets.UTF_8)
+                    .replace(Stats.getDate(files[2]), Stats.getDate(files[1]));
+            FileUtils.writeStringToFile(file, line, StandardCharsets.UTF_8, true);
+
+            List<String> expected = new ArrayList<>();
+            StatsReader.readSnapshots(new File[] { files[0], file, files[3] }, snapshot -> expected.add(toString(snapshot)));
+            assertEquals(4, expected.size(), "Had: " + expected);
+
+            File[] history = new File[] { binary, file, files[3] };
+            assertEquals(expected, readPipeline(history, null, 4));
+            assertEquals(expected, readPipeline(history, null, 1));
+
+            List<String> sequential = new ArrayList<>();
+            StatsReader.readSnapshots(history, snapshot -> sequential.add(toString(snapshot)));
+            assertEquals(expected, sequential);
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    private static List<String> readPipeline(File[] files, String since, int parallelism) throws IOException {
+        List<String> snapshots = new ArrayList<>();
+        try (SnapshotPipeline pipeline = new SnapshotPipeline(files, since, parallelism)) {
+            RepositorySnapshot snapshot;
+            while ((snapshot = pipeline.next()) != null) {
+                snapshots.add(toString(snapshot));
+            }
+        }
+        return snapshots;
+    }
+
+    private static String toString(RepositorySnapshot snapshot) {
+        return snapshot.getDate() + ": " + snapshot.getFileCounts() + " - " + snapshot.getFirstFiles() +
+                " - " + snapshot.getRepositoryVersions().size();
+    }
+}
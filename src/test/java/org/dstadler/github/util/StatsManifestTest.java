@@ -0,0 +1,126 @@
+package org.dstadler.github.util;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.io.FileUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsManifestTest {
+    @Test
+    public void testUpdate() throws IOException {
+        File dir = Files.createTempDirectory("StatsManifestTest").toFile();
+        try {
+            for (File file : Arrays.copyOf(Stats.getFiles(), 3)) {
+                FileUtils.copyFileToDirectory(file, dir);
+            }
+            File[] files = Stats.getFiles(dir);
+
+            StatsManifest manifest = StatsManifest.update(dir, files);
+            assertEquals(3, manifest.files.size());
+
+            for (File file : files) {
+                StatsManifest.Entry entry = manifest.get(file);
+                assertNotNull(entry, "Had: " + manifest.files);
+                assertEquals(Stats.getDate(file), entry.date);
+                assertEquals(file.length(), entry.size);
+                assertEquals(FileUtils.checksumCRC32(file), entry.checksum);
+            }
+
+            // nothing changed, so the manifest is not written again
+            File manifestFile = new File(dir, StatsManifest.FILE_NAME);
+            assertTrue(manifestFile.setLastModified(1000));
+            StatsManifest.update(dir, files);
+            assertEquals(1000, manifestFile.lastModified());
+
+            // only touched, e.g. by a new checkout, the manifest is not changed
+            assertTrue(files[0].setLastModified(files[0].lastModified() - 10000));
+            StatsManifest.update(dir, files);
+            assertEquals(1000, manifestFile.lastModified());
+
+            // the content changed
+            CompressedStats.append(files[1], "{\"date\":\"" + Stats.getDate(files[1]) + "\",\"versions\":{}}");
+            long checksum = manifest.get(files[1]).checksum;
+            manifest = StatsManifest.update(dir, files);
+            assertNotEquals(checksum, manifest.get(files[1]).checksum);
+            assertEquals(files[1].length(), manifest.get(files[1]).size);
+
+            // changed with the same size, only detected when verifying
+            String content = FileUtils.readFileToString(files[2], StandardCharsets.UTF_8);
+            FileUtils.writeStringToFile(files[2], content.replaceFirst("build\\.gradle", "build.gradlf"), StandardCharsets.UTF_8);
+            checksum = manifest.get(files[2]).checksum;
+            assertEquals(checksum, StatsManifest.update(dir, files).get(files[2]).checksum);
+
+            boolean verify = StatsManifest.VERIFY;
+            try {
+                StatsManifest.VERIFY = true;
+                assertNotEquals(checksum, StatsManifest.update(dir, files).get(files[2]).checksum);
+            } finally {
+                StatsManifest.VERIFY = verify;
+            }
+
+            // removed files are removed from the manifest
+            manifest = StatsManifest.update(dir, Arrays.copyOf(files, 2));
+            assertEquals(2, manifest.files.size());
+            assertEquals(2, StatsManifest.read(dir).files.size());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testUpdatedByWrite() throws IOException {
+        File dir = Files.createTempDirectory("StatsManifestTest").toFile();
+        File statsDir = JSONWriter.STATS_DIR;
+        try {
+            JSONWriter.STATS_DIR = dir;
+
+            SetMultimap<String, String> versions = HashMultimap.create();
+            versions.put("3.15", "https://github.com/centic9/poi-mail-merge/blob/master/build.gradle");
+            versions.put("3.16", "https://github.com/centic9/other/blob/master/build.gradle");
+            JSONWriter.write("2016-11-11", versions);
+            JSONWriter.write("2016-11-11", versions);
+
+            File file = new File(dir, "stats2016-11-11.json");
+            StatsManifest.Entry entry = StatsManifest.read(dir).get(file);
+            assertNotNull(entry);
+            assertEquals("2016-11-11", entry.date);
+            assertEquals(file.length(), entry.size);
+            assertEquals(FileUtils.checksumCRC32(file), entry.checksum);
+        } finally {
+            JSONWriter.STATS_DIR = statsDir;
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testReadOtherFormat() throws IOException {
+        File dir = Files.createTempDirectory("StatsManifestTest").toFile();
+        try {
+            FileUtils.writeStringToFile(new File(dir, StatsManifest.FILE_NAME),
+                    "{\"formatVersion\":1,\"files\":{\"stats2016-09-30.json\":{\"date\":\"2016-09-30\",\"lastModified\":1000}}}",
+                    StandardCharsets.UTF_8);
+
+            assertTrue(StatsManifest.read(dir).files.isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+
+    @Test
+    public void testReadMissing() throws IOException {
+        File dir = Files.createTempDirectory("StatsManifestTest").toFile();
+        try {
+            assertTrue(StatsManifest.read(dir).files.isEmpty());
+        } finally {
+            FileUtils.deleteDirectory(dir);
+        }
+    }
+}
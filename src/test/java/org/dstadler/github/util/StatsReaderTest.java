@@ -0,0 +1,122 @@
+package org.dstadler.github.util;
+
+import org.apache.commons.io.FileUtils;
+import org.dstadler.github.util.JSONWriter.Holder;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class StatsReaderTest {
+    private static final String URL_1 = "https://github.com/centic9/poi-mail-merge/blob/074d96b0d798ded4fb349d7fdf301d1d8a4daa2d//build.gradle";
+    private static final String URL_2 = "https://github.com/centic9/poi-mail-merge/blob/837194207f83c9274bfd175ca94fbac45282f5e4//build.gradle";
+    private static final String URL_3 = "https://github.com/centic9/other/blob/837194207f83c9274bfd175ca94fbac45282f5e4//pom.xml";
+
+    private static final String JSON =
+            "{\"date\":\"2016-11-11\",\"versions\":{" +
+                    "\"3.15-beta2\":[\"" + URL_1 + "\"], " +
+                    "\"3.15\":[\"" + URL_2 + "\",\"" + URL_3 + "\"]}}\n" +
+            "{\"date\":\"2016-11-11\",\"versions\":{}}\n" +
+            "{\"date\":\"2016-11-12\",\"versions\":{\"3.16\":[\"" + URL_3 + "\"]}}\n";
+
+    @Test
+    public void testReadRecords() throws IOException {
+        File file = writeTempFile();
+        try (StatsReader reader = new StatsReader(file)) {
+            assertTrue(reader.nextSnapshot());
+            assertEquals("2016-11-11", reader.getDate());
+
+            List<StatsRecord> records = readAll(reader);
+            assertEquals(3, records.size(), "Had: " + records);
+            assertEquals("3.15-beta2", records.get(0).version);
+            assertEquals(URL_1, records.get(0).url);
+            assertEquals("centic9/poi-mail-merge", records.get(0).getRepository());
+            assertEquals("3.15", records.get(2).version);
+            assertEquals(URL_3, records.get(2).url);
+
+            assertTrue(reader.nextSnapshot());
+            assertEquals("2016-11-11", reader.getDate());
+            assertNull(reader.nextRecord());
+
+            // skipping records works
+            assertTrue(reader.nextSnapshot());
+            assertEquals("2016-11-12", reader.getDate());
+
+            assertFalse(reader.nextSnapshot());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testReadSnapshots() throws IOException {
+        File file = writeTempFile();
+        try {
+            List<RepositorySnapshot> snapshots = new ArrayList<>();
+            StatsReader.readSnapshots(new File[] { file }, snapshots::add);
+
+            assertEquals(3, snapshots.size());
+
+            RepositorySnapshot snapshot = snapshots.get(0);
+            assertEquals("2016-11-11", snapshot.getDate());
+            assertEquals(2, snapshot.size());
+            assertEquals(2, snapshot.getFileCounts().get("3.15").intValue());
+            assertNull(snapshot.getFileCounts().get("3.15-beta2"));
+            assertEquals(URL_2, snapshot.getFirstFiles().get("3.15"));
+
+            assertEquals(0, snapshots.get(1).size());
+            assertEquals(1, snapshots.get(2).size());
+        } finally {
+            assertTrue(file.delete());
+        }
+    }
+
+    @Test
+    public void testSameAsHolder() throws IOException {
+        File[] files = Stats.getFiles();
+
+        // compare a few of the stats-files with the result of parsing the full JSON
+        for (File file : new File[] { files[0], files[files.length / 2], files[files.length - 1] }) {
+            List<String> lines = FileUtils.readLines(file, "UTF-8");
+            List<RepositorySnapshot> snapshots = new ArrayList<>();
+            StatsReader.readSnapshots(new File[] { file }, snapshots::add);
+
+            assertEquals(lines.size(), snapshots.size());
+            for (int i = 0; i < lines.size(); i++) {
+                Holder holder = JSONWriter.mapper.readValue(lines.get(i), Holder.class);
+                RepositorySnapshot snapshot = snapshots.get(i);
+
+                assertEquals(holder.getDate(), snapshot.getDate());
+                assertEquals(holder.getVersions().size(), snapshot.size());
+                assertEquals(holder.getRepositoryVersions(), snapshot.getRepositoryVersions());
+
+                Map<String, Integer> counts = new HashMap<>();
+                for (String version : holder.getVersions().keySet()) {
+                    counts.put(version, holder.getVersions().get(version).size());
+                }
+                assertEquals(counts, snapshot.getFileCounts());
+            }
+        }
+    }
+
+    private static List<StatsRecord> readAll(StatsReader reader) throws IOException {
+        List<StatsRecord> records = new ArrayList<>();
+        StatsRecord record;
+        while ((record = reader.nextRecord()) != null) {
+            records.add(record);
+        }
+        return records;
+    }
+
+    private static File writeTempFile() throws IOException {
+        File file = File.createTempFile("StatsReaderTest", ".json");
+        FileUtils.writeStringToFile(file, JSON, "UTF-8");
+        return file;
+    }
+}
@@ -3,6 +3,7 @@ package org.dstadler.github.util;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
+import java.io.IOException;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -14,4 +15,17 @@ public class StatsTest {
         assertNotNull(files);
         assertTrue(files.length > 800);
     }
+
+    @Test
+    public void testGetDate() {
+        assertEquals("2016-09-30", Stats.getDate(new File("stats/stats2016-09-30.json")));
+    }
+
+    @Test
+    public void testGetHistory() throws IOException {
+        File[] files = Stats.getHistory();
+
+        assertNotNull(files);
+        assertTrue(files.length > 0);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package org.dstadler.github.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SymbolTableTest {
+    @Test
+    public void testIds() {
+        SymbolTable table = new SymbolTable();
+        assertEquals(0, table.size());
+
+        int id = table.id("centic9/poi-mail-merge");
+        assertEquals(id, table.id("centic9/poi-mail-merge"));
+        assertEquals(id, table.id(new String("centic9/poi-mail-merge")));
+        assertNotEquals(id, table.id("centic9/other"));
+        assertEquals(2, table.size());
+
+        assertEquals("centic9/poi-mail-merge", table.get(id));
+        assertEquals("centic9/other", table.get(table.id("centic9/other")));
+    }
+
+    @Test
+    public void testNull() {
+        SymbolTable table = new SymbolTable();
+        int id = table.id(null);
+        assertEquals(id, table.id(null));
+        assertNull(table.get(id));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testIntern() {
+        SymbolTable table = new SymbolTable();
+        String str = table.intern(new String("3.15"));
+        assertSame(str, table.intern(new String("3.15")));
+        assertEquals("3.15", str);
+    }
+
+    @Test
+    public void testUnknownId() {
+        SymbolTable table = new SymbolTable();
+        table.id("3.15");
+        assertThrows(IllegalArgumentException.class, () -> table.get(1));
+        assertThrows(IllegalArgumentException.class, () -> table.get(-1));
+    }
+
+    @Test
+    public void testGrow() {
+        SymbolTable table = new SymbolTable();
+        for (int i = 0; i < 5000; i++) {
+            assertEquals(i, table.id("repo" + i));
+        }
+        assertEquals(5000, table.size());
+        assertEquals("repo4321", table.get(4321));
+    }
+
+    @Test
+    public void testConcurrent() throws InterruptedException {
+        SymbolTable table = new SymbolTable();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2000; i++) {
+                    assertEquals("repo" + i, table.get(table.id("repo" + i)));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(2000, table.size());
+    }
+}
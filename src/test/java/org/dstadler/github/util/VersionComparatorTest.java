@@ -4,12 +4,21 @@ import org.dstadler.commons.testing.TestHelpers;
 import org.dstadler.github.util.VersionComparator.Version;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.TreeSet;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @SuppressWarnings("EqualsWithItself")
@@ -327,4 +336,109 @@ public class VersionComparatorTest {
         assertEquals(1, new VersionComparator().compare("Bla", null));
         assertEquals(-1, new VersionComparator().compare(null, "Bla"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testPack() {
+        assertEquals(0x0003000F0000FFFFL, Version.parse("3.15").pack());
+        assertEquals(0x0003000F00010002L, Version.parse("3.15.1-beta2").pack());
+        assertEquals(0x0003000F00000000L, Version.parse("3.15-SNAPSHOT").pack());
+        assertEquals(0x000000000000FFFFL, Version.parse("other").pack());
+
+        // not transitive or too large
+        assertEquals(VersionComparator.NOT_PACKED, Version.parse("3.12-bbn").pack());
+        assertEquals(VersionComparator.NOT_PACKED, Version.parse("3.5-beta").pack());
+        assertEquals(VersionComparator.NOT_PACKED, Version.parse("3.5-beta-20151223").pack());
+        assertEquals(VersionComparator.NOT_PACKED, Version.parse("3.70000").pack());
+
+        assertEquals(Version.parse("3.15").pack(), VersionComparator.key("3.15"));
+        assertEquals(VersionComparator.NOT_PACKED, VersionComparator.key("blabla1"));
+        assertEquals(VersionComparator.NOT_PACKED, VersionComparator.key(null));
+    }
+
+    @Test
+    public void testPackMatchesCompare() throws IOException {
+        Set<String> versions = new HashSet<>(Arrays.asList("other", "3.5-beta", "3.5-BETA", "3.5-SNAPSHOT", "3.5",
+                "3.5-beta1", "3.5-SNAPSHOT1", "3.5-beta2", "3.5-SNAPSHOT2", "3.5-bbn", "3.5-bbn-1", "3.5-bbn-3",
+                "3.5.0", "3.5.1", "3.5.1-beta1", "3.5.1.2", "3.5-beta-20151223", "4.0", "blabla1"));
+
+        // all versions found in the stats, reading only some files is enough to find almost all of them
+        File[] files = Stats.getFiles();
+        for (int i = 0; i < files.length; i += 10) {
+            StatsReader.readSnapshots(new File[] { files[i] }, snapshot -> versions.addAll(snapshot.getFileCounts().keySet()));
+        }
+        assertTrue(versions.size() > 50, "Had: " + versions);
+
+        VersionComparator comparator = new VersionComparator();
+        for (String version : versions) {
+            long key = VersionComparator.key(version);
+            if (key == VersionComparator.NOT_PACKED) {
+                // only the non-transitive qualifiers and text are not packed
+                assertTrue(!version.matches("[0-9.]+(-(beta|BETA)[0-9]+|-SNAPSHOT[0-9]*)?"), "Had: " + version);
+                continue;
+            }
+
+            for (String other : versions) {
+                long otherKey = VersionComparator.key(other);
+                if (otherKey == VersionComparator.NOT_PACKED) {
+                    continue;
+                }
+
+                int expected = Integer.signum(Version.parse(version).compareTo(Version.parse(other)));
+                assertEquals(expected, Long.signum(Long.compare(key, otherKey)),
+                        "Had: " + version + " and " + other);
+                if (key == otherKey) {
+                    assertEquals(Integer.signum(version.compareTo(other)), Integer.signum(comparator.compare(version, other)),
+                            "Had: " + version + " and " + other);
+                } else {
+                    assertNotEquals(0, comparator.compare(version, other));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testParseFastMatchesSplit() throws IOException {
+        Set<String> versions = new HashSet<>(Arrays.asList("3.5", "3.5.1", "3.5.1.2", "3.5-beta", "3.5-BETA2", "3.5-Beta2",
+                "3.5-SNAPSHOT", "3.5-snapshot3", "3.5-bbn", "3.5-bbn-3", "3.5-beta-20151223", "3.14-beta1-20151223",
+                "3.5.1-beta1", "3.5.1-SNAPSHOT", "3.5-beta1.2", "3.5.1.bbn", "3.5.", "3.5-", "3.5.+1", "3.5.1a",
+                "3.5.12345678901", "3.5-beta12345678901", "3.5-betaX", "3.5-SNAPSHOTX", "3.5-bbn-x", "3.5.bbn.4",
+                "3..5", ".3.5", "3", "3.5.1.2.3", "a.5", "3.b", "3.5.١", "2147483647.1"));
+        File[] files = Stats.getFiles();
+        for (int i = 0; i < files.length; i += 10) {
+            StatsReader.readSnapshots(new File[] { files[i] }, snapshot -> versions.addAll(snapshot.getFileCounts().keySet()));
+        }
+
+        for (String version : versions) {
+            String expected;
+            try {
+                expected = Version.parseSplit(version).toString();
+            } catch (RuntimeException e) {
+                expected = e.getClass().getName();
+            }
+
+            String actual;
+            try {
+                actual = Version.parse(version).toString();
+            } catch (RuntimeException e) {
+                actual = e.getClass().getName();
+            }
+
+            if (!"other".equals(version)) {
+                assertEquals(expected, actual, "Had: " + version);
+            }
+        }
+    }
+
+    @Test
+    public void testGetVersion() {
+        Version version = VersionComparator.getVersion("3.15-beta2");
+        assertNotNull(version);
+        assertEquals(Version.parse("3.15-beta2").toString(), version.toString());
+        assertSame(version, VersionComparator.getVersion(new String("3.15-beta2")));
+
+        assertNotNull(VersionComparator.getVersion("other"));
+        assertNull(VersionComparator.getVersion("blabla1"));
+        assertNull(VersionComparator.getVersion("${poi.version}"));
+        assertNull(VersionComparator.getVersion(null));
+    }
+}